@@ -0,0 +1,272 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Evaluates a lambda whose {@code &&} and {@code ||} operands are ordered by their observed cost and selectivity.
+ * <p>
+ * The lambda is first ordered by the static estimates of the {@link LogicalOrderer}. One in {@link #SampleInterval}
+ * evaluations also evaluates every pure operand of its chains on its own, recording how long it takes and whether it
+ * is {@code true}. After every {@link #RankInterval} samples, the chains are ordered by the recorded estimates under the
+ * same constraints as the static order. If the order changed, the lambda is compiled again and swapped in atomically,
+ * while concurrent evaluations finish with the previous function. Older samples lose half their weight at every
+ * ranking, so the order follows the data as it changes.
+ * </p>
+ */
+final class AdaptiveFunction implements Function<Object[], Object> {
+
+	/**
+	 * The average number of evaluations per sample.
+	 */
+	static final int SampleInterval = 64;
+
+	/**
+	 * The number of samples between two rankings.
+	 */
+	static final int RankInterval = 64;
+
+	private final LambdaExpression lambda;
+	private final Function<LambdaExpression, Function<Object[], ?>> backend;
+	private final Map<Expression, Profile> profiles;
+	private final AtomicInteger samples = new AtomicInteger();
+	private final LogicalOrderer.Estimate estimate = new Measured();
+	private LambdaExpression current;
+	private volatile Function<Object[], ?> function;
+
+	/**
+	 * Creates an adaptive function.
+	 *
+	 * @param lambda  The lambda.
+	 * @param backend The function compiling an optimized lambda.
+	 */
+	AdaptiveFunction(LambdaExpression lambda, Function<LambdaExpression, Function<Object[], ?>> backend) {
+		this.lambda = lambda;
+		this.backend = backend;
+
+		LambdaExpression ordered = LogicalOrderer.order(Optimizer.simplify(lambda));
+		Operands operands = new Operands(ordered.getParameters());
+		ordered.getBody().accept(operands);
+		profiles = operands.profiles;
+
+		current = SubexpressionEliminator.eliminate(ordered);
+		function = backend.apply(current);
+	}
+
+	@Override
+	public Object apply(Object[] arguments) {
+		if (!profiles.isEmpty() && ThreadLocalRandom.current().nextInt(SampleInterval) == 0) {
+			sample(arguments);
+		}
+
+		return function.apply(arguments);
+	}
+
+	private void sample(Object[] arguments) {
+		for (Profile profile : profiles.values()) {
+			profile.sample(arguments);
+		}
+
+		if (samples.incrementAndGet() % RankInterval == 0) {
+			rank();
+		}
+	}
+
+	private synchronized void rank() {
+		LambdaExpression ordered = Optimizer.optimize(lambda, estimate);
+		if (!ordered.equals(current)) {
+			current = ordered;
+			function = backend.apply(ordered);
+		}
+
+		for (Profile profile : profiles.values()) {
+			profile.decay();
+		}
+	}
+
+	/**
+	 * Gets the key of an operand, which is the same for every order of its own chains.
+	 */
+	private static Expression key(Expression operand) {
+		return operand.accept(new Canonical());
+	}
+
+	private final class Measured implements LogicalOrderer.Estimate {
+		@Override
+		public double cost(Expression operand) {
+			Profile profile = profiles.get(key(operand));
+			return profile != null ? profile.cost() : Double.POSITIVE_INFINITY;
+		}
+
+		@Override
+		public double probability(Expression operand) {
+			Profile profile = profiles.get(key(operand));
+			return profile != null ? profile.probability() : 0.5;
+		}
+	}
+
+	/**
+	 * The observed cost and selectivity of an operand.
+	 */
+	private static final class Profile {
+		private final Function<Object[], ?> operand;
+		private double count;
+		private double trues;
+		private double nanos;
+
+		Profile(Function<Object[], ?> operand) {
+			this.operand = operand;
+		}
+
+		void sample(Object[] arguments) {
+			long start = System.nanoTime();
+			Object value;
+			try {
+				value = operand.apply(arguments);
+			} catch (RuntimeException e) {
+				// the operand is guarded by another one
+				return;
+			}
+
+			long elapsed = System.nanoTime() - start;
+			synchronized (this) {
+				count++;
+				nanos += elapsed;
+				if (Boolean.TRUE.equals(value)) {
+					trues++;
+				}
+			}
+		}
+
+		synchronized void decay() {
+			count /= 2;
+			trues /= 2;
+			nanos /= 2;
+		}
+
+		synchronized double cost() {
+			return count > 0 ? nanos / count : Double.POSITIVE_INFINITY;
+		}
+
+		synchronized double probability() {
+			return count > 0 ? trues / count : 0.5;
+		}
+	}
+
+	/**
+	 * Collects the pure operands of the chains in the scope of a lambda.
+	 */
+	private static final class Operands extends SimpleExpressionVisitor {
+		private final List<ParameterExpression> parameters;
+		final Map<Expression, Profile> profiles = new LinkedHashMap<>();
+
+		Operands(List<ParameterExpression> parameters) {
+			this.parameters = parameters;
+		}
+
+		@Override
+		public Expression visit(BinaryExpression e) {
+			int type = e.getExpressionType();
+			if (type != ExpressionType.LogicalAnd && type != ExpressionType.LogicalOr) {
+				return super.visit(e);
+			}
+
+			return chain(e, type);
+		}
+
+		@Override
+		public Expression visit(LogicalExpression e) {
+			return chain(e, e.getExpressionType() == ExpressionType.Conjunction ? ExpressionType.LogicalAnd : ExpressionType.LogicalOr);
+		}
+
+		private Expression chain(Expression e, int type) {
+			List<Expression> operands = new ArrayList<>();
+			LogicalOrderer.flatten(e, type, operands);
+			for (Expression operand : operands) {
+				if (LogicalOrderer.isPure(operand)) {
+					profiles.computeIfAbsent(key(operand), key -> new Profile(
+							Interpreter.interpret(Expression.lambda(operand.getResultType(), operand, parameters))));
+				}
+
+				operand.accept(this);
+			}
+
+			return e;
+		}
+
+		@Override
+		public Expression visit(LambdaExpression e) {
+			// evaluated in another scope
+			return e;
+		}
+
+		@Override
+		public Expression visit(DelegateExpression e) {
+			return e;
+		}
+	}
+
+	/**
+	 * Sorts the operands of every chain by their hash code.
+	 */
+	private static final class Canonical extends SimpleExpressionVisitor {
+		@Override
+		public Expression visit(BinaryExpression e) {
+			return sort(super.visit(e));
+		}
+
+		@Override
+		public Expression visit(LogicalExpression e) {
+			return sort(super.visit(e));
+		}
+
+		private static Expression sort(Expression visited) {
+			int type;
+			switch (visited.getExpressionType()) {
+				case ExpressionType.LogicalAnd:
+				case ExpressionType.Conjunction:
+					type = ExpressionType.LogicalAnd;
+					break;
+				case ExpressionType.LogicalOr:
+				case ExpressionType.Disjunction:
+					type = ExpressionType.LogicalOr;
+					break;
+				default:
+					return visited;
+			}
+
+			List<Expression> operands = new ArrayList<>();
+			LogicalOrderer.flatten(visited, type, operands);
+			operands.sort(Comparator.comparingInt(Expression::hashCode));
+			return Canonicalizer.chain(type, operands);
+		}
+
+		@Override
+		public Expression visit(DelegateExpression e) {
+			return e;
+		}
+	}
+}
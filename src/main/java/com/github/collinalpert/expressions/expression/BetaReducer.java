@@ -0,0 +1,291 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Inlines invoked {@link LambdaExpression}s into the invoking scope.
+ * <p>
+ * An invocation {@code {(T0 P0, T1 P1) -> body}(a0, a1)} is replaced with {@code body}, where every reference to
+ * {@code Pk} is replaced with {@code ak}. Only constant and parameter arguments are substituted, since they can be
+ * duplicated and moved without changing the evaluation; other arguments stay bound to a reduced lambda with the
+ * remaining parameters renumbered. Delegates to constant lambdas are inlined the same way.
+ * </p>
+ * <p>
+ * A lambda whose body is a lambda is a partial application: the arguments are prepended to the arguments of the inner
+ * lambda. It is reduced to a lambda of the remaining parameters once all the bound arguments are constants.
+ * </p>
+ * <p>
+ * The bodies of nested lambdas are a scope of their own and are reduced independently. Parameter lists are member
+ * signatures and are never substituted.
+ * </p>
+ */
+final class BetaReducer extends SimpleExpressionVisitor {
+
+	private Expression[] bindings;
+	private boolean[] renumbered;
+
+	private BetaReducer() {
+	}
+
+	/**
+	 * Inlines all the invoked lambdas of a lambda.
+	 *
+	 * @param e The lambda.
+	 * @return The reduced lambda, or {@code e} if there is nothing to reduce.
+	 */
+	static LambdaExpression reduce(LambdaExpression e) {
+		return (LambdaExpression) e.accept(new BetaReducer());
+	}
+
+	@Override
+	protected List<ParameterExpression> visitParameters(List<ParameterExpression> original) {
+		return original;
+	}
+
+	@Override
+	public Expression visit(InvocationExpression e) {
+		InvocableExpression target = e.getTarget();
+		List<Expression> arguments = visitArguments(e.getArguments());
+		switch (target.getExpressionType()) {
+			case ExpressionType.Lambda:
+				return reduce(e, (LambdaExpression) target, arguments);
+			case ExpressionType.Delegate:
+				target = delegate((DelegateExpression) target);
+				Expression delegate = ((DelegateExpression) target).getDelegate();
+				if (delegate.getExpressionType() == ExpressionType.Constant) {
+					Object value = ((ConstantExpression) delegate).getValue();
+					if (value instanceof LambdaExpression && isInlinable((LambdaExpression) value, arguments)) {
+						return inline(e, (LambdaExpression) value, arguments);
+					}
+				}
+				break;
+			default:
+				target = member((MemberExpression) target);
+				break;
+		}
+
+		if (target != e.getTarget() || arguments != e.getArguments()) {
+			return Expression.invoke(target, arguments);
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(LambdaExpression e) {
+		Expression body = scope(e.getBody(), null, null);
+		if (body != e.getBody()) {
+			return Expression.lambda(e.getResultType(), body, e.getParameters());
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(DelegateExpression e) {
+		DelegateExpression delegate = delegate(e);
+		return bindings != null ? Expression.invoke(delegate, visitArguments(new ArrayList<>(e.getParameters()))) : delegate;
+	}
+
+	@Override
+	public Expression visit(MemberExpression e) {
+		MemberExpression member = member(e);
+		// a bare member reads its parameters from the scope
+		return bindings != null && !e.getParameters().isEmpty() ? Expression.invoke(member, visitArguments(new ArrayList<>(e.getParameters())))
+				: member;
+	}
+
+	@Override
+	public Expression visit(ParameterExpression e) {
+		if (bindings == null) {
+			return e;
+		}
+
+		int index = e.getIndex();
+		Expression value = index < bindings.length ? bindings[index] : null;
+		if (value == null) {
+			return e;
+		}
+
+		Class<?> type = e.getResultType();
+		if (renumbered[index] || value.getExpressionType() == ExpressionType.Parameter) {
+			return type == value.getResultType() ? value : Expression.parameter(type, ((ParameterExpression) value).getIndex());
+		}
+
+		Object constant = ((ConstantExpression) value).getValue();
+		boolean assignable = constant == null ? !type.isPrimitive()
+				: type.isInstance(constant) || (type.isPrimitive() && TypeConverter.boxedType(type).isInstance(constant));
+		if (assignable) {
+			return Expression.constant(constant, type);
+		}
+
+		if (type == Integer.TYPE && constant instanceof Boolean) {
+			// the bytecode passes booleans as ints
+			return Expression.constant((Boolean) constant ? 1 : 0, type);
+		}
+
+		return Expression.convert(value, type);
+	}
+
+	private DelegateExpression delegate(DelegateExpression e) {
+		Expression delegate = e.getDelegate().accept(this);
+		if (delegate != e.getDelegate()) {
+			return Expression.delegate(e.getResultType(), delegate, e.getParameters());
+		}
+
+		return e;
+	}
+
+	private MemberExpression member(MemberExpression e) {
+		Expression instance = e.getInstance();
+		if (instance != null) {
+			instance = instance.accept(this);
+			if (instance != e.getInstance()) {
+				return Expression.member(e.getExpressionType(), instance, e.getMember(), e.getResultType(), e.getParameters());
+			}
+		}
+
+		return e;
+	}
+
+	private Expression reduce(InvocationExpression e, LambdaExpression lambda, List<Expression> arguments) {
+		if (lambda.getBody().getExpressionType() == ExpressionType.Lambda) {
+			return isApplicable(arguments) ? partial((LambdaExpression) lambda.getBody(), arguments) : rebuild(e, lambda, arguments);
+		}
+
+		return isInlinable(lambda, arguments) ? inline(e, lambda, arguments) : rebuild(e, lambda, arguments);
+	}
+
+	private static boolean isInlinable(LambdaExpression lambda, List<Expression> arguments) {
+		if (lambda.getBody().getExpressionType() == ExpressionType.Lambda) {
+			return false;
+		}
+
+		for (ParameterExpression p : lambda.getParameters()) {
+			if (p.getIndex() >= arguments.size()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isApplicable(List<Expression> arguments) {
+		for (Expression argument : arguments) {
+			if (argument.getExpressionType() != ExpressionType.Constant) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private Expression inline(InvocationExpression e, LambdaExpression lambda, List<Expression> arguments) {
+		int size = arguments.size();
+		Expression[] bindings = new Expression[size];
+		boolean[] renumbered = new boolean[size];
+		List<ParameterExpression> parameters = new ArrayList<>();
+		List<Expression> residual = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			Expression argument = arguments.get(i);
+			int type = argument.getExpressionType();
+			if (type == ExpressionType.Constant || type == ExpressionType.Parameter) {
+				bindings[i] = argument;
+				continue;
+			}
+
+			ParameterExpression parameter = Expression.parameter(declaredType(lambda, i, argument), parameters.size());
+			bindings[i] = parameter;
+			renumbered[i] = true;
+			parameters.add(parameter);
+			residual.add(argument);
+		}
+
+		Expression body = scope(lambda.getBody(), bindings, renumbered);
+		if (residual.isEmpty()) {
+			return TypeConverter.convert(body, e.getResultType());
+		}
+
+		LambdaExpression reduced = Expression.lambda(lambda.getResultType(), body, Collections.unmodifiableList(parameters));
+		return TypeConverter.convert(Expression.invoke(reduced, residual), e.getResultType());
+	}
+
+	private Expression partial(LambdaExpression applied, List<Expression> arguments) {
+		int bound = arguments.size();
+		int size = bound;
+		for (ParameterExpression p : applied.getParameters()) {
+			size = Math.max(size, p.getIndex() + 1);
+		}
+
+		Expression[] bindings = new Expression[size];
+		boolean[] renumbered = new boolean[size];
+		for (int i = 0; i < bound; i++) {
+			bindings[i] = arguments.get(i);
+		}
+
+		List<ParameterExpression> parameters = new ArrayList<>();
+		for (ParameterExpression p : applied.getParameters()) {
+			int index = p.getIndex();
+			if (index >= bound) {
+				ParameterExpression parameter = Expression.parameter(p.getResultType(), index - bound);
+				bindings[index] = parameter;
+				renumbered[index] = true;
+				parameters.add(parameter);
+			}
+		}
+
+		Expression body = scope(applied.getBody(), bindings, renumbered);
+		return Expression.lambda(applied.getResultType(), body, Collections.unmodifiableList(parameters));
+	}
+
+	private Expression rebuild(InvocationExpression e, LambdaExpression lambda, List<Expression> arguments) {
+		Expression target = visit(lambda);
+		if (target != lambda || arguments != e.getArguments()) {
+			return Expression.invoke((InvocableExpression) target, arguments);
+		}
+
+		return e;
+	}
+
+	private Expression scope(Expression body, Expression[] bindings, boolean[] renumbered) {
+		Expression[] outerBindings = this.bindings;
+		boolean[] outerRenumbered = this.renumbered;
+		this.bindings = bindings;
+		this.renumbered = renumbered;
+		try {
+			return body.accept(this);
+		} finally {
+			this.bindings = outerBindings;
+			this.renumbered = outerRenumbered;
+		}
+	}
+
+	private static Class<?> declaredType(LambdaExpression lambda, int index, Expression argument) {
+		for (ParameterExpression p : lambda.getParameters()) {
+			if (p.getIndex() == index) {
+				return p.getResultType();
+			}
+		}
+
+		return argument.getResultType();
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Represents a test of whether a number lies in a range, such as {@code 18 <= P0.getAge() < 65}.
+ * <p>
+ * The operand is evaluated once, then the lower bound. The upper bound is only evaluated if the operand is above the
+ * lower bound. The operand and the bounds are of the same primitive numeric type and are compared as primitives, so a
+ * {@code NaN} is in no range.
+ * </p>
+ */
+@EqualsAndHashCode(callSuper = true)
+public final class BetweenExpression extends Expression {
+
+	private final Expression operand;
+	private final Expression lower;
+	private final boolean lowerInclusive;
+	private final Expression upper;
+	private final boolean upperInclusive;
+
+	BetweenExpression(Expression operand, Expression lower, boolean lowerInclusive, Expression upper, boolean upperInclusive) {
+		super(ExpressionType.Between, Boolean.TYPE);
+
+		this.operand = operand;
+		this.lower = lower;
+		this.lowerInclusive = lowerInclusive;
+		this.upper = upper;
+		this.upperInclusive = upperInclusive;
+	}
+
+	@Override
+	protected <T> T visit(ExpressionVisitor<T> v) {
+		return v.visit(this);
+	}
+
+	/**
+	 * Gets the equivalent {@code &&} of the comparisons to the bounds.
+	 *
+	 * @return The {@link ExpressionType#LogicalAnd} expression.
+	 */
+	public Expression toLogical() {
+		return Expression.logicalAnd(
+				lowerInclusive ? Expression.greaterThanOrEqual(operand, lower) : Expression.greaterThan(operand, lower),
+				upperInclusive ? Expression.lessThanOrEqual(operand, upper) : Expression.lessThan(operand, upper));
+	}
+
+	/**
+	 * Tests a value of the operand against a value of the lower bound.
+	 *
+	 * @return {@code true} if {@code value} is above {@code bound}, or equal to it if the bound is inclusive.
+	 */
+	boolean isAboveLower(Object value, Object bound) {
+		if (isFloating()) {
+			double v = ((Number) value).doubleValue();
+			double b = ((Number) bound).doubleValue();
+			return lowerInclusive ? v >= b : v > b;
+		}
+
+		long v = toLong(value);
+		long b = toLong(bound);
+		return lowerInclusive ? v >= b : v > b;
+	}
+
+	/**
+	 * Tests a value of the operand against a value of the upper bound.
+	 *
+	 * @return {@code true} if {@code value} is below {@code bound}, or equal to it if the bound is inclusive.
+	 */
+	boolean isBelowUpper(Object value, Object bound) {
+		if (isFloating()) {
+			double v = ((Number) value).doubleValue();
+			double b = ((Number) bound).doubleValue();
+			return upperInclusive ? v <= b : v < b;
+		}
+
+		long v = toLong(value);
+		long b = toLong(bound);
+		return upperInclusive ? v <= b : v < b;
+	}
+
+	private boolean isFloating() {
+		Class<?> type = operand.getResultType();
+		return type == Float.TYPE || type == Double.TYPE;
+	}
+
+	private static long toLong(Object value) {
+		return value instanceof Character ? (Character) value : ((Number) value).longValue();
+	}
+
+	@Override
+	public String toString() {
+		return "(" + lower + (lowerInclusive ? " <= " : " < ") + operand + (upperInclusive ? " <= " : " < ") + upper + ")";
+	}
+
+	public Expression getOperand() {
+		return operand;
+	}
+
+	public Expression getLower() {
+		return lower;
+	}
+
+	public boolean isLowerInclusive() {
+		return lowerInclusive;
+	}
+
+	public Expression getUpper() {
+		return upper;
+	}
+
+	public boolean isUpperInclusive() {
+		return upperInclusive;
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites the logic and the conversions the parser reconstructs from bytecode into their canonical form.
+ * <p>
+ * Conditionals encoding {@code &&} and {@code ||}, such as {@code a ? b : false}, become {@link ExpressionType#LogicalAnd}
+ * and {@link ExpressionType#LogicalOr}, and a negated test swaps the branches of a conditional. Negations are pushed
+ * into comparisons and null checks and double negations cancel, as in {@link Expression#logicalNot(Expression)}. A
+ * conditional of {@code int}s converted to {@code boolean} converts its branches instead. Chains of more than two
+ * operands of the same operator become a single {@link LogicalExpression}.
+ * </p>
+ * <p>
+ * A conversion which loses nothing, such as boxing, a widening between numbers represented exactly or a reference
+ * upcast, is removed when it is converted back or converted again. Unboxing is kept, since it rejects {@code null}.
+ * </p>
+ */
+final class Canonicalizer extends SimpleExpressionVisitor {
+
+	private static final Map<Class<?>, List<Class<?>>> exactWidenings = Map.of(
+			Byte.TYPE, List.of(Short.TYPE, Integer.TYPE, Long.TYPE, Float.TYPE, Double.TYPE),
+			Short.TYPE, List.of(Integer.TYPE, Long.TYPE, Float.TYPE, Double.TYPE),
+			Character.TYPE, List.of(Integer.TYPE, Long.TYPE, Float.TYPE, Double.TYPE),
+			Integer.TYPE, List.of(Long.TYPE, Double.TYPE),
+			Float.TYPE, List.of(Double.TYPE),
+			Boolean.TYPE, List.of(Integer.TYPE));
+
+	private Canonicalizer() {
+	}
+
+	/**
+	 * Canonicalizes a lambda.
+	 *
+	 * @param e The lambda.
+	 * @return The canonical lambda, or {@code e} if it is canonical.
+	 */
+	static LambdaExpression canonicalize(LambdaExpression e) {
+		return (LambdaExpression) e.accept(new Canonicalizer());
+	}
+
+	@Override
+	public Expression visit(BinaryExpression e) {
+		int type = e.getExpressionType();
+		if (type == ExpressionType.LogicalAnd || type == ExpressionType.LogicalOr) {
+			List<Expression> operands = new ArrayList<>();
+			LogicalOrderer.flatten(e, type, operands);
+			List<Expression> visited = visitExpressionList(operands);
+			return visited == operands && operands.size() == 2 ? e : chain(type, visited);
+		}
+
+		Expression visited = super.visit(e);
+		if (visited.getExpressionType() != ExpressionType.Conditional) {
+			return visited;
+		}
+
+		BinaryExpression conditional = (BinaryExpression) visited;
+		Expression test = conditional.getOperator();
+		if (test.getExpressionType() == ExpressionType.LogicalNot) {
+			Expression swapped = Expression.condition(((UnaryExpression) test).getFirst(), conditional.getSecond(), conditional.getFirst());
+			if (swapped.getExpressionType() != ExpressionType.Conditional) {
+				return TypeConverter.convert(swapped, conditional.getResultType());
+			}
+
+			conditional = (BinaryExpression) swapped;
+		}
+
+		return TypeConverter.convert(toLogical(conditional), conditional.getResultType());
+	}
+
+	@Override
+	public Expression visit(UnaryExpression e) {
+		Expression operand = e.getFirst().accept(this);
+		switch (e.getExpressionType()) {
+			case ExpressionType.Convert:
+				return convert(operand, e.getResultType());
+			case ExpressionType.LogicalNot:
+				return Expression.logicalNot(operand);
+			default:
+				return operand != e.getFirst() ? Expression.unary(e.getExpressionType(), e.getResultType(), operand) : e;
+		}
+	}
+
+	@Override
+	public Expression visit(DelegateExpression e) {
+		return e;
+	}
+
+	private static Expression convert(Expression operand, Class<?> to) {
+		Class<?> from = operand.getResultType();
+		if (from == to) {
+			return operand;
+		}
+
+		if (operand.getExpressionType() == ExpressionType.Convert) {
+			Expression source = ((UnaryExpression) operand).getFirst();
+			Class<?> sourceType = source.getResultType();
+			if (isLossless(sourceType, from)) {
+				if (sourceType == to) {
+					return source;
+				}
+
+				// the value is the same, converted once
+				if (sourceType.isPrimitive() == to.isPrimitive() && sourceType != Boolean.TYPE && to != Boolean.TYPE) {
+					return convert(source, to);
+				}
+			}
+		}
+
+		if (to == Boolean.TYPE && from == Integer.TYPE && operand.getExpressionType() == ExpressionType.Conditional) {
+			BinaryExpression conditional = (BinaryExpression) operand;
+			Expression ifTrue = conditional.getFirst();
+			Expression ifFalse = conditional.getSecond();
+			if (isBooleanBranch(ifTrue) && isBooleanBranch(ifFalse) && (isBooleanConstant(ifTrue) || isBooleanConstant(ifFalse))) {
+				Expression converted = Expression.condition(conditional.getOperator(), toBoolean(ifTrue), toBoolean(ifFalse));
+				if (converted.getExpressionType() == ExpressionType.Conditional) {
+					converted = toLogical((BinaryExpression) converted);
+				}
+
+				return TypeConverter.convert(converted, to);
+			}
+		}
+
+		return Expression.convert(operand, to);
+	}
+
+	private static Expression toBoolean(Expression branch) {
+		if (branch.getExpressionType() == ExpressionType.Constant) {
+			return Expression.constant(isConstant(branch, true), Boolean.TYPE);
+		}
+
+		return convert(branch, Boolean.TYPE);
+	}
+
+	private static boolean isBooleanConstant(Expression e) {
+		return isConstant(e, true) || isConstant(e, false);
+	}
+
+	private static boolean isBooleanBranch(Expression e) {
+		return e.getExpressionType() != ExpressionType.Constant || isBooleanConstant(e);
+	}
+
+	private static boolean isLossless(Class<?> from, Class<?> to) {
+		if (from.isPrimitive()) {
+			if (!to.isPrimitive()) {
+				return to == TypeConverter.boxedType(from);
+			}
+
+			List<Class<?>> widenings = exactWidenings.get(from);
+			return widenings != null && widenings.contains(to);
+		}
+
+		return !to.isPrimitive() && to.isAssignableFrom(from);
+	}
+
+	/**
+	 * Builds a chain of {@code &&} or {@code ||}, which is a {@link BinaryExpression} for two operands and a
+	 * {@link LogicalExpression} for more.
+	 *
+	 * @param type     {@link ExpressionType#LogicalAnd} or {@link ExpressionType#LogicalOr}.
+	 * @param operands The operands.
+	 * @return The chain.
+	 */
+	static Expression chain(int type, List<Expression> operands) {
+		Expression chain = type == ExpressionType.LogicalAnd ? Expression.conjunction(operands) : Expression.disjunction(operands);
+		if (chain instanceof LogicalExpression && ((LogicalExpression) chain).getOperands().size() == 2) {
+			return ((LogicalExpression) chain).toBinary();
+		}
+
+		return chain;
+	}
+
+	/**
+	 * Rewrites a conditional encoding {@code &&} or {@code ||}.
+	 *
+	 * @param e The conditional.
+	 * @return The equivalent {@code &&} or {@code ||}, or {@code e} if it does not encode one.
+	 */
+	static Expression toLogical(BinaryExpression e) {
+		if (e.getExpressionType() != ExpressionType.Conditional || !isBoolean(e)) {
+			return e;
+		}
+
+		Expression test = e.getOperator();
+		Expression ifTrue = e.getFirst();
+		Expression ifFalse = e.getSecond();
+		if (!isBoolean(ifTrue) || !isBoolean(ifFalse)) {
+			return e;
+		}
+
+		if (isConstant(ifFalse, false)) {
+			return Expression.logicalAnd(test, ifTrue);
+		}
+
+		if (isConstant(ifTrue, true)) {
+			return Expression.logicalOr(test, ifFalse);
+		}
+
+		if (isConstant(ifTrue, false)) {
+			return Expression.logicalAnd(Expression.logicalNot(test), ifFalse);
+		}
+
+		if (isConstant(ifFalse, true)) {
+			return Expression.logicalOr(Expression.logicalNot(test), ifTrue);
+		}
+
+		return e;
+	}
+
+	private static boolean isBoolean(Expression e) {
+		Class<?> type = e.getResultType();
+		return type == Boolean.TYPE || type == Boolean.class;
+	}
+
+	/**
+	 * Determines whether an expression is a boolean constant, possibly encoded as an {@code int} and converted.
+	 *
+	 * @param e     The expression.
+	 * @param value The value of the constant.
+	 * @return {@code true} if {@code e} is the constant {@code value}.
+	 */
+	static boolean isConstant(Expression e, boolean value) {
+		while (e.getExpressionType() == ExpressionType.Convert) {
+			e = ((UnaryExpression) e).getFirst();
+		}
+
+		if (e.getExpressionType() != ExpressionType.Constant) {
+			return false;
+		}
+
+		Object constant = ((ConstantExpression) e).getValue();
+		return Boolean.valueOf(value).equals(constant) || Integer.valueOf(value ? 1 : 0).equals(constant);
+	}
+}
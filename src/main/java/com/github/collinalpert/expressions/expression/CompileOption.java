@@ -0,0 +1,52 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+/**
+ * Options controlling how {@link LambdaExpression#compile(CompileOption...)} evaluates a lambda expression.
+ */
+public enum CompileOption {
+	/**
+	 * Does not define classes at runtime. The expression is bound into a single {@link java.lang.invoke.MethodHandle}
+	 * composed of {@link java.lang.invoke.MethodHandles} combinators instead of being compiled to bytecode. An
+	 * implementation of a functional interface is a {@link java.lang.invoke.MethodHandleProxies proxy} of the handle.
+	 */
+	NoCodeGeneration,
+	/**
+	 * Neither generates code nor binds method handles. The expression is evaluated by an interpreter whose nodes
+	 * specialize themselves to the value types they observe. Suits expressions evaluated too few times to pay back
+	 * compilation. Takes precedence over {@link #NoCodeGeneration}.
+	 */
+	Interpret,
+	/**
+	 * Samples the cost and the selectivity of the side-effect-free operands of {@code &&} and {@code ||} while the
+	 * expression is evaluated, and periodically compiles the expression again with its operands ordered by the observed
+	 * values. Suits predicates evaluated many times over skewed data. Combines with the other options, which select how
+	 * every order is evaluated.
+	 */
+	AdaptiveOrdering,
+	/**
+	 * Treats the constants of the expression, like the instance and the arguments captured by a lambda, as immutable.
+	 * Their fields, the results of their getters and pure methods and the elements of constant arrays are read once, when
+	 * the expression is compiled, so the subexpressions depending only on them, like
+	 * {@code this.config.getThreshold() * 1.1}, are not evaluated again. Changes made to the captured objects afterwards
+	 * are not seen. Other methods, static methods and constructors are still called every time, unless they are pure,
+	 * and nothing is read in a branch which may not be evaluated.
+	 */
+	Snapshot
+}
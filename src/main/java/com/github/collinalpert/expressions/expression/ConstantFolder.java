@@ -0,0 +1,371 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evaluates the constant parts of a tree ahead of time.
+ * <p>
+ * Operators applied to constants, reads of {@code static final} fields and {@link Purity pure} members applied to
+ * immutable constants are replaced with their value. Conditionals, {@code &&}, {@code ||} and coalescing with a constant
+ * test are replaced with the branch they evaluate. Subtrees whose evaluation throws are left to throw at run time.
+ * </p>
+ * <p>
+ * A snapshot also treats the constants as immutable, such as the captured instance and arguments of a lambda: the
+ * fields, the getters and the pure methods of a constant and the elements of a constant array are read once, when the
+ * lambda is compiled. Only the parts which are always evaluated are read, not the branches of a conditional or the
+ * operands of {@code &&} and {@code ||} after the first. A snapshot of a value only reads the value and what is read
+ * from it, but reads them in any branch when they are not {@code null}, since reading them has no side effects.
+ * </p>
+ */
+final class ConstantFolder extends SimpleExpressionVisitor {
+
+	private final boolean snapshot;
+	// the values a snapshot reads, or null to read every constant
+	private final Set<Object> snapshotted;
+	// whether the visited expression may not be evaluated
+	private boolean guarded;
+
+	private ConstantFolder(boolean snapshot, Set<Object> snapshotted) {
+		this.snapshot = snapshot;
+		this.snapshotted = snapshotted;
+	}
+
+	/**
+	 * Folds the constant parts of a lambda.
+	 *
+	 * @param e The lambda.
+	 * @return The folded lambda, or {@code e} if there is nothing to fold.
+	 */
+	static LambdaExpression fold(LambdaExpression e) {
+		return (LambdaExpression) e.accept(new ConstantFolder(false, null));
+	}
+
+	/**
+	 * Folds the constant parts of a lambda, treating its constants as immutable. The lambda is canonicalized first, so
+	 * long chains of {@code &&} and {@code ||} are folded as a whole rather than recursively.
+	 *
+	 * @param e The lambda.
+	 * @return The canonical, folded lambda.
+	 * @see CompileOption#Snapshot
+	 */
+	static LambdaExpression snapshot(LambdaExpression e) {
+		return (LambdaExpression) Canonicalizer.canonicalize(e).accept(new ConstantFolder(true, null));
+	}
+
+	/**
+	 * Folds the constant parts of a lambda, treating a value and the values read from it as immutable. The lambda is
+	 * canonicalized first, as in {@link #snapshot(LambdaExpression)}.
+	 *
+	 * @param e     The lambda.
+	 * @param value The value.
+	 * @return The canonical, folded lambda.
+	 * @see LambdaExpression#specialize(int, Object)
+	 */
+	static LambdaExpression snapshot(LambdaExpression e, Object value) {
+		Set<Object> snapshotted = Collections.newSetFromMap(new IdentityHashMap<>());
+		snapshotted.add(value);
+		return (LambdaExpression) Canonicalizer.canonicalize(e).accept(new ConstantFolder(true, snapshotted));
+	}
+
+	@Override
+	public Expression visit(BinaryExpression e) {
+		switch (e.getExpressionType()) {
+			case ExpressionType.Conditional: {
+				Expression test = e.getOperator().accept(this);
+				if (isConstant(test)) {
+					return TypeConverter.convert(((Boolean) value(test) ? e.getFirst() : e.getSecond()).accept(this), e.getResultType());
+				}
+
+				Expression first = visitGuarded(e.getFirst());
+				Expression second = visitGuarded(e.getSecond());
+				if (test != e.getOperator() || first != e.getFirst() || second != e.getSecond()) {
+					return Expression.binary(ExpressionType.Conditional, test, first, second);
+				}
+
+				return e;
+			}
+			case ExpressionType.LogicalAnd:
+			case ExpressionType.LogicalOr:
+			case ExpressionType.Coalesce: {
+				Expression first = e.getFirst().accept(this);
+				if (isConstant(first)) {
+					boolean shortCircuit = e.getExpressionType() == ExpressionType.Coalesce ? value(first) != null
+							: (Boolean) value(first) == (e.getExpressionType() == ExpressionType.LogicalOr);
+					return shortCircuit ? first : e.getSecond().accept(this);
+				}
+
+				Expression second = visitGuarded(e.getSecond());
+				if (first != e.getFirst() || second != e.getSecond()) {
+					return Expression.binary(e.getExpressionType(), first, second);
+				}
+
+				return e;
+			}
+			default:
+				break;
+		}
+
+		Expression visited = super.visit(e);
+		if (!(visited instanceof BinaryExpression)) {
+			return visited;
+		}
+
+		BinaryExpression binary = (BinaryExpression) visited;
+		Expression first = binary.getFirst();
+		Expression second = binary.getSecond();
+		if (binary.getExpressionType() == ExpressionType.ArrayIndex) {
+			// the array elements may change, unless in a snapshot
+			return isSnapshotted(first) && isConstant(second) ? read(binary) : binary;
+		}
+
+		return isConstant(first) && isConstant(second) ? evaluate(binary) : binary;
+	}
+
+	@Override
+	public Expression visit(LogicalExpression e) {
+		boolean disjunction = e.getExpressionType() == ExpressionType.Disjunction;
+		List<Expression> operands = new ArrayList<>();
+		boolean changed = false;
+		boolean outer = guarded;
+		try {
+			for (Expression operand : e.getOperands()) {
+				Expression visited = operand.accept(this);
+				changed |= visited != operand;
+				if (!isConstant(visited)) {
+					operands.add(visited);
+					// the following operands may not be evaluated
+					guarded = true;
+				} else if ((Boolean) value(visited) == disjunction) {
+					if (operands.isEmpty()) {
+						return visited;
+					}
+
+					// the following operands are never evaluated
+					operands.add(visited);
+					break;
+				}
+			}
+		} finally {
+			guarded = outer;
+		}
+
+		if (!changed && operands.size() == e.getOperands().size()) {
+			return e;
+		}
+
+		return disjunction ? Expression.disjunction(operands) : Expression.conjunction(operands);
+	}
+
+	@Override
+	public Expression visit(BetweenExpression e) {
+		Expression operand = e.getOperand().accept(this);
+		Expression lower = e.getLower().accept(this);
+		// the upper bound is not evaluated below the lower one
+		Expression upper = visitGuarded(e.getUpper());
+		if (isConstant(operand) && isConstant(lower) && isConstant(upper)) {
+			return evaluate(Expression.between(operand, lower, e.isLowerInclusive(), upper, e.isUpperInclusive()));
+		}
+
+		if (operand != e.getOperand() || lower != e.getLower() || upper != e.getUpper()) {
+			return Expression.between(operand, lower, e.isLowerInclusive(), upper, e.isUpperInclusive());
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(InExpression e) {
+		Expression visited = super.visit(e);
+		if (visited instanceof InExpression && isConstant(((InExpression) visited).getOperand())) {
+			return evaluate(visited);
+		}
+
+		return visited;
+	}
+
+	@Override
+	public Expression visit(UnaryExpression e) {
+		Expression visited = super.visit(e);
+		if (visited instanceof UnaryExpression && isConstant(((UnaryExpression) visited).getFirst())) {
+			return evaluate(visited);
+		}
+
+		return visited;
+	}
+
+	@Override
+	public Expression visit(InvocationExpression e) {
+		InvocableExpression target = e.getTarget();
+		List<Expression> arguments = visitArguments(e.getArguments());
+		Expression visited;
+		switch (target.getExpressionType()) {
+			case ExpressionType.Lambda:
+			case ExpressionType.Delegate:
+				visited = target.accept(this);
+				break;
+			default:
+				visited = member((MemberExpression) target);
+				if (visited.getExpressionType() == ExpressionType.Constant) {
+					return visited;
+				}
+				break;
+		}
+
+		if (visited != target || arguments != e.getArguments()) {
+			e = Expression.invoke((InvocableExpression) visited, arguments);
+		}
+
+		if (visited instanceof MemberExpression && isFoldable((MemberExpression) visited, arguments)) {
+			return isSnapshotted(((MemberExpression) visited).getInstance()) ? read(e) : evaluate(e);
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(DelegateExpression e) {
+		Expression delegate = e.getDelegate().accept(this);
+		if (delegate != e.getDelegate()) {
+			return Expression.delegate(e.getResultType(), delegate, e.getParameters());
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(MemberExpression e) {
+		return member(e);
+	}
+
+	private Expression member(MemberExpression e) {
+		Member m = e.getMember();
+		if (m instanceof Field && Modifier.isStatic(m.getModifiers()) && Modifier.isFinal(m.getModifiers())) {
+			return evaluate(e);
+		}
+
+		Expression instance = e.getInstance();
+		if (instance != null) {
+			instance = instance.accept(this);
+			if (instance != e.getInstance()) {
+				e = Expression.member(e.getExpressionType(), instance, m, e.getResultType(), e.getParameters());
+			}
+
+			if (e.getExpressionType() == ExpressionType.FieldAccess && isSnapshotted(instance)) {
+				return read(e);
+			}
+		}
+
+		return e;
+	}
+
+	private boolean isFoldable(MemberExpression member, List<Expression> arguments) {
+		if (member.getExpressionType() == ExpressionType.FieldAccess) {
+			return false;
+		}
+
+		Expression instance = member.getInstance();
+		// a snapshot calls the getters and pure methods of constants once, but still calls static methods like
+		// System.nanoTime() every time
+		boolean snapshotted = member.getExpressionType() == ExpressionType.MethodAccess && isSnapshotted(instance)
+				&& (member.isGetter() || member.isPure());
+		if (!snapshotted && (!member.isPure() || (instance != null && !isImmutableConstant(instance)))) {
+			return false;
+		}
+
+		for (Expression argument : arguments) {
+			if (snapshotted ? !isConstant(argument) : !isImmutableConstant(argument)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private Expression visitGuarded(Expression e) {
+		boolean outer = guarded;
+		guarded = true;
+		try {
+			return e.accept(this);
+		} finally {
+			guarded = outer;
+		}
+	}
+
+	private boolean isSnapshotted(Expression e) {
+		if (!snapshot || e == null || !isConstant(e)) {
+			return false;
+		}
+
+		if (snapshotted == null) {
+			return !guarded;
+		}
+
+		// the reads of a snapshotted value which is not null cannot have side effects, even if they are not evaluated
+		Object value = value(e);
+		return snapshotted.contains(value) && (!guarded || value != null);
+	}
+
+	/**
+	 * Evaluates a read of a snapshotted value, whose result is snapshotted as well.
+	 */
+	private Expression read(Expression e) {
+		Expression result = evaluate(e);
+		if (snapshotted != null && isConstant(result)) {
+			snapshotted.add(value(result));
+		}
+
+		return result;
+	}
+
+	private static boolean isConstant(Expression e) {
+		return e.getExpressionType() == ExpressionType.Constant;
+	}
+
+	private static boolean isImmutableConstant(Expression e) {
+		return isConstant(e) && Purity.isImmutable(value(e));
+	}
+
+	private static Object value(Expression e) {
+		return ((ConstantExpression) e).getValue();
+	}
+
+	private static Expression evaluate(Expression e) {
+		Object value;
+		try {
+			value = Interpreter.evaluate(e, null);
+		} catch (RuntimeException ex) {
+			return e;
+		}
+
+		Class<?> type = e.getResultType();
+		if (type.isPrimitive() ? !TypeConverter.boxedType(type).isInstance(value) : value != null && !type.isInstance(value)) {
+			return e;
+		}
+
+		return Expression.constant(value, type);
+	}
+}
@@ -26,12 +26,16 @@ import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Provides the base class from which the classes that represent expression tree nodes are derived. It also contains
@@ -96,6 +100,10 @@ public abstract class Expression {
 		return type == Float.class || type == Double.class || type == BigDecimal.class;
 	}
 
+	private static boolean isFloatingPoint(Class<?> type) {
+		return type == Float.TYPE || type == Double.TYPE || type == Float.class || type == Double.class;
+	}
+
 	private static boolean isIntegral(Class<?> type) {
 		if (!type.isPrimitive()) {
 			return type == Byte.class || type == Integer.class || type == Long.class || type == Short.class || type == BigInteger.class;
@@ -404,6 +412,111 @@ public abstract class Expression {
 		return createBooleanExpression(ExpressionType.LogicalOr, first, second);
 	}
 
+	/**
+	 * Creates a {@link LogicalExpression} that represents a conditional AND operation of any number of operands, which
+	 * evaluates every operand only if the previous ones are {@code true}. Operands which are AND operations themselves
+	 * are flattened into it.
+	 *
+	 * @param operands The {@link Expression}s to set the getOperands() method equal to.
+	 * @return A {@link LogicalExpression} that has the {@link ExpressionType} method equal to Conjunction, the operand
+	 * if there is only one, or the constant {@code true} if there are none.
+	 */
+	public static Expression conjunction(List<? extends Expression> operands) {
+		return createLogical(ExpressionType.Conjunction, ExpressionType.LogicalAnd, operands);
+	}
+
+	/**
+	 * Creates a {@link LogicalExpression} that represents a conditional OR operation of any number of operands, which
+	 * evaluates every operand only if the previous ones are {@code false}. Operands which are OR operations themselves
+	 * are flattened into it.
+	 *
+	 * @param operands The {@link Expression}s to set the getOperands() method equal to.
+	 * @return A {@link LogicalExpression} that has the {@link ExpressionType} method equal to Disjunction, the operand
+	 * if there is only one, or the constant {@code false} if there are none.
+	 */
+	public static Expression disjunction(List<? extends Expression> operands) {
+		return createLogical(ExpressionType.Disjunction, ExpressionType.LogicalOr, operands);
+	}
+
+	private static Expression createLogical(int expressionType, int binaryType, List<? extends Expression> operands) {
+		List<Expression> flattened = new ArrayList<>(operands.size());
+		Deque<Expression> pending = new ArrayDeque<>();
+		for (int i = operands.size() - 1; i >= 0; i--) {
+			pending.push(operands.get(i));
+		}
+
+		// iterates, so long chains do not exhaust the stack
+		while (!pending.isEmpty()) {
+			Expression e = pending.pop();
+			if (e.getExpressionType() == expressionType) {
+				List<Expression> nested = ((LogicalExpression) e).getOperands();
+				for (int i = nested.size() - 1; i >= 0; i--) {
+					pending.push(nested.get(i));
+				}
+			} else if (e.getExpressionType() == binaryType) {
+				BinaryExpression binary = (BinaryExpression) e;
+				pending.push(binary.getSecond());
+				pending.push(binary.getFirst());
+			} else if (!e.isBoolean()) {
+				throw new IllegalArgumentException(e.getResultType().toString());
+			} else {
+				flattened.add(e);
+			}
+		}
+
+		switch (flattened.size()) {
+			case 0:
+				return constant(expressionType == ExpressionType.Conjunction, Boolean.TYPE);
+			case 1:
+				return flattened.get(0);
+			default:
+				return new LogicalExpression(expressionType, Collections.unmodifiableList(flattened));
+		}
+	}
+
+	/**
+	 * Creates an {@link InExpression} that represents a test of whether a value equals one of a set of constants.
+	 *
+	 * @param operand An {@link Expression} to set the getOperand() method equal to.
+	 * @param values  The constants to set the getValues() method equal to. The values of a primitive operand must be
+	 *                boxed values of its type.
+	 * @return An {@link InExpression} that has the {@link ExpressionType} method equal to In.
+	 */
+	public static InExpression in(Expression operand, Collection<?> values) {
+		Class<?> type = operand.getResultType();
+		for (Object value : values) {
+			if (value == null || type.isPrimitive() && !TypeConverter.boxedType(type).isInstance(value)) {
+				throw new IllegalArgumentException(String.valueOf(value));
+			}
+		}
+
+		return new InExpression(operand, Set.copyOf(values));
+	}
+
+	/**
+	 * Creates a {@link BetweenExpression} that represents a test of whether a number lies in a range.
+	 *
+	 * @param operand        An {@link Expression} of a primitive numeric or {@code char} type to set the getOperand()
+	 *                       method equal to.
+	 * @param lower          An {@link Expression} of the type of {@code operand} to set the getLower() method equal to.
+	 * @param lowerInclusive Whether the range contains {@code lower}.
+	 * @param upper          An {@link Expression} of the type of {@code operand} to set the getUpper() method equal to.
+	 * @param upperInclusive Whether the range contains {@code upper}.
+	 * @return A {@link BetweenExpression} that has the {@link ExpressionType} method equal to Between.
+	 */
+	public static BetweenExpression between(Expression operand, Expression lower, boolean lowerInclusive, Expression upper, boolean upperInclusive) {
+		Class<?> type = operand.getResultType();
+		if (!type.isPrimitive() || !isNumeric(type) && type != Character.TYPE) {
+			throw new IllegalArgumentException(type.toString());
+		}
+
+		if (lower.getResultType() != type || upper.getResultType() != type) {
+			throw new IllegalArgumentException(lower.getResultType() + ", " + upper.getResultType() + " != " + type);
+		}
+
+		return new BetweenExpression(operand, lower, lowerInclusive, upper, upperInclusive);
+	}
+
 	/**
 	 * Creates a {@link BinaryExpression} that represents a bitwise OR operation.
 	 *
@@ -816,7 +929,7 @@ public abstract class Expression {
 		}
 
 		if (method.isSynthetic()) {
-			var actualInstance = instance != null ? instance.accept(Interpreter.Instance).apply(null) : null;
+			var actualInstance = instance != null ? Interpreter.evaluate(instance, null) : null;
 			var lambdaExpression = ExpressionClassCracker.getInstance().lambdaFromFileSystem(actualInstance, method);
 			return invoke(lambdaExpression, arguments);
 		}
@@ -1035,7 +1148,9 @@ public abstract class Expression {
 	}
 
 	/**
-	 * Creates a {@link Expression} that represents a logical negation operation.
+	 * Creates a {@link Expression} that represents a logical negation operation. The negation is pushed into comparisons,
+	 * except for the ordered comparisons of floating-point numbers: both {@code a < b} and {@code a >= b} are
+	 * {@code false} if either is NaN, so they keep an explicit negation.
 	 *
 	 * @param e Operand
 	 * @return A {@link Expression} that represents a logical negation operation.
@@ -1078,6 +1193,17 @@ public abstract class Expression {
 				be = (BinaryExpression) e;
 				return convert(logicalAnd(logicalNot(be.getFirst()), logicalNot(be.getSecond())), be.getResultType());
 
+			case ExpressionType.Conjunction:
+			case ExpressionType.Disjunction: {
+				List<Expression> operands = ((LogicalExpression) e).getOperands();
+				List<Expression> negated = new ArrayList<>(operands.size());
+				for (Expression operand : operands) {
+					negated.add(logicalNot(operand));
+				}
+
+				return e.getExpressionType() == ExpressionType.Conjunction ? disjunction(negated) : conjunction(negated);
+			}
+
 			case ExpressionType.Equal:
 				type = ExpressionType.NotEqual;
 				break;
@@ -1101,6 +1227,10 @@ public abstract class Expression {
 		}
 
 		be = (BinaryExpression) e;
+		if (type != ExpressionType.Equal && type != ExpressionType.NotEqual && (isFloatingPoint(be.getFirst().getResultType())
+				|| isFloatingPoint(be.getSecond().getResultType()))) {
+			return new UnaryExpression(ExpressionType.LogicalNot, e.getResultType(), e);
+		}
 
 		return binary(type, be.getFirst(), be.getSecond());
 	}
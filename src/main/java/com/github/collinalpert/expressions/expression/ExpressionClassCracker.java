@@ -16,6 +16,7 @@
 package com.github.collinalpert.expressions.expression;
 
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Type;
 
 import java.io.File;
@@ -108,45 +109,8 @@ class ExpressionClassCracker {
 		Class<?> lambdaType = lambdaVisitor.getType();
 		List<ParameterExpression> lambdaParams = Arrays.asList(lambdaVisitor.getParams());
 
-		Expression stripped = stripConvertExpressions(lambdaExpression);
-
-		if (stripped instanceof InvocationExpression) {
-			InvocationExpression invocation = (InvocationExpression) stripped;
-			InvocableExpression target = invocation.getTarget();
-			if (target instanceof LambdaExpression) {
-				REDUCE_CHECK:
-				while (true) {
-					if (!lambdaType.isAssignableFrom(target.getResultType())) {
-						break;
-					}
-
-					List<Expression> args = invocation.getArguments();
-					int psize = lambdaParams.size();
-					if (psize != args.size()) {
-						break;
-					}
-					for (int i = 0; i < psize; i++) {
-						Expression arg = args.get(i);
-						if (!(arg instanceof ParameterExpression)) {
-							break REDUCE_CHECK;
-						}
-						ParameterExpression parg = (ParameterExpression) arg;
-						ParameterExpression param = lambdaParams.get(i);
-						if (parg.getIndex() != param.getIndex()) {
-							break REDUCE_CHECK;
-						}
-						if (!param.getResultType().isAssignableFrom(parg.getResultType())) {
-							break REDUCE_CHECK;
-						}
-					}
-
-					return (LambdaExpression) target;
-				}
-			}
-		}
-
 		Expression actualExpression = TypeConverter.convert(lambdaExpression, lambdaType);
-		return Expression.lambda(lambdaType, actualExpression, lambdaParams);
+		return BetaReducer.reduce(Expression.lambda(lambdaType, actualExpression, lambdaParams));
 	}
 
 	LambdaExpression lambda(SerializedLambda extracted, ClassLoader lambdaClassLoader) {
@@ -166,7 +130,7 @@ class ExpressionClassCracker {
 		var extractedLambda = Expression.lambda(actualVisitor.getType(), reducedExpression, List.of(params));
 
 		if (!hasCapturedArgs || (hasThis && extracted.capturedArgs.length == 1)) {
-			return extractedLambda;
+			return BetaReducer.reduce(extractedLambda);
 		}
 
 		List<Expression> args = new ArrayList<>(params.length);
@@ -197,7 +161,7 @@ class ExpressionClassCracker {
 
 		InvocationExpression newTarget = Expression.invoke(extractedLambda, args);
 
-		return Expression.lambda(actualVisitor.getType(), newTarget, Collections.unmodifiableList(finalParams));
+		return BetaReducer.reduce(Expression.lambda(actualVisitor.getType(), newTarget, Collections.unmodifiableList(finalParams)));
 	}
 
 	@SuppressWarnings("unchecked")
@@ -261,16 +225,27 @@ class ExpressionClassCracker {
 
 	private ExpressionClassVisitor parseClass(ClassLoader classLoader, String className, Supplier<ConstantExpression> instance, String method,
 											  String methodDescriptor) {
-		String classFilePath = classFilePath(className);
 		ExpressionClassVisitor visitor = new ExpressionClassVisitor(classLoader, instance, method, methodDescriptor);
 		try {
-			try (InputStream classStream = getResourceAsStream(classLoader, classFilePath)) {
-				ClassReader reader = new ClassReader(classStream);
-				reader.accept(visitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-				return visitor;
-			}
+			readClass(classLoader, className, visitor);
+			return visitor;
 		} catch (IOException e) {
-			throw new RuntimeException("error parsing class file " + classFilePath, e);
+			throw new RuntimeException("error parsing class file " + classFilePath(className), e);
+		}
+	}
+
+	/**
+	 * Reads the class file of a class, without debug information and stack map frames.
+	 *
+	 * @param classLoader The class loader loading the class file.
+	 * @param className   The binary name of the class.
+	 * @param visitor     The visitor of the class file.
+	 * @throws IOException if the class file cannot be read.
+	 */
+	void readClass(ClassLoader classLoader, String className, ClassVisitor visitor) throws IOException {
+		try (InputStream classStream = getResourceAsStream(classLoader, classFilePath(className))) {
+			ClassReader reader = new ClassReader(classStream);
+			reader.accept(visitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
 		}
 	}
 
@@ -282,13 +257,6 @@ class ExpressionClassCracker {
 		return stream;
 	}
 
-	private Expression stripConvertExpressions(Expression expression) {
-		while (expression.getExpressionType() == ExpressionType.Convert) {
-			expression = ((UnaryExpression) expression).getFirst();
-		}
-		return expression;
-	}
-
 	private static final class ParameterReplacer extends SimpleExpressionVisitor {
 		private final Object lambda;
 		private List<Integer> paramIndices;
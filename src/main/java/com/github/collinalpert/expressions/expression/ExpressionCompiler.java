@@ -0,0 +1,1579 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import com.github.collinalpert.expressions.function.math.BinaryOperator;
+import com.github.collinalpert.expressions.function.math.UnaryOperator;
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Compiles a {@link LambdaExpression} to a class implementing a functional interface.
+ * <p>
+ * Members are accessed with direct {@code invoke*}/{@code get*} instructions when they are accessible from the generated
+ * class and through constant {@link MethodHandle}s otherwise. Numeric operations and comparisons use primitive
+ * instructions, logical operators short-circuit with branches. Every compilation defines its class in a fresh class
+ * loader, so the class is unloaded together with the function. Trees which cannot be compiled, including trees too
+ * large for a class file, cause {@link UnsupportedOperationException}.
+ * </p>
+ */
+final class ExpressionCompiler implements ExpressionVisitor<Class<?>> {
+
+	private static final String PREFIX = "com/github/collinalpert/expressions/expression/generated/CompiledLambda$";
+	private static final String ADAPTER_PREFIX = "com/github/collinalpert/expressions/expression/generated/CompiledAdapter$";
+	private static final AtomicInteger counter = new AtomicInteger();
+	private static final BiFunction<Object, Object[], Object> delegateInvoker = ExpressionCompiler::invokeDelegate;
+	private static final ClassValue<Constructor<?>> adapters = new ClassValue<>() {
+		@Override
+		protected Constructor<?> computeValue(Class<?> functionalInterface) {
+			return defineAdapter(functionalInterface);
+		}
+	};
+
+	private final String className = PREFIX + counter.incrementAndGet();
+	private final Map<String, Class<?>> types = new HashMap<>();
+	private final List<Object> constants = new ArrayList<>();
+	private final List<Class<?>> constantTypes = new ArrayList<>();
+	private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+	private final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+		@Override
+		protected String getCommonSuperClass(String type1, String type2) {
+			return commonSuperClass(type1, type2);
+		}
+	};
+
+	private MethodVisitor mv;
+	private int[] slots;
+	private Class<?>[] slotTypes;
+	private int nextLocal;
+
+	private ExpressionCompiler() {
+	}
+
+	/**
+	 * Compiles the lambda to a {@link Function} taking the lambda arguments as an array.
+	 *
+	 * @param lambda The lambda to compile.
+	 * @return A {@link Function} which evaluates {@code lambda}.
+	 */
+	@SuppressWarnings("unchecked")
+	static Function<Object[], ?> compile(LambdaExpression lambda) {
+		return new ExpressionCompiler().define(lambda, Function.class, true);
+	}
+
+	/**
+	 * Compiles the lambda to an implementation of a functional interface.
+	 *
+	 * @param lambda              The lambda to compile.
+	 * @param functionalInterface The interface to implement.
+	 * @param <F>                 The type of the interface.
+	 * @return An instance of {@code functionalInterface} which evaluates {@code lambda}.
+	 */
+	static <F> F compile(LambdaExpression lambda, Class<F> functionalInterface) {
+		return new ExpressionCompiler().define(lambda, functionalInterface, false);
+	}
+
+	/**
+	 * Implements a functional interface with a {@link MethodHandle}, passing the arguments and the result unboxed. The
+	 * adapter class is defined once for every interface.
+	 *
+	 * @param functionalInterface The interface to implement.
+	 * @param handle              The handle, of the type of the first of the {@link #getFunctionalMethods functional
+	 *                            methods} of the interface.
+	 * @param <F>                 The type of the interface.
+	 * @return An instance of {@code functionalInterface} invoking {@code handle}.
+	 */
+	static <F> F adapt(Class<F> functionalInterface, MethodHandle handle) {
+		try {
+			return functionalInterface.cast(adapters.get(functionalInterface).newInstance(handle));
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException(e);
+		}
+	}
+
+	private static Constructor<?> defineAdapter(Class<?> functionalInterface) {
+		List<Method> methods = getFunctionalMethods(functionalInterface);
+		Map<String, Class<?>> types = new HashMap<>();
+		registerAccessible(functionalInterface, types);
+		for (Method m : methods) {
+			registerAccessible(m.getReturnType(), types);
+			for (Class<?> type : m.getParameterTypes()) {
+				registerAccessible(type, types);
+			}
+		}
+
+		String className = ADAPTER_PREFIX + counter.incrementAndGet();
+		String handleDescriptor = Type.getDescriptor(MethodHandle.class);
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(V11, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, className, null, "java/lang/Object",
+				new String[]{Type.getInternalName(functionalInterface)});
+		cw.visitField(ACC_PRIVATE | ACC_FINAL, "handle", handleDescriptor, null, null).visitEnd();
+
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(" + handleDescriptor + ")V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 1);
+		mv.visitFieldInsn(PUTFIELD, className, "handle", handleDescriptor);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		String exact = Type.getMethodDescriptor(methods.get(0));
+		for (Method m : methods) {
+			String descriptor = Type.getMethodDescriptor(m);
+			mv = cw.visitMethod(ACC_PUBLIC | ACC_FINAL, m.getName(), descriptor, null, null);
+			mv.visitCode();
+			mv.visitVarInsn(ALOAD, 0);
+			mv.visitFieldInsn(GETFIELD, className, "handle", handleDescriptor);
+			int local = 1;
+			for (Class<?> parameterType : m.getParameterTypes()) {
+				Type type = Type.getType(parameterType);
+				mv.visitVarInsn(type.getOpcode(ILOAD), local);
+				local += type.getSize();
+			}
+
+			// the other methods, like bridges of generic interfaces, convert their arguments to the handle type
+			String invoke = descriptor.equals(exact) ? "invokeExact" : "invoke";
+			mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(MethodHandle.class), invoke, descriptor, false);
+			mv.visitInsn(Type.getType(m.getReturnType()).getOpcode(IRETURN));
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+
+		cw.visitEnd();
+
+		try {
+			CompiledLambdaLoader loader = new CompiledLambdaLoader(ExpressionCompiler.class.getClassLoader(), types, new Object[0]);
+			return loader.define(className.replace('/', '.'), cw.toByteArray()).getConstructor(MethodHandle.class);
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new UnsupportedOperationException(e);
+		}
+	}
+
+	private static void registerAccessible(Class<?> type, Map<String, Class<?>> types) {
+		if (!isAccessible(type)) {
+			throw new UnsupportedOperationException(type + " is not accessible.");
+		}
+
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+
+		if (!type.isPrimitive()) {
+			types.put(type.getName(), type);
+		}
+	}
+
+	static List<Method> getFunctionalMethods(Class<?> functionalInterface) {
+		if (!functionalInterface.isInterface()) {
+			throw new IllegalArgumentException(functionalInterface + " is not an interface.");
+		}
+
+		Map<String, Method> methods = new LinkedHashMap<>();
+		for (Method m : functionalInterface.getMethods()) {
+			if (!Modifier.isAbstract(m.getModifiers()) || isObjectMethod(m)) {
+				continue;
+			}
+
+			Method first = methods.values().stream().findFirst().orElse(m);
+			if (!first.getName().equals(m.getName()) || first.getParameterCount() != m.getParameterCount()) {
+				throw new IllegalArgumentException(functionalInterface + " is not a functional interface.");
+			}
+
+			methods.putIfAbsent(Type.getMethodDescriptor(m), m);
+		}
+
+		if (methods.isEmpty()) {
+			throw new IllegalArgumentException(functionalInterface + " is not a functional interface.");
+		}
+
+		return new ArrayList<>(methods.values());
+	}
+
+	private static boolean isObjectMethod(Method m) {
+		try {
+			Object.class.getMethod(m.getName(), m.getParameterTypes());
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	static Object invokeDelegate(Object target, Object[] arguments) {
+		return Interpreter.invoke((InvocableExpression) target, arguments);
+	}
+
+	static boolean isAccessible(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+
+		if (type.isPrimitive()) {
+			return true;
+		}
+
+		return Modifier.isPublic(type.getModifiers()) && !type.isSynthetic() && type.getModule().isExported(type.getPackageName());
+	}
+
+	static Class<?> accessibleType(Class<?> type) {
+		if (isAccessible(type)) {
+			return type;
+		}
+
+		if (type.isArray()) {
+			return Object[].class;
+		}
+
+		if (type.isInterface()) {
+			return Object.class;
+		}
+
+		do {
+			type = type.getSuperclass();
+		} while (!isAccessible(type));
+
+		return type;
+	}
+
+	private static boolean isRelational(int expressionType) {
+		switch (expressionType) {
+			case ExpressionType.GreaterThan:
+			case ExpressionType.GreaterThanOrEqual:
+			case ExpressionType.LessThan:
+			case ExpressionType.LessThanOrEqual:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static int negateComparison(int expressionType) {
+		switch (expressionType) {
+			case ExpressionType.Equal:
+				return ExpressionType.NotEqual;
+			case ExpressionType.NotEqual:
+				return ExpressionType.Equal;
+			case ExpressionType.GreaterThan:
+				return ExpressionType.LessThanOrEqual;
+			case ExpressionType.GreaterThanOrEqual:
+				return ExpressionType.LessThan;
+			case ExpressionType.LessThan:
+				return ExpressionType.GreaterThanOrEqual;
+			case ExpressionType.LessThanOrEqual:
+				return ExpressionType.GreaterThan;
+			default:
+				throw new IllegalArgumentException(ExpressionType.toString(expressionType));
+		}
+	}
+
+	private static int compareJump(int expressionType, boolean integers) {
+		switch (expressionType) {
+			case ExpressionType.Equal:
+				return integers ? IF_ICMPEQ : IFEQ;
+			case ExpressionType.NotEqual:
+				return integers ? IF_ICMPNE : IFNE;
+			case ExpressionType.GreaterThan:
+				return integers ? IF_ICMPGT : IFGT;
+			case ExpressionType.GreaterThanOrEqual:
+				return integers ? IF_ICMPGE : IFGE;
+			case ExpressionType.LessThan:
+				return integers ? IF_ICMPLT : IFLT;
+			case ExpressionType.LessThanOrEqual:
+				return integers ? IF_ICMPLE : IFLE;
+			default:
+				throw new IllegalArgumentException(ExpressionType.toString(expressionType));
+		}
+	}
+
+	private static boolean isNumeric(Class<?> type) {
+		return type != null && type.isPrimitive() && type != Boolean.TYPE && type != Void.TYPE;
+	}
+
+	private static Class<?> promote(Class<?> type) {
+		if (type == Long.TYPE || type == Float.TYPE || type == Double.TYPE) {
+			return type;
+		}
+
+		return Integer.TYPE;
+	}
+
+	private static Class<?> promote(Class<?> first, Class<?> second) {
+		if (first == Double.TYPE || second == Double.TYPE) {
+			return Double.TYPE;
+		}
+
+		if (first == Float.TYPE || second == Float.TYPE) {
+			return Float.TYPE;
+		}
+
+		if (first == Long.TYPE || second == Long.TYPE) {
+			return Long.TYPE;
+		}
+
+		return Integer.TYPE;
+	}
+
+	private static Class<?> unboxed(Expression e) {
+		return TypeConverter.unboxedType(e.getResultType());
+	}
+
+	@SuppressWarnings("unchecked")
+	private <F> F define(LambdaExpression lambda, Class<F> functionalInterface, boolean spread) {
+		if (!isAccessible(functionalInterface)) {
+			throw new UnsupportedOperationException(functionalInterface + " is not accessible.");
+		}
+
+		List<Method> methods = getFunctionalMethods(functionalInterface);
+
+		cw.visit(V11, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, className, null, "java/lang/Object",
+				new String[]{internalName(functionalInterface)});
+
+		mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		for (Method m : methods) {
+			emitMethod(lambda, m, spread);
+		}
+
+		emitInitializer();
+		cw.visitEnd();
+
+		try {
+			byte[] code = cw.toByteArray();
+			CompiledLambdaLoader loader = new CompiledLambdaLoader(ExpressionCompiler.class.getClassLoader(), types, constants.toArray());
+			Class<?> compiled = loader.define(className.replace('/', '.'), code);
+			return (F) compiled.getConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError | TypeNotPresentException | MethodTooLargeException | ClassTooLargeException e) {
+			// a body beyond the limits of a class file is interpreted instead
+			throw new UnsupportedOperationException(e);
+		}
+	}
+
+	private void emitMethod(LambdaExpression lambda, Method m, boolean spread) {
+		mv = cw.visitMethod(ACC_PUBLIC | ACC_FINAL, m.getName(), methodDescriptor(m.getReturnType(), m.getParameterTypes()), null, null);
+		mv.visitCode();
+
+		Class<?>[] interfaceParams = m.getParameterTypes();
+		int[] interfaceLocals = new int[interfaceParams.length];
+		nextLocal = 1;
+		for (int i = 0; i < interfaceParams.length; i++) {
+			interfaceLocals[i] = nextLocal;
+			nextLocal += Type.getType(interfaceParams[i]).getSize();
+		}
+
+		List<ParameterExpression> params = lambda.getParameters();
+		if (!spread && params.size() != interfaceParams.length) {
+			throw new IllegalArgumentException(lambda + " does not match " + m);
+		}
+
+		int size = params.stream().mapToInt(ParameterExpression::getIndex).max().orElse(-1) + 1;
+		slots = new int[size];
+		slotTypes = new Class<?>[size];
+		for (ParameterExpression p : params) {
+			int index = p.getIndex();
+			Class<?> type;
+			if (spread) {
+				mv.visitVarInsn(ALOAD, 1);
+				mv.visitTypeInsn(CHECKCAST, "[Ljava/lang/Object;");
+				push(index);
+				mv.visitInsn(AALOAD);
+				type = Object.class;
+			} else {
+				type = interfaceParams[index];
+				mv.visitVarInsn(Type.getType(type).getOpcode(ILOAD), interfaceLocals[index]);
+			}
+
+			if (!type.isPrimitive() || TypeConverter.unboxedType(p.getResultType()) != type) {
+				type = convert(type, p.getResultType());
+			}
+			slots[index] = store(type);
+			slotTypes[index] = type;
+		}
+
+		Class<?> returnType = m.getReturnType();
+		if (returnType == Void.TYPE) {
+			pop(lambda.getBody().accept(this));
+			mv.visitInsn(RETURN);
+		} else {
+			Class<?> result = visit(lambda.getBody(), returnType);
+			if (!returnType.isAssignableFrom(convert(result, returnType))) {
+				throw new UnsupportedOperationException(result + " cannot be returned as " + returnType);
+			}
+			mv.visitInsn(Type.getType(returnType).getOpcode(IRETURN));
+		}
+
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private void emitInitializer() {
+		if (constants.isEmpty()) {
+			return;
+		}
+
+		mv = cw.visitMethod(ACC_STATIC, "<clinit>", "()V", null, null);
+		mv.visitCode();
+		mv.visitLdcInsn(Type.getObjectType(className));
+		mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "getClassLoader", "()Ljava/lang/ClassLoader;", false);
+		mv.visitTypeInsn(CHECKCAST, "java/util/function/Supplier");
+		mv.visitMethodInsn(INVOKEINTERFACE, "java/util/function/Supplier", "get", "()Ljava/lang/Object;", true);
+		mv.visitTypeInsn(CHECKCAST, "[Ljava/lang/Object;");
+		for (int i = 0; i < constants.size(); i++) {
+			Class<?> type = constantTypes.get(i);
+			String descriptor = descriptor(type);
+			cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "c" + i, descriptor, null, null).visitEnd();
+
+			mv.visitInsn(DUP);
+			push(i);
+			mv.visitInsn(AALOAD);
+			if (type != Object.class) {
+				mv.visitTypeInsn(CHECKCAST, internalName(type));
+			}
+			mv.visitFieldInsn(PUTSTATIC, className, "c" + i, descriptor);
+		}
+		mv.visitInsn(POP);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private String commonSuperClass(String type1, String type2) {
+		Class<?> first = resolve(type1);
+		Class<?> second = resolve(type2);
+		if (first.isAssignableFrom(second)) {
+			return type1;
+		}
+
+		if (second.isAssignableFrom(first)) {
+			return type2;
+		}
+
+		if (first.isInterface() || second.isInterface()) {
+			return "java/lang/Object";
+		}
+
+		do {
+			first = first.getSuperclass();
+		} while (!first.isAssignableFrom(second));
+
+		return internalName(first);
+	}
+
+	private Class<?> resolve(String internalName) {
+		String name = internalName.replace('/', '.');
+		Class<?> type = types.get(name);
+		if (type != null) {
+			return type;
+		}
+
+		try {
+			return Class.forName(name, false, ExpressionCompiler.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new TypeNotPresentException(name, e);
+		}
+	}
+
+	private void register(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+
+		if (type.isPrimitive()) {
+			return;
+		}
+
+		Class<?> existing = types.putIfAbsent(type.getName(), type);
+		if (existing != null && existing != type) {
+			throw new UnsupportedOperationException("Ambiguous type " + type.getName());
+		}
+	}
+
+	private String internalName(Class<?> type) {
+		register(type);
+		return Type.getInternalName(type);
+	}
+
+	private String descriptor(Class<?> type) {
+		register(type);
+		return Type.getDescriptor(type);
+	}
+
+	private String methodDescriptor(Class<?> returnType, Class<?>... parameterTypes) {
+		register(returnType);
+		for (Class<?> p : parameterTypes) {
+			register(p);
+		}
+
+		return Type.getMethodDescriptor(Type.getType(returnType), toTypes(parameterTypes));
+	}
+
+	private static Type[] toTypes(Class<?>[] classes) {
+		Type[] types = new Type[classes.length];
+		for (int i = 0; i < classes.length; i++) {
+			types[i] = Type.getType(classes[i]);
+		}
+		return types;
+	}
+
+	private int addConstant(Object value, Class<?> type) {
+		constants.add(value);
+		constantTypes.add(type);
+		return constants.size() - 1;
+	}
+
+	private Class<?> loadConstant(Object value, Class<?> type) {
+		Integer index = constantIndices.get(value);
+		if (index == null || !type.isAssignableFrom(constantTypes.get(index))) {
+			index = addConstant(value, type);
+			constantIndices.put(value, index);
+		}
+
+		return loadConstant(index);
+	}
+
+	private Class<?> loadConstant(int index) {
+		Class<?> type = constantTypes.get(index);
+		mv.visitFieldInsn(GETSTATIC, className, "c" + index, descriptor(type));
+		return type;
+	}
+
+	private int store(Class<?> type) {
+		int local = nextLocal;
+		Type t = Type.getType(type);
+		mv.visitVarInsn(t.getOpcode(ISTORE), local);
+		nextLocal += t.getSize();
+		return local;
+	}
+
+	private void pop(Class<?> type) {
+		if (type == Void.TYPE) {
+			return;
+		}
+
+		mv.visitInsn(Type.getType(type).getSize() == 2 ? POP2 : POP);
+	}
+
+	private void push(int value) {
+		if (value >= -1 && value <= 5) {
+			mv.visitInsn(ICONST_0 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			mv.visitIntInsn(BIPUSH, value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			mv.visitIntInsn(SIPUSH, value);
+		} else {
+			mv.visitLdcInsn(value);
+		}
+	}
+
+	private void push(long value) {
+		if (value == 0L || value == 1L) {
+			mv.visitInsn(LCONST_0 + (int) value);
+		} else {
+			mv.visitLdcInsn(value);
+		}
+	}
+
+	private void push(float value) {
+		if (Float.floatToRawIntBits(value) == 0 || value == 1f || value == 2f) {
+			mv.visitInsn(FCONST_0 + (int) value);
+		} else {
+			mv.visitLdcInsn(value);
+		}
+	}
+
+	private void push(double value) {
+		if (Double.doubleToRawLongBits(value) == 0L || value == 1d) {
+			mv.visitInsn(DCONST_0 + (int) value);
+		} else {
+			mv.visitLdcInsn(value);
+		}
+	}
+
+	private boolean pushPrimitive(Object value, Class<?> type) {
+		if (value instanceof Boolean) {
+			value = (Boolean) value ? 1 : 0;
+		} else if (value instanceof Character) {
+			value = (int) (Character) value;
+		}
+
+		if (!(value instanceof Number)) {
+			return false;
+		}
+
+		Number n = (Number) value;
+		if (type == Long.TYPE) {
+			push(n.longValue());
+		} else if (type == Float.TYPE) {
+			push(n.floatValue());
+		} else if (type == Double.TYPE) {
+			push(n.doubleValue());
+		} else {
+			push(n.intValue());
+		}
+
+		return true;
+	}
+
+	/**
+	 * Converts the value on top of the stack.
+	 *
+	 * @param from The type of the value on top of the stack.
+	 * @param to   The type to convert to.
+	 * @return The type of the value on top of the stack after the conversion. Differs from {@code to} when {@code to} is
+	 * a reference type the value is already assignable to or which cannot be referenced from the generated class.
+	 */
+	private Class<?> convert(Class<?> from, Class<?> to) {
+		if (from == to) {
+			return to;
+		}
+
+		if (from == Void.TYPE || to == Void.TYPE) {
+			throw new UnsupportedOperationException("void");
+		}
+
+		if (to.isPrimitive()) {
+			if (from.isPrimitive()) {
+				convertPrimitive(from, to);
+				return to;
+			}
+
+			Class<?> primitive = TypeConverter.unboxedType(from);
+			if (primitive != null) {
+				unbox(from, primitive);
+				convertPrimitive(primitive, to);
+				return to;
+			}
+
+			if (to == Boolean.TYPE || to == Character.TYPE) {
+				Class<?> box = TypeConverter.boxedType(to);
+				mv.visitTypeInsn(CHECKCAST, internalName(box));
+				unbox(box, to);
+				return to;
+			}
+
+			if (!Number.class.isAssignableFrom(from)) {
+				mv.visitTypeInsn(CHECKCAST, "java/lang/Number");
+			}
+			Class<?> result = to == Byte.TYPE || to == Short.TYPE || to == Long.TYPE || to == Float.TYPE || to == Double.TYPE ? to : Integer.TYPE;
+			mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Number", result.getName() + "Value", methodDescriptor(result), false);
+			convertPrimitive(result, to);
+			return to;
+		}
+
+		if (from.isPrimitive()) {
+			Class<?> primitive = TypeConverter.unboxedType(to);
+			if (primitive != null) {
+				convertPrimitive(from, primitive);
+				return box(primitive);
+			}
+
+			if (to == BigInteger.class) {
+				convertPrimitive(from, Long.TYPE);
+				mv.visitMethodInsn(INVOKESTATIC, "java/math/BigInteger", "valueOf", "(J)Ljava/math/BigInteger;", false);
+				return to;
+			}
+
+			if (to == BigDecimal.class) {
+				convertPrimitive(from, Double.TYPE);
+				mv.visitMethodInsn(INVOKESTATIC, "java/math/BigDecimal", "valueOf", "(D)Ljava/math/BigDecimal;", false);
+				return to;
+			}
+
+			return convert(box(from), to);
+		}
+
+		if (to.isAssignableFrom(from)) {
+			return from;
+		}
+
+		if (to.isInterface() && InvocableExpression.class.isAssignableFrom(from)) {
+			return from; // special case: lambda passed as a functional interface argument
+		}
+
+		Class<?> primitive = TypeConverter.unboxedType(from);
+		if (primitive != null && (TypeConverter.unboxedType(to) != null || to == BigInteger.class || to == BigDecimal.class)) {
+			unbox(from, primitive);
+			return convert(primitive, to);
+		}
+
+		if (!isAccessible(to)) {
+			return from;
+		}
+
+		mv.visitTypeInsn(CHECKCAST, internalName(to));
+		return to;
+	}
+
+	private void convertPrimitive(Class<?> from, Class<?> to) {
+		if (from == to) {
+			return;
+		}
+
+		if (to == Boolean.TYPE) {
+			convertPrimitive(from, Integer.TYPE);
+			return;
+		}
+
+		Type source = Type.getType(promote(from));
+		Type target = Type.getType(promote(to));
+		if (source.getSort() != target.getSort()) {
+			switch (source.getSort()) {
+				case Type.INT:
+					mv.visitInsn(target.getSort() == Type.LONG ? I2L : target.getSort() == Type.FLOAT ? I2F : I2D);
+					break;
+				case Type.LONG:
+					mv.visitInsn(target.getSort() == Type.INT ? L2I : target.getSort() == Type.FLOAT ? L2F : L2D);
+					break;
+				case Type.FLOAT:
+					mv.visitInsn(target.getSort() == Type.INT ? F2I : target.getSort() == Type.LONG ? F2L : F2D);
+					break;
+				default:
+					mv.visitInsn(target.getSort() == Type.INT ? D2I : target.getSort() == Type.LONG ? D2L : D2F);
+					break;
+			}
+		}
+
+		if (to == Byte.TYPE) {
+			mv.visitInsn(I2B);
+		} else if (to == Short.TYPE) {
+			mv.visitInsn(I2S);
+		} else if (to == Character.TYPE) {
+			mv.visitInsn(I2C);
+		}
+	}
+
+	private Class<?> box(Class<?> primitive) {
+		Class<?> box = TypeConverter.boxedType(primitive);
+		mv.visitMethodInsn(INVOKESTATIC, internalName(box), "valueOf", methodDescriptor(box, primitive), false);
+		return box;
+	}
+
+	private void unbox(Class<?> box, Class<?> primitive) {
+		mv.visitMethodInsn(INVOKEVIRTUAL, internalName(box), primitive.getName() + "Value", methodDescriptor(primitive), false);
+	}
+
+	private Class<?> toReference(Class<?> type) {
+		return type.isPrimitive() ? box(type) : type;
+	}
+
+	/**
+	 * Emits {@code e} for a consumer expecting {@code type}. When {@code type} is primitive and {@code e} merely boxes a
+	 * primitive value, the value is left unboxed.
+	 *
+	 * @return The type of the value on top of the stack.
+	 */
+	private Class<?> visit(Expression e, Class<?> type) {
+		Class<?> primitive;
+		if (!type.isPrimitive() || e.getResultType().isPrimitive() || (primitive = unboxed(e)) == null) {
+			return e.accept(this);
+		}
+
+		switch (e.getExpressionType()) {
+			case ExpressionType.Convert: {
+				Expression operand = ((UnaryExpression) e).getFirst();
+				if (operand.getResultType() == primitive || unboxed(operand) == primitive) {
+					return visit(operand, type);
+				}
+				break;
+			}
+			case ExpressionType.Constant:
+				if (pushPrimitive(((ConstantExpression) e).getValue(), primitive)) {
+					return primitive;
+				}
+				break;
+			case ExpressionType.Parameter: {
+				int index = ((ParameterExpression) e).getIndex();
+				if (index < slotTypes.length && slotTypes[index] == primitive) {
+					mv.visitVarInsn(Type.getType(primitive).getOpcode(ILOAD), slots[index]);
+					return primitive;
+				}
+				break;
+			}
+			default:
+				break;
+		}
+
+		return e.accept(this);
+	}
+
+	private static Class<?> preferred(Class<?> type) {
+		Class<?> primitive = TypeConverter.unboxedType(type);
+		return primitive != null ? primitive : type;
+	}
+
+	private Class<?> booleanValue(Expression e) {
+		Label isFalse = new Label();
+		Label end = new Label();
+		branch(e, false, isFalse);
+		mv.visitInsn(ICONST_1);
+		mv.visitJumpInsn(GOTO, end);
+		mv.visitLabel(isFalse);
+		mv.visitInsn(ICONST_0);
+		mv.visitLabel(end);
+		return Boolean.TYPE;
+	}
+
+	/**
+	 * Emits a jump to {@code target} taken when {@code e} evaluates to {@code jumpIf}.
+	 */
+	private void branch(Expression e, boolean jumpIf, Label target) {
+		switch (e.getExpressionType()) {
+			case ExpressionType.LogicalAnd:
+			case ExpressionType.LogicalOr: {
+				BinaryExpression b = (BinaryExpression) e;
+				boolean and = e.getExpressionType() == ExpressionType.LogicalAnd;
+				if (and == jumpIf) {
+					Label skip = new Label();
+					branch(b.getFirst(), !jumpIf, skip);
+					branch(b.getSecond(), jumpIf, target);
+					mv.visitLabel(skip);
+				} else {
+					branch(b.getFirst(), jumpIf, target);
+					branch(b.getSecond(), jumpIf, target);
+				}
+				return;
+			}
+			case ExpressionType.Between:
+				if (jumpIf) {
+					Label outside = new Label();
+					between((BetweenExpression) e, outside);
+					mv.visitJumpInsn(GOTO, target);
+					mv.visitLabel(outside);
+				} else {
+					between((BetweenExpression) e, target);
+				}
+				return;
+			case ExpressionType.Conjunction:
+			case ExpressionType.Disjunction: {
+				List<Expression> operands = ((LogicalExpression) e).getOperands();
+				int last = operands.size() - 1;
+				boolean and = e.getExpressionType() == ExpressionType.Conjunction;
+				if (and == jumpIf) {
+					Label skip = new Label();
+					for (int i = 0; i < last; i++) {
+						branch(operands.get(i), !jumpIf, skip);
+					}
+					branch(operands.get(last), jumpIf, target);
+					mv.visitLabel(skip);
+				} else {
+					for (Expression operand : operands) {
+						branch(operand, jumpIf, target);
+					}
+				}
+				return;
+			}
+			case ExpressionType.LogicalNot:
+				branch(((UnaryExpression) e).getFirst(), !jumpIf, target);
+				return;
+			case ExpressionType.Conditional: {
+				BinaryExpression b = (BinaryExpression) e;
+				if (unboxed(b) != Boolean.TYPE) {
+					break;
+				}
+				Label ifFalse = new Label();
+				Label end = new Label();
+				branch(b.getOperator(), false, ifFalse);
+				branch(b.getFirst(), jumpIf, target);
+				mv.visitJumpInsn(GOTO, end);
+				mv.visitLabel(ifFalse);
+				branch(b.getSecond(), jumpIf, target);
+				mv.visitLabel(end);
+				return;
+			}
+			case ExpressionType.Constant: {
+				Object value = ((ConstantExpression) e).getValue();
+				if (value instanceof Boolean) {
+					if ((Boolean) value == jumpIf) {
+						mv.visitJumpInsn(GOTO, target);
+					}
+					return;
+				}
+				break;
+			}
+			case ExpressionType.IsNull:
+			case ExpressionType.IsNonNull: {
+				Class<?> type = ((UnaryExpression) e).getFirst().accept(this);
+				if (type.isPrimitive()) {
+					pop(type);
+					if ((e.getExpressionType() == ExpressionType.IsNonNull) == jumpIf) {
+						mv.visitJumpInsn(GOTO, target);
+					}
+				} else {
+					mv.visitJumpInsn((e.getExpressionType() == ExpressionType.IsNull) == jumpIf ? IFNULL : IFNONNULL, target);
+				}
+				return;
+			}
+			case ExpressionType.Equal:
+			case ExpressionType.NotEqual:
+			case ExpressionType.GreaterThan:
+			case ExpressionType.GreaterThanOrEqual:
+			case ExpressionType.LessThan:
+			case ExpressionType.LessThanOrEqual:
+				compare((BinaryExpression) e, jumpIf, target);
+				return;
+			default:
+				break;
+		}
+
+		convert(visit(e, Boolean.TYPE), Boolean.TYPE);
+		mv.visitJumpInsn(jumpIf ? IFNE : IFEQ, target);
+	}
+
+	private void compare(BinaryExpression e, boolean jumpIf, Label target) {
+		int original = e.getExpressionType();
+		int op = jumpIf ? original : negateComparison(original);
+		Expression first = e.getFirst();
+		Expression second = e.getSecond();
+		Class<?> firstType = unboxed(first);
+		Class<?> secondType = unboxed(second);
+
+		if (firstType != null && secondType != null
+				&& (first.getResultType().isPrimitive() || second.getResultType().isPrimitive() || isRelational(original))) {
+			Class<?> type = promote(firstType, secondType);
+			convert(visit(first, type), type);
+			convert(visit(second, type), type);
+			if (type == Integer.TYPE) {
+				mv.visitJumpInsn(compareJump(op, true), target);
+				return;
+			}
+
+			if (type == Long.TYPE) {
+				mv.visitInsn(LCMP);
+			} else {
+				boolean less = original == ExpressionType.LessThan || original == ExpressionType.LessThanOrEqual;
+				if (type == Float.TYPE) {
+					mv.visitInsn(less ? FCMPG : FCMPL);
+				} else {
+					mv.visitInsn(less ? DCMPG : DCMPL);
+				}
+			}
+			mv.visitJumpInsn(compareJump(op, false), target);
+			return;
+		}
+
+		if (!isRelational(original)) {
+			Expression operand = isNullConstant(second) ? first : isNullConstant(first) ? second : null;
+			if (operand != null) {
+				toReference(operand.accept(this));
+				mv.visitJumpInsn(op == ExpressionType.Equal ? IFNULL : IFNONNULL, target);
+				return;
+			}
+
+			toReference(first.accept(this));
+			toReference(second.accept(this));
+			mv.visitMethodInsn(INVOKESTATIC, "java/util/Objects", "equals", "(Ljava/lang/Object;Ljava/lang/Object;)Z", false);
+			mv.visitJumpInsn(op == ExpressionType.Equal ? IFNE : IFEQ, target);
+			return;
+		}
+
+		convert(toReference(first.accept(this)), Comparable.class);
+		toReference(second.accept(this));
+		mv.visitMethodInsn(INVOKEINTERFACE, "java/lang/Comparable", "compareTo", "(Ljava/lang/Object;)I", true);
+		mv.visitJumpInsn(compareJump(op, false), target);
+	}
+
+	/**
+	 * Emits a jump to {@code outside} taken when the operand of {@code e} is not in its range.
+	 */
+	private void between(BetweenExpression e, Label outside) {
+		Class<?> type = promote(e.getOperand().getResultType());
+		convert(visit(e.getOperand(), type), type);
+		int local = store(type);
+		bound(type, local, e.getLower(), e.isLowerInclusive() ? ExpressionType.GreaterThanOrEqual : ExpressionType.GreaterThan, outside);
+		bound(type, local, e.getUpper(), e.isUpperInclusive() ? ExpressionType.LessThanOrEqual : ExpressionType.LessThan, outside);
+	}
+
+	private void bound(Class<?> type, int local, Expression bound, int comparison, Label outside) {
+		mv.visitVarInsn(Type.getType(type).getOpcode(ILOAD), local);
+		convert(visit(bound, type), type);
+		int op = negateComparison(comparison);
+		if (type == Integer.TYPE) {
+			mv.visitJumpInsn(compareJump(op, true), outside);
+			return;
+		}
+
+		if (type == Long.TYPE) {
+			mv.visitInsn(LCMP);
+		} else {
+			// NaN compares outside of the range
+			boolean less = comparison == ExpressionType.LessThan || comparison == ExpressionType.LessThanOrEqual;
+			if (type == Float.TYPE) {
+				mv.visitInsn(less ? FCMPG : FCMPL);
+			} else {
+				mv.visitInsn(less ? DCMPG : DCMPL);
+			}
+		}
+		mv.visitJumpInsn(compareJump(op, false), outside);
+	}
+
+	private static boolean isNullConstant(Expression e) {
+		return e.getExpressionType() == ExpressionType.Constant && ((ConstantExpression) e).getValue() == null;
+	}
+
+	private Class<?> arithmetic(BinaryExpression e, BinaryOperator operator) {
+		Expression first = e.getFirst();
+		Expression second = e.getSecond();
+		Class<?> firstType = unboxed(first);
+		Class<?> secondType = unboxed(second);
+		int expressionType = e.getExpressionType();
+		boolean shift = expressionType == ExpressionType.LeftShift || expressionType == ExpressionType.RightShift;
+		boolean bitwise = expressionType == ExpressionType.BitwiseAnd || expressionType == ExpressionType.BitwiseOr
+				|| expressionType == ExpressionType.ExclusiveOr;
+
+		if (firstType == Boolean.TYPE && secondType == Boolean.TYPE && bitwise) {
+			convert(visit(first, Boolean.TYPE), Boolean.TYPE);
+			convert(visit(second, Boolean.TYPE), Boolean.TYPE);
+			mv.visitInsn(expressionType == ExpressionType.BitwiseAnd ? IAND : expressionType == ExpressionType.BitwiseOr ? IOR : IXOR);
+			return Boolean.TYPE;
+		}
+
+		if (isNumeric(firstType) && isNumeric(secondType)) {
+			Class<?> type = shift ? promote(firstType) : promote(firstType, secondType);
+			boolean integral = type == Integer.TYPE || type == Long.TYPE;
+			if (integral || !(shift || bitwise)) {
+				convert(visit(first, type), type);
+				convert(visit(second, shift ? Integer.TYPE : type), shift ? Integer.TYPE : type);
+				mv.visitInsn(Type.getType(type).getOpcode(opcode(expressionType)));
+				return type;
+			}
+		}
+
+		convert(toReference(first.accept(this)), Number.class);
+		convert(toReference(second.accept(this)), Number.class);
+		mv.visitFieldInsn(GETSTATIC, internalName(BinaryOperator.class), operator.name(), descriptor(BinaryOperator.class));
+		mv.visitInsn(DUP_X2);
+		mv.visitInsn(POP);
+		mv.visitMethodInsn(INVOKEVIRTUAL, internalName(BinaryOperator.class), "eval",
+				methodDescriptor(Number.class, Number.class, Number.class), false);
+		return Number.class;
+	}
+
+	private static int opcode(int expressionType) {
+		switch (expressionType) {
+			case ExpressionType.Add:
+				return IADD;
+			case ExpressionType.Subtract:
+				return ISUB;
+			case ExpressionType.Multiply:
+				return IMUL;
+			case ExpressionType.Divide:
+				return IDIV;
+			case ExpressionType.Modulo:
+				return IREM;
+			case ExpressionType.BitwiseAnd:
+				return IAND;
+			case ExpressionType.BitwiseOr:
+				return IOR;
+			case ExpressionType.ExclusiveOr:
+				return IXOR;
+			case ExpressionType.LeftShift:
+				return ISHL;
+			case ExpressionType.RightShift:
+				return ISHR;
+			default:
+				throw new IllegalArgumentException(ExpressionType.toString(expressionType));
+		}
+	}
+
+	private Class<?> resultType(Expression e) {
+		Class<?> type = e.getResultType();
+		return type.isPrimitive() ? type : accessibleType(type);
+	}
+
+	private Class<?> conditional(BinaryExpression e) {
+		Class<?> type = resultType(e);
+		Label ifFalse = new Label();
+		Label end = new Label();
+		branch(e.getOperator(), false, ifFalse);
+		convert(visit(e.getFirst(), type), type);
+		mv.visitJumpInsn(GOTO, end);
+		mv.visitLabel(ifFalse);
+		convert(visit(e.getSecond(), type), type);
+		mv.visitLabel(end);
+		return type;
+	}
+
+	private Class<?> coalesce(BinaryExpression e) {
+		Class<?> first = e.getFirst().accept(this);
+		if (first.isPrimitive()) {
+			return first;
+		}
+
+		Class<?> type = resultType(e);
+		if (type.isPrimitive()) {
+			type = TypeConverter.boxedType(type);
+		}
+		convert(first, type);
+		Label end = new Label();
+		mv.visitInsn(DUP);
+		mv.visitJumpInsn(IFNONNULL, end);
+		mv.visitInsn(POP);
+		convert(toReference(e.getSecond().accept(this)), type);
+		mv.visitLabel(end);
+		return type;
+	}
+
+	private Class<?> array(Expression e) {
+		Class<?> type = e.accept(this);
+		if (type.isArray()) {
+			return type;
+		}
+
+		Class<?> declared = resultType(e);
+		if (!declared.isArray()) {
+			throw new UnsupportedOperationException(e + " is not an array.");
+		}
+
+		mv.visitTypeInsn(CHECKCAST, internalName(declared));
+		return declared;
+	}
+
+	private Class<?> instanceOf(BinaryExpression e) {
+		Expression second = e.getSecond();
+		Object value = second.getExpressionType() == ExpressionType.Constant ? ((ConstantExpression) second).getValue() : null;
+		if (value instanceof Class<?> && isAccessible((Class<?>) value)) {
+			toReference(e.getFirst().accept(this));
+			mv.visitTypeInsn(INSTANCEOF, internalName((Class<?>) value));
+			return Boolean.TYPE;
+		}
+
+		convert(second.accept(this), Class.class);
+		toReference(e.getFirst().accept(this));
+		mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Class", "isInstance", "(Ljava/lang/Object;)Z", false);
+		return Boolean.TYPE;
+	}
+
+	@Override
+	public Class<?> visit(BinaryExpression e) {
+		switch (e.getExpressionType()) {
+			case ExpressionType.Add:
+				return arithmetic(e, BinaryOperator.Add);
+			case ExpressionType.Subtract:
+				return arithmetic(e, BinaryOperator.Subtract);
+			case ExpressionType.Multiply:
+				return arithmetic(e, BinaryOperator.Multiply);
+			case ExpressionType.Divide:
+				return arithmetic(e, BinaryOperator.Divide);
+			case ExpressionType.Modulo:
+				return arithmetic(e, BinaryOperator.Modulo);
+			case ExpressionType.BitwiseAnd:
+				return arithmetic(e, BinaryOperator.And);
+			case ExpressionType.BitwiseOr:
+				return arithmetic(e, BinaryOperator.Or);
+			case ExpressionType.ExclusiveOr:
+				return arithmetic(e, BinaryOperator.Xor);
+			case ExpressionType.LeftShift:
+				return arithmetic(e, BinaryOperator.ShiftLeft);
+			case ExpressionType.RightShift:
+				return arithmetic(e, BinaryOperator.ShiftRight);
+			case ExpressionType.LogicalAnd:
+			case ExpressionType.LogicalOr:
+			case ExpressionType.Equal:
+			case ExpressionType.NotEqual:
+			case ExpressionType.GreaterThan:
+			case ExpressionType.GreaterThanOrEqual:
+			case ExpressionType.LessThan:
+			case ExpressionType.LessThanOrEqual:
+				return booleanValue(e);
+			case ExpressionType.InstanceOf:
+				return instanceOf(e);
+			case ExpressionType.Conditional:
+				return conditional(e);
+			case ExpressionType.Coalesce:
+				return coalesce(e);
+			case ExpressionType.ArrayIndex: {
+				Class<?> type = array(e.getFirst());
+				convert(visit(e.getSecond(), Integer.TYPE), Integer.TYPE);
+				Class<?> component = type.getComponentType();
+				mv.visitInsn(Type.getType(component).getOpcode(IALOAD));
+				return component;
+			}
+			default:
+				throw new UnsupportedOperationException(ExpressionType.toString(e.getExpressionType()));
+		}
+	}
+
+	@Override
+	public Class<?> visit(ConstantExpression e) {
+		Object value = e.getValue();
+		Class<?> type = e.getResultType();
+		if (value == null) {
+			mv.visitInsn(ACONST_NULL);
+			return type.isPrimitive() ? Object.class : resultType(e);
+		}
+
+		if (type.isPrimitive() && pushPrimitive(value, type)) {
+			return type;
+		}
+
+		if (value instanceof String) {
+			mv.visitLdcInsn(value);
+			return String.class;
+		}
+
+		return loadConstant(value, accessibleType(type.isInstance(value) ? type : value.getClass()));
+	}
+
+	@Override
+	public Class<?> visit(InvocationExpression e) {
+		InvocableExpression target = e.getTarget();
+		List<Expression> arguments = e.getArguments();
+		switch (target.getExpressionType()) {
+			case ExpressionType.Lambda:
+				return inline((LambdaExpression) target, arguments);
+			case ExpressionType.FieldAccess:
+			case ExpressionType.MethodAccess:
+			case ExpressionType.New:
+				return member((MemberExpression) target, arguments);
+			case ExpressionType.Delegate:
+				return delegate((DelegateExpression) target, arguments, e.getResultType());
+			default:
+				throw new UnsupportedOperationException(ExpressionType.toString(target.getExpressionType()));
+		}
+	}
+
+	private Class<?> inline(LambdaExpression lambda, List<Expression> arguments) {
+		List<ParameterExpression> params = lambda.getParameters();
+		Class<?>[] declared = new Class<?>[arguments.size()];
+		for (ParameterExpression p : params) {
+			if (p.getIndex() < declared.length) {
+				declared[p.getIndex()] = p.getResultType();
+			}
+		}
+
+		int[] innerSlots = new int[declared.length];
+		Class<?>[] innerTypes = new Class<?>[declared.length];
+		for (int i = 0; i < declared.length; i++) {
+			Class<?> type = declared[i] != null ? visit(arguments.get(i), preferred(declared[i])) : arguments.get(i).accept(this);
+			if (declared[i] != null && (!type.isPrimitive() || TypeConverter.unboxedType(declared[i]) != type)) {
+				type = convert(type, declared[i]);
+			}
+			innerSlots[i] = store(type);
+			innerTypes[i] = type;
+		}
+
+		int[] outerSlots = slots;
+		Class<?>[] outerTypes = slotTypes;
+		slots = innerSlots;
+		slotTypes = innerTypes;
+		try {
+			return lambda.getBody().accept(this);
+		} finally {
+			slots = outerSlots;
+			slotTypes = outerTypes;
+		}
+	}
+
+	private Class<?> member(MemberExpression target, List<Expression> arguments) {
+		Member m = target.getMember();
+		int modifiers = m.getModifiers();
+		boolean isStatic = Modifier.isStatic(modifiers);
+		Class<?> declaring = m.getDeclaringClass();
+		Class<?>[] params = m instanceof Method ? ((Method) m).getParameterTypes()
+				: m instanceof Constructor<?> ? ((Constructor<?>) m).getParameterTypes() : new Class<?>[0];
+		Expression instance = isStatic || m instanceof Constructor<?> ? null : target.getInstance();
+
+		Class<?> owner = null;
+		if (Modifier.isPublic(modifiers) && isAccessible(params)) {
+			if (isAccessible(declaring)) {
+				owner = declaring;
+			} else if (instance != null) {
+				Class<?> type = resultType(instance);
+				if (declaring.isAssignableFrom(type)) {
+					owner = type;
+				}
+			}
+		}
+
+		if (owner == null) {
+			return viaHandle(m, instance, params, arguments);
+		}
+
+		if (m instanceof Constructor<?>) {
+			String name = internalName(owner);
+			mv.visitTypeInsn(NEW, name);
+			mv.visitInsn(DUP);
+			arguments(params, arguments);
+			mv.visitMethodInsn(INVOKESPECIAL, name, "<init>", methodDescriptor(Void.TYPE, params), false);
+			return owner;
+		}
+
+		if (instance != null) {
+			convert(instance.accept(this), owner);
+		}
+
+		if (m instanceof Field) {
+			Class<?> type = ((Field) m).getType();
+			mv.visitFieldInsn(isStatic ? GETSTATIC : GETFIELD, internalName(owner), m.getName(), descriptor(type));
+			return type.isPrimitive() ? type : accessibleType(type);
+		}
+
+		arguments(params, arguments);
+		Class<?> returnType = ((Method) m).getReturnType();
+		boolean isInterface = owner.isInterface();
+		mv.visitMethodInsn(isStatic ? INVOKESTATIC : isInterface ? INVOKEINTERFACE : INVOKEVIRTUAL, internalName(owner), m.getName(),
+				methodDescriptor(returnType, params), isInterface);
+		return returnType.isPrimitive() ? returnType : accessibleType(returnType);
+	}
+
+	private static boolean isAccessible(Class<?>[] types) {
+		for (Class<?> type : types) {
+			if (!isAccessible(type)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private Class<?>[] arguments(Class<?>[] params, List<Expression> arguments) {
+		Class<?>[] types = new Class<?>[params.length];
+		for (int i = 0; i < params.length; i++) {
+			types[i] = convert(visit(arguments.get(i), params[i]), params[i]);
+		}
+
+		return types;
+	}
+
+	private Class<?> viaHandle(Member m, Expression instance, Class<?>[] params, List<Expression> arguments) {
+		MethodHandle handle = MemberHandles.get(m);
+		int index = addConstant(null, MethodHandle.class);
+		loadConstant(index);
+
+		List<Class<?>> stack = new ArrayList<>(params.length + 1);
+		if (instance != null) {
+			stack.add(toReference(instance.accept(this)));
+		}
+		for (Class<?> type : arguments(params, arguments)) {
+			stack.add(type);
+		}
+
+		Class<?> returnType = m instanceof Method ? ((Method) m).getReturnType() : m instanceof Field ? ((Field) m).getType() : m.getDeclaringClass();
+		if (!returnType.isPrimitive()) {
+			returnType = accessibleType(returnType);
+		}
+
+		MethodType type = MethodType.methodType(returnType, stack);
+		try {
+			constants.set(index, handle.asType(type));
+		} catch (WrongMethodTypeException e) {
+			throw new UnsupportedOperationException(e);
+		}
+
+		mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", methodDescriptor(returnType, type.parameterArray()), false);
+		return returnType;
+	}
+
+	private Class<?> delegate(DelegateExpression target, List<Expression> arguments, Class<?> resultType) {
+		loadConstant(delegateInvoker, BiFunction.class);
+		toReference(target.getDelegate().accept(this));
+		push(arguments.size());
+		mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+		for (int i = 0; i < arguments.size(); i++) {
+			mv.visitInsn(DUP);
+			push(i);
+			toReference(arguments.get(i).accept(this));
+			mv.visitInsn(AASTORE);
+		}
+		mv.visitMethodInsn(INVOKEINTERFACE, "java/util/function/BiFunction", "apply",
+				"(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", true);
+
+		return convert(Object.class, resultType.isPrimitive() ? resultType : accessibleType(resultType));
+	}
+
+	@Override
+	public Class<?> visit(LambdaExpression e) {
+		throw new UnsupportedOperationException(e.toString());
+	}
+
+	@Override
+	public Class<?> visit(DelegateExpression e) {
+		throw new UnsupportedOperationException(e.toString());
+	}
+
+	@Override
+	public Class<?> visit(BetweenExpression e) {
+		return booleanValue(e);
+	}
+
+	@Override
+	public Class<?> visit(InExpression e) {
+		Object set = e.getSet();
+		Class<?> type;
+		Class<?> owner;
+		if (set instanceof IntPredicate) {
+			type = Integer.TYPE;
+			owner = IntPredicate.class;
+		} else if (set instanceof LongPredicate) {
+			type = Long.TYPE;
+			owner = LongPredicate.class;
+		} else {
+			type = Object.class;
+			owner = Set.class;
+		}
+
+		loadConstant(set, owner);
+		convert(visit(e.getOperand(), type), type);
+		mv.visitMethodInsn(INVOKEINTERFACE, internalName(owner), owner == Set.class ? "contains" : "test",
+				methodDescriptor(Boolean.TYPE, type), true);
+		return Boolean.TYPE;
+	}
+
+	@Override
+	public Class<?> visit(LogicalExpression e) {
+		return booleanValue(e);
+	}
+
+	@Override
+	public Class<?> visit(MemberExpression e) {
+		if (e.getExpressionType() != ExpressionType.FieldAccess) {
+			throw new UnsupportedOperationException(e.toString());
+		}
+
+		return member(e, List.of());
+	}
+
+	@Override
+	public Class<?> visit(ParameterExpression e) {
+		int index = e.getIndex();
+		if (index >= slotTypes.length || slotTypes[index] == null) {
+			throw new UnsupportedOperationException(e.toString());
+		}
+
+		Class<?> type = slotTypes[index];
+		mv.visitVarInsn(Type.getType(type).getOpcode(ILOAD), slots[index]);
+		return convert(type, e.getResultType());
+	}
+
+	@Override
+	public Class<?> visit(UnaryExpression e) {
+		Expression first = e.getFirst();
+		switch (e.getExpressionType()) {
+			case ExpressionType.ArrayLength:
+				array(first);
+				mv.visitInsn(ARRAYLENGTH);
+				return Integer.TYPE;
+			case ExpressionType.Convert:
+				return convert(visit(first, e.getResultType()), e.getResultType());
+			case ExpressionType.IsNull:
+			case ExpressionType.IsNonNull:
+			case ExpressionType.LogicalNot:
+				return booleanValue(e);
+			case ExpressionType.Negate: {
+				Class<?> type = unboxed(first);
+				if (isNumeric(type)) {
+					type = promote(type);
+					convert(visit(first, type), type);
+					mv.visitInsn(Type.getType(type).getOpcode(INEG));
+					return type;
+				}
+				return unary(first, UnaryOperator.Negate);
+			}
+			case ExpressionType.BitwiseNot: {
+				Class<?> type = unboxed(first);
+				if (isNumeric(type) && (type = promote(type)) != Float.TYPE && type != Double.TYPE) {
+					convert(visit(first, type), type);
+					if (type == Long.TYPE) {
+						push(-1L);
+						mv.visitInsn(LXOR);
+					} else {
+						push(-1);
+						mv.visitInsn(IXOR);
+					}
+					return type;
+				}
+				return unary(first, UnaryOperator.Not);
+			}
+			default:
+				throw new UnsupportedOperationException(ExpressionType.toString(e.getExpressionType()));
+		}
+	}
+
+	private Class<?> unary(Expression operand, UnaryOperator operator) {
+		mv.visitFieldInsn(GETSTATIC, internalName(UnaryOperator.class), operator.name(), descriptor(UnaryOperator.class));
+		convert(toReference(operand.accept(this)), Number.class);
+		mv.visitMethodInsn(INVOKEVIRTUAL, internalName(UnaryOperator.class), "eval", methodDescriptor(Number.class, Number.class), false);
+		return Number.class;
+	}
+
+	private static final class CompiledLambdaLoader extends ClassLoader implements Supplier<Object[]> {
+		private final Map<String, Class<?>> types;
+		private Object[] constants;
+
+		CompiledLambdaLoader(ClassLoader parent, Map<String, Class<?>> types, Object[] constants) {
+			super(parent);
+			this.types = types;
+			this.constants = constants;
+		}
+
+		Class<?> define(String name, byte[] code) {
+			return defineClass(name, code, 0, code.length);
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			Class<?> type = types.get(name);
+			return type != null ? type : super.loadClass(name, resolve);
+		}
+
+		@Override
+		public Object[] get() {
+			Object[] result = constants;
+			constants = null;
+			return Objects.requireNonNull(result);
+		}
+	}
+}
@@ -52,6 +52,8 @@ final class ExpressionMethodVisitor extends MethodVisitor {
 	private final ExpressionClassVisitor _classVisitor;
 	private final Class<?>[] _argTypes;
 	private ExpressionStack _exprStack;
+	// the result of the last floating-point comparison for NaN: 1 for FCMPG and DCMPG, -1 for FCMPL and DCMPL
+	private int _nanComparison;
 	private Supplier<ConstantExpression> _me;
 
 	ExpressionMethodVisitor(ExpressionClassVisitor classVisitor, Supplier<ConstantExpression> me, Class<?>[] argTypes) {
@@ -338,7 +340,7 @@ final class ExpressionMethodVisitor extends MethodVisitor {
 
 		if (isSyntheticConstant) {
 			// evaluate now, since has no meaning to the user in the field form
-			Object value = e.accept(Interpreter.Instance).apply(null);
+			Object value = Interpreter.evaluate(e, null);
 			e = Expression.constant(value, e.getResultType());
 		}
 
@@ -360,6 +362,7 @@ final class ExpressionMethodVisitor extends MethodVisitor {
 		Expression e;
 		Expression first;
 		Expression second;
+		_nanComparison = opcode == Opcodes.FCMPG || opcode == Opcodes.DCMPG ? 1 : opcode == Opcodes.FCMPL || opcode == Opcodes.DCMPL ? -1 : 0;
 		switch (opcode) {
 			case Opcodes.ARRAYLENGTH:
 				e = Expression.arrayLength(_exprStack.pop());
@@ -653,10 +656,46 @@ final class ExpressionMethodVisitor extends MethodVisitor {
 		Expression second = _exprStack.pop();
 		Expression first = _exprStack.pop();
 		Expression e = Expression.binary(etype, first, second);
+		if (_nanComparison != 0 && !jumpsOnNaN(opcode, _nanComparison)) {
+			// an ordered comparison is false for NaN, but NaN falls through: the test is the negated jump condition
+			e = Expression.logicalNot(Expression.binary(complement(etype), first, second));
+		}
 
+		_nanComparison = 0;
 		branch(label, e);
 	}
 
+	private static boolean jumpsOnNaN(int opcode, int nanComparison) {
+		switch (opcode) {
+			case Opcodes.IFLT:
+				return nanComparison < 0;
+			case Opcodes.IFGE:
+				return nanComparison >= 0;
+			case Opcodes.IFGT:
+				return nanComparison > 0;
+			case Opcodes.IFLE:
+				return nanComparison <= 0;
+			default:
+				// IFEQ and IFNE test equality, which is complementary for NaN
+				return true;
+		}
+	}
+
+	private static int complement(int etype) {
+		switch (etype) {
+			case ExpressionType.GreaterThanOrEqual:
+				return ExpressionType.LessThan;
+			case ExpressionType.LessThan:
+				return ExpressionType.GreaterThanOrEqual;
+			case ExpressionType.GreaterThan:
+				return ExpressionType.LessThanOrEqual;
+			case ExpressionType.LessThanOrEqual:
+				return ExpressionType.GreaterThan;
+			default:
+				throw new IllegalArgumentException(ExpressionType.toString(etype));
+		}
+	}
+
 	@Override
 	public void visitLabel(Label label) {
 		List<ExpressionStack> bl = _branches.get(label);
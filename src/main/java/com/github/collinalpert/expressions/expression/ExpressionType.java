@@ -186,10 +186,26 @@ public final class ExpressionType {
 	 */
 	public static final int InstanceOf = Subtract + 1;
 	// SubtractChecked,
+	/**
+	 * A node that represents a short-circuiting conditional AND operation of any number of operands.
+	 */
+	public static final int Conjunction = InstanceOf + 1;
+	/**
+	 * A node that represents a short-circuiting conditional OR operation of any number of operands.
+	 */
+	public static final int Disjunction = Conjunction + 1;
+	/**
+	 * A node that represents a test for membership in a set of constants.
+	 */
+	public static final int In = Disjunction + 1;
+	/**
+	 * A node that represents a test of whether a number lies in a range.
+	 */
+	public static final int Between = In + 1;
 	/**
 	 * Holds the maximum expression type value.
 	 */
-	public static final int MaxExpressionTypeValue = InstanceOf;
+	public static final int MaxExpressionTypeValue = Between;
 
 	// /**
 	// * A node that represents an arithmetic absolute value operation.
@@ -209,6 +225,7 @@ public final class ExpressionType {
 			case BitwiseAnd:
 				return "&";
 			case LogicalAnd:
+			case Conjunction:
 				return "&&";
 			case ArrayIndex:
 				return "[]";
@@ -259,6 +276,7 @@ public final class ExpressionType {
 			case BitwiseOr:
 				return "|";
 			case LogicalOr:
+			case Disjunction:
 				return "||";
 			// case Parameter:
 			// case Power:
@@ -269,6 +287,10 @@ public final class ExpressionType {
 				return "-";
 			case InstanceOf:
 				return "instanceof";
+			case In:
+				return "in";
+			case Between:
+				return "between";
 			// case UnaryPlus:
 			// return "+";
 			default:
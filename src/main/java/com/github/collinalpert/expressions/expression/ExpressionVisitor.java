@@ -63,6 +63,36 @@ public interface ExpressionVisitor<T> {
 	 */
 	T visit(DelegateExpression e);
 
+	/**
+	 * Visits the {@link LogicalExpression}. By default, visits the equivalent chain of {@link BinaryExpression}s.
+	 *
+	 * @param e {@link LogicalExpression} to visit.
+	 * @return T
+	 */
+	default T visit(LogicalExpression e) {
+		return e.toBinary().accept(this);
+	}
+
+	/**
+	 * Visits the {@link InExpression}. By default, visits the equivalent call to {@link java.util.Set#contains(Object)}.
+	 *
+	 * @param e {@link InExpression} to visit.
+	 * @return T
+	 */
+	default T visit(InExpression e) {
+		return e.toInvocation().accept(this);
+	}
+
+	/**
+	 * Visits the {@link BetweenExpression}. By default, visits the equivalent {@code &&} of the comparisons to the bounds.
+	 *
+	 * @param e {@link BetweenExpression} to visit.
+	 * @return T
+	 */
+	default T visit(BetweenExpression e) {
+		return e.toLogical().accept(this);
+	}
+
 	/**
 	 * Visits the {@link MemberExpression}.
 	 *
@@ -0,0 +1,194 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The frame layout and the invocations shared by the {@link Interpreter} and the {@link SpecializingInterpreter}.
+ * <p>
+ * Visiting a tree computes the slots of its frame: the lambda parameters come first, followed by the parameters of
+ * every inlined lambda and the arguments of every member call. Invocations store their arguments in their slots and
+ * call the member through its cached {@link MethodHandle}, or through an {@link InlineCache} if it may be overridden.
+ * </p>
+ *
+ * @param <T> The type of the closures evaluating a node in a frame.
+ */
+abstract class FrameInterpreter<T extends Function<Object[], ?>> implements ExpressionVisitor<T> {
+
+	private int base;
+	private int size;
+
+	FrameInterpreter(int parameterCount) {
+		size = parameterCount;
+	}
+
+	/**
+	 * Wraps a closure evaluating a node in a frame.
+	 *
+	 * @param closure The closure.
+	 * @return The closure as a {@code T}.
+	 */
+	abstract T closure(Function<Object[], ?> closure);
+
+	/**
+	 * Gets the number of frame slots allocated so far.
+	 */
+	final int getFrameSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the frame slot of a parameter of the current scope.
+	 */
+	final int slot(ParameterExpression e) {
+		return base + e.getIndex();
+	}
+
+	final int allocate(int count) {
+		int first = size;
+		size += count;
+		return first;
+	}
+
+	final Function<Object[], ?>[] visitArguments(List<? extends Expression> arguments) {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Function<Object[], ?>[] values = new Function[arguments.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = arguments.get(i).accept(this);
+		}
+
+		return values;
+	}
+
+	static void store(Object[] frame, int offset, Function<Object[], ?>[] values) {
+		for (int i = 0; i < values.length; i++) {
+			frame[offset + i] = values[i].apply(frame);
+		}
+	}
+
+	@Override
+	public T visit(InvocationExpression e) {
+		InvocableExpression target = e.getTarget();
+		List<Expression> arguments = e.getArguments();
+		switch (target.getExpressionType()) {
+			case ExpressionType.Lambda:
+				return inline((LambdaExpression) target, arguments);
+			case ExpressionType.Delegate:
+				return invoke((DelegateExpression) target, arguments);
+			default:
+				return invoke((MemberExpression) target, arguments);
+		}
+	}
+
+	@Override
+	public T visit(DelegateExpression e) {
+		return invoke(e, e.getParameters());
+	}
+
+	@Override
+	public T visit(MemberExpression e) {
+		return invoke(e, e.getParameters());
+	}
+
+	private T inline(LambdaExpression lambda, List<Expression> arguments) {
+		final Function<Object[], ?>[] values = visitArguments(arguments);
+		final int offset = allocate(Math.max(values.length, lambda.getParameters().size()));
+
+		int outer = base;
+		base = offset;
+		final Function<Object[], ?> body;
+		try {
+			body = lambda.getBody().accept(this);
+		} finally {
+			base = outer;
+		}
+
+		return closure(t -> {
+			store(t, offset, values);
+			return body.apply(t);
+		});
+	}
+
+	private T invoke(DelegateExpression e, List<? extends Expression> arguments) {
+		final Function<Object[], ?> delegate = e.getDelegate().accept(this);
+		final Function<Object[], ?>[] values = visitArguments(arguments);
+		final int offset = allocate(values.length);
+
+		return closure(t -> {
+			InvocableExpression target = (InvocableExpression) delegate.apply(t);
+			store(t, offset, values);
+			return Interpreter.invoke(target, Arrays.copyOfRange(t, offset, offset + values.length));
+		});
+	}
+
+	private T invoke(MemberExpression e, List<? extends Expression> arguments) {
+		final Member m = e.getMember();
+
+		final MethodHandle invoker;
+		try {
+			invoker = MemberHandles.getInvoker(m);
+		} catch (UnsupportedOperationException ex) {
+			return closure(t -> {
+				throw new RuntimeException(ex.getCause());
+			});
+		}
+
+		Expression ei = e.getInstance();
+		final Function<Object[], ?> instance = ei != null ? ei.accept(this) : null;
+
+		if (m instanceof Field) {
+			// field: no arguments, just the instance
+			return instance == null
+					? closure(t -> MemberHandles.invoke(invoker, t, 0, 0))
+					: closure(t -> MemberHandles.invoke(invoker, instance.apply(t), t, 0, 0));
+		}
+
+		final Function<Object[], ?>[] values = visitArguments(arguments);
+		final int offset = allocate(values.length);
+		final int count = values.length;
+
+		if (instance == null) {
+			return closure(t -> {
+				store(t, offset, values);
+				return MemberHandles.invoke(invoker, t, offset, count);
+			});
+		}
+
+		if (InlineCache.isPolymorphic(m)) {
+			final InlineCache cache = new InlineCache((Method) m, invoker);
+			return closure(t -> {
+				Object inst = instance.apply(t);
+				store(t, offset, values);
+				return MemberHandles.invoke(cache.get(inst), inst, t, offset, count);
+			});
+		}
+
+		return closure(t -> {
+			Object inst = instance.apply(t);
+			store(t, offset, values);
+			return MemberHandles.invoke(invoker, inst, t, offset, count);
+		});
+	}
+}
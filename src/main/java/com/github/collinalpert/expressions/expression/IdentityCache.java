@@ -0,0 +1,106 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * A bounded cache comparing its keys by identity.
+ * <p>
+ * The cache is direct mapped: every key hashes to a single slot, and a key stored in an occupied slot evicts the
+ * previous entry. Lookups and stores do not lock, and the number of entries never exceeds the capacity, so the cache
+ * keeps at most that many keys alive.
+ * </p>
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+final class IdentityCache<K, V> {
+
+	private final AtomicReferenceArray<Entry<K, V>> entries;
+	private final int mask;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param capacity The number of slots, a power of 2.
+	 */
+	IdentityCache(int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException(String.valueOf(capacity));
+		}
+
+		entries = new AtomicReferenceArray<>(capacity);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Gets the value cached for a key.
+	 *
+	 * @param key The key.
+	 * @return The value, or {@code null} if {@code key} is not cached.
+	 */
+	V get(K key) {
+		Entry<K, V> entry = entries.get(slot(key));
+		return entry != null && entry.key == key ? entry.value : null;
+	}
+
+	/**
+	 * Caches a value, evicting the entry sharing its slot.
+	 *
+	 * @param key   The key.
+	 * @param value The value.
+	 */
+	void put(K key, V value) {
+		entries.set(slot(key), new Entry<>(key, value));
+	}
+
+	/**
+	 * Gets the value cached for a key, computing and caching it if absent. Concurrent callers may compute the value more
+	 * than once.
+	 *
+	 * @param key     The key.
+	 * @param compute The function computing the value of {@code key}.
+	 * @return The value.
+	 */
+	V computeIfAbsent(K key, Function<? super K, ? extends V> compute) {
+		V value = get(key);
+		if (value == null) {
+			value = compute.apply(key);
+			put(key, value);
+		}
+
+		return value;
+	}
+
+	private int slot(K key) {
+		int h = System.identityHashCode(key);
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private static final class Entry<K, V> {
+		final K key;
+		final V value;
+
+		Entry(K key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import lombok.EqualsAndHashCode;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+
+/**
+ * Represents a test of whether a value equals one of a set of constants.
+ * <p>
+ * The constants of an {@code int}, {@code short}, {@code byte}, {@code char} or {@code long} operand are kept in a
+ * primitive hash set, so testing them neither boxes nor compares them one by one. Values of any other type are tested
+ * with {@link Set#contains(Object)} of an immutable set, which throws {@link NullPointerException} for {@code null}.
+ * </p>
+ */
+@EqualsAndHashCode(callSuper = true)
+public final class InExpression extends Expression {
+
+	private static final Method contains;
+
+	static {
+		try {
+			contains = Set.class.getMethod("contains", Object.class);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private final Expression operand;
+	private final Set<Object> values;
+	@EqualsAndHashCode.Exclude
+	private final Object set;
+
+	InExpression(Expression operand, Set<Object> values) {
+		super(ExpressionType.In, Boolean.TYPE);
+
+		this.operand = operand;
+		this.values = values;
+
+		Class<?> type = operand.getResultType();
+		if (type == Long.TYPE) {
+			set = PrimitiveSets.longs(values);
+		} else if (type == Integer.TYPE || type == Short.TYPE || type == Byte.TYPE || type == Character.TYPE) {
+			set = PrimitiveSets.ints(values);
+		} else {
+			set = values;
+		}
+	}
+
+	@Override
+	protected <T> T visit(ExpressionVisitor<T> v) {
+		return v.visit(this);
+	}
+
+	/**
+	 * Gets the equivalent call to {@link Set#contains(Object)} on the set of constants.
+	 *
+	 * @return The {@link InvocationExpression}.
+	 */
+	public Expression toInvocation() {
+		Class<?> type = operand.getResultType();
+		Expression value = type.isPrimitive() ? Expression.convert(operand, TypeConverter.boxedType(type)) : operand;
+		return Expression.invoke(Expression.constant(values, Set.class), contains, value);
+	}
+
+	/**
+	 * Gets the set the operand is tested against: an {@link IntPredicate} for operands of at most 32 bits, a
+	 * {@link LongPredicate} for {@code long} operands and the {@link Set} of values otherwise.
+	 */
+	Object getSet() {
+		return set;
+	}
+
+	/**
+	 * Tests a value of the operand.
+	 *
+	 * @param value The value, boxed.
+	 * @return {@code true} if the value is in the set.
+	 */
+	boolean test(Object value) {
+		if (set instanceof IntPredicate) {
+			return ((IntPredicate) set).test(PrimitiveSets.toInt(value));
+		}
+
+		if (set instanceof LongPredicate) {
+			return ((LongPredicate) set).test((Long) value);
+		}
+
+		return values.contains(value);
+	}
+
+	@Override
+	public String toString() {
+		return "(" + operand + " in " + values + ")";
+	}
+
+	public Expression getOperand() {
+		return operand;
+	}
+
+	public Set<Object> getValues() {
+		return values;
+	}
+}
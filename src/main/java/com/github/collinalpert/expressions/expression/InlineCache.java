@@ -0,0 +1,167 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * A polymorphic inline cache for a virtual or interface method invoked by an interpreter node.
+ * <p>
+ * The cache maps up to {@link #MaxEntries} receiver classes to an invoker of the implementation declared for that
+ * class. Receivers of further classes are dispatched through the invoker of the declared method, which is
+ * megamorphic. Every lookup not served by an entry counts as a miss.
+ * </p>
+ */
+final class InlineCache {
+
+	/**
+	 * The number of receiver classes cached before the cache becomes megamorphic.
+	 */
+	static final int MaxEntries = 4;
+
+	private static final Entry[] empty = new Entry[0];
+
+	private final Method method;
+	private final MethodHandle megamorphic;
+	private volatile Entry[] entries = empty;
+	// a plain field, so the count may lose the increments of racing threads
+	private int misses;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param method  The invoked method.
+	 * @param invoker The invoker of {@code method}, obtained from {@link MemberHandles#getInvoker(Member)}.
+	 */
+	InlineCache(Method method, MethodHandle invoker) {
+		this.method = method;
+		this.megamorphic = invoker;
+	}
+
+	/**
+	 * Determines whether invocations of a member dispatch on the receiver class.
+	 *
+	 * @param m The member.
+	 * @return {@code true} if {@code m} is an overridable instance method.
+	 */
+	static boolean isPolymorphic(Member m) {
+		if (!(m instanceof Method)) {
+			return false;
+		}
+
+		int modifiers = m.getModifiers();
+		return !Modifier.isStatic(modifiers) && !Modifier.isPrivate(modifiers) && !Modifier.isFinal(modifiers)
+				&& !Modifier.isFinal(m.getDeclaringClass().getModifiers());
+	}
+
+	/**
+	 * Gets the invoker for a receiver.
+	 *
+	 * @param receiver The receiver.
+	 * @return The invoker, to be called with {@link MemberHandles#invoke(MethodHandle, Object, Object[], int, int)}.
+	 */
+	MethodHandle get(Object receiver) {
+		if (receiver == null) {
+			return megamorphic;
+		}
+
+		Class<?> type = receiver.getClass();
+		Entry[] entries = this.entries;
+		for (Entry entry : entries) {
+			if (entry.type == type) {
+				return entry.invoker;
+			}
+		}
+
+		return miss(type, entries);
+	}
+
+	/**
+	 * Gets the number of misses of this cache.
+	 *
+	 * @return The number of misses.
+	 */
+	int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Determines whether this cache is full, so receivers of new classes are dispatched through the declared method.
+	 *
+	 * @return {@code true} if the cache is megamorphic.
+	 */
+	boolean isMegamorphic() {
+		return entries.length >= MaxEntries;
+	}
+
+	private MethodHandle miss(Class<?> type, Entry[] entries) {
+		misses++;
+		if (entries.length >= MaxEntries) {
+			return megamorphic;
+		}
+
+		MethodHandle invoker = resolve(type);
+		Entry[] grown = Arrays.copyOf(entries, entries.length + 1);
+		grown[entries.length] = new Entry(type, invoker);
+		this.entries = grown;
+		return invoker;
+	}
+
+	private MethodHandle resolve(Class<?> type) {
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			Method implementation;
+			try {
+				implementation = c.getDeclaredMethod(method.getName(), method.getParameterTypes());
+			} catch (NoSuchMethodException e) {
+				continue;
+			}
+
+			int modifiers = implementation.getModifiers();
+			if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers)) {
+				continue;
+			}
+
+			if (Modifier.isAbstract(modifiers)) {
+				break;
+			}
+
+			try {
+				return MemberHandles.getInvoker(implementation);
+			} catch (UnsupportedOperationException | SecurityException e) {
+				break;
+			}
+		}
+
+		// default method or inaccessible implementation
+		return megamorphic;
+	}
+
+	private static final class Entry {
+		final Class<?> type;
+		final MethodHandle invoker;
+
+		Entry(Class<?> type, MethodHandle invoker) {
+			this.type = type;
+			this.invoker = invoker;
+		}
+	}
+}
@@ -17,15 +17,6 @@
 
 package com.github.collinalpert.expressions.expression;
 
-import java.lang.reflect.AccessibleObject;
-import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Member;
-import java.lang.reflect.Method;
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -36,28 +27,146 @@ import java.util.function.Predicate;
 
 import static com.github.collinalpert.expressions.function.Functions.*;
 
-final class Interpreter implements ExpressionVisitor<Function<Object[], ?>> {
+/**
+ * Evaluates expression trees by composing closures.
+ * <p>
+ * Each closure takes a frame, an {@code Object[]} whose slot layout is computed while the tree is visited: the lambda
+ * parameters come first, followed by the parameters of every inlined lambda and the arguments of every member call.
+ * The frame is allocated once per thread and reused, so evaluating a lambda does not allocate by itself.
+ * </p>
+ */
+final class Interpreter extends FrameInterpreter<Function<Object[], ?>> {
+
+	/**
+	 * The number of delegate targets whose interpretation is cached.
+	 */
+	static final int DelegateCacheSize = 256;
 
-	static final Interpreter Instance = new Interpreter();
 	private static final Object[] emptyArray = new Object[0];
+	private static final IdentityCache<InvocableExpression, Function<Object[], ?>> targets = new IdentityCache<>(DelegateCacheSize);
+	private static final IdentityCache<Expression, Delegate> delegates = new IdentityCache<>(DelegateCacheSize);
+
+	private Interpreter(int parameterCount) {
+		super(parameterCount);
+	}
+
+	/**
+	 * Interprets a lambda.
+	 *
+	 * @param lambda The lambda to interpret.
+	 * @return A {@link Function} taking the lambda arguments as an array and returning the lambda result.
+	 */
+	static Function<Object[], ?> interpret(LambdaExpression lambda) {
+		return interpret(lambda.getBody(), lambda.getParameters().size());
+	}
+
+	private static Function<Object[], ?> interpret(Expression body, int parameterCount) {
+		Interpreter interpreter = new Interpreter(parameterCount);
+		Function<Object[], ?> f = body.accept(interpreter);
+
+		return framed(f, parameterCount, interpreter.getFrameSize());
+	}
+
+	/**
+	 * Wraps the closure evaluating a lambda body into a {@link Function} taking the lambda arguments, which evaluates the
+	 * body in a frame reused by the calling thread.
+	 *
+	 * @param body           The closure evaluating the body.
+	 * @param parameterCount The number of lambda parameters, stored in the first frame slots.
+	 * @param frameSize      The number of frame slots.
+	 * @return A {@link Function} taking the lambda arguments as an array and returning the lambda result.
+	 */
+	static Function<Object[], ?> framed(Function<Object[], ?> body, int parameterCount, int frameSize) {
+		final ThreadLocal<Frame> frames = ThreadLocal.withInitial(() -> new Frame(frameSize));
+
+		return (Object[] arguments) -> {
+			Frame frame = frames.get();
+			if (frame.busy) {
+				// re-entered from a member called by the lambda
+				return body.apply(load(new Object[frameSize], arguments, parameterCount));
+			}
+
+			frame.busy = true;
+			try {
+				return body.apply(load(frame.slots, arguments, parameterCount));
+			} finally {
+				Arrays.fill(frame.slots, null);
+				frame.busy = false;
+			}
+		};
+	}
+
+	/**
+	 * Evaluates an expression once.
+	 *
+	 * @param e         The expression to evaluate.
+	 * @param arguments The values of the parameters {@code e} refers to.
+	 * @return The value of {@code e}.
+	 */
+	static Object evaluate(Expression e, Object[] arguments) {
+		if (arguments == null) {
+			arguments = emptyArray;
+		}
+
+		Interpreter interpreter = new Interpreter(arguments.length);
+		Function<Object[], ?> f = e.accept(interpreter);
+		return f.apply(Arrays.copyOf(arguments, interpreter.getFrameSize()));
+	}
+
+	/**
+	 * Evaluates the expression of a delegate in the scope of its invocation. The interpretation of {@code e} is cached
+	 * by identity.
+	 *
+	 * @param e         The expression of the delegate.
+	 * @param arguments The arguments of the delegate invocation.
+	 * @return The value of {@code e}, usually an {@link InvocableExpression}.
+	 */
+	static Object evaluateDelegate(Expression e, Object[] arguments) {
+		if (arguments == null) {
+			arguments = emptyArray;
+		}
 
-	private Interpreter() {
+		Delegate delegate = delegates.get(e);
+		if (delegate == null || delegate.parameterCount != arguments.length) {
+			delegate = new Delegate(arguments.length, interpret(e, arguments.length));
+			delegates.put(e, delegate);
+		}
+
+		return delegate.function.apply(arguments);
 	}
 
-	private static Function<Object[], ?> toClosure(Function<Object[], ?> f) {
-		return (Function<Object[], Function<Object[], ?>>) (Object[] captured) -> (Object[] p) -> f.apply(concat(captured, p));
+	/**
+	 * Invokes a delegate target. The interpretation of {@code target} is cached by identity, so a target invoked
+	 * repeatedly is interpreted once.
+	 *
+	 * @param target    The target, usually a {@link LambdaExpression}.
+	 * @param arguments The arguments.
+	 * @return The result of the invocation.
+	 */
+	static Object invoke(InvocableExpression target, Object[] arguments) {
+		return targets.computeIfAbsent(target, Interpreter::interpretTarget).apply(arguments);
 	}
 
-	private static <T> T[] concat(T[] first, T[] second) {
-		if (first == null || first.length == 0) {
-			return second;
+	private static Function<Object[], ?> interpretTarget(InvocableExpression target) {
+		if (target.getExpressionType() == ExpressionType.Lambda) {
+			return interpret((LambdaExpression) target);
 		}
-		if (second == null || second.length == 0) {
-			return first;
+
+		List<ParameterExpression> parameters = target.getParameters();
+		return interpret(Expression.invoke(target, new ArrayList<Expression>(parameters)), parameters.size());
+	}
+
+	private static Object[] load(Object[] slots, Object[] arguments, int parameterCount) {
+		if (arguments != null) {
+			System.arraycopy(arguments, 0, slots, 0, Math.min(arguments.length, parameterCount));
 		}
-		T[] result = Arrays.copyOf(first, first.length + second.length);
-		System.arraycopy(second, 0, result, first.length, second.length);
-		return result;
+
+		return slots;
+	}
+
+	@Override
+	Function<Object[], ?> closure(Function<Object[], ?> closure) {
+		return closure;
 	}
 
 	private Function<Object[], ?> normalize(BiFunction<Object[], Object[], ?> source) {
@@ -77,6 +186,11 @@ final class Interpreter implements ExpressionVisitor<Function<Object[], ?>> {
 	public Function<Object[], ?> visit(BinaryExpression e) {
 		final Function<Object[], ?> first = e.getFirst().accept(this);
 		final Function<Object[], ?> second = e.getSecond().accept(this);
+		Function<Object[], ?> specialized = SpecializedOperations.specialize(e, first, second);
+		if (specialized != null) {
+			return specialized;
+		}
+
 		switch (e.getExpressionType()) {
 			case ExpressionType.Add:
 				return normalize(add((Function<Object[], Number>) first, (Function<Object[], Number>) second));
@@ -85,7 +199,7 @@ final class Interpreter implements ExpressionVisitor<Function<Object[], ?>> {
 			case ExpressionType.LogicalAnd:
 				return normalize(and((Function<Object[], Boolean>) first, (Function<Object[], Boolean>) second));
 			case ExpressionType.ArrayIndex:
-				return t -> Array.get(first.apply(t), (Integer) second.apply(t));
+				return SpecializedOperations.arrayIndex(e.getFirst().getResultType(), first, second);
 			case ExpressionType.Conditional:
 				return iif((Function<Object[], Boolean>) e.getOperator().accept(this), first, second);
 			case ExpressionType.Divide:
@@ -133,155 +247,54 @@ final class Interpreter implements ExpressionVisitor<Function<Object[], ?>> {
 		return constant(e.getValue());
 	}
 
-	@Override
-	public Function<Object[], ?> visit(InvocationExpression e) {
-
-		InvocableExpression target = e.getTarget();
-		Function<Object[], ?> m = target.accept(this);
-		Function<Object[], ?> x;
-		if (target.getExpressionType() == ExpressionType.Lambda) {
-			x = (Object[] pp) -> {
-				Function<Object[], ?> f1 = (Function<Object[], ?>) m.apply(pp);
-				return f1.apply(emptyArray);
-			};
-		} else {
-			x = m;
-		}
-
-		int size = e.getArguments().size();
-		List<Function<Object[], ?>> ppe = new ArrayList<>(size);
-		for (Expression p : e.getArguments()) {
-			ppe.add(p.accept(this));
-		}
-
-		Function<Object[], Object[]> params = pp -> {
-
-			if (target.getExpressionType() == ExpressionType.FieldAccess) {
-				return pp; // field: no arguments, just the instance
-			}
-
-			Object[] r = new Object[ppe.size()];
-			int index = 0;
-			for (Function<Object[], ?> pe : ppe) {
-				r[index++] = pe.apply(pp);
-			}
-
-			// for MethodAccess we need both outer and inner scope arguments
-			return (target.getExpressionType() == ExpressionType.MethodAccess || target.getExpressionType() == ExpressionType.Delegate) ? new Object[]{pp, r}
-					: r;
-		};
-
-		return x.compose(params);
-	}
-
 	@Override
 	public Function<Object[], ?> visit(LambdaExpression e) {
-		final Function<Object[], ?> f = e.getBody().accept(this);
+		final Function<Object[], ?> f = interpret(e);
 
-		return toClosure(f.compose(visitParameters(e)));
+		return t -> f;
 	}
 
-	private Function<Object[], Object[]> visitParameters(InvocableExpression invocable) {
-		List<ParameterExpression> parameters = invocable.getParameters();
-		int size = parameters.size();
-		List<Function<Object[], ?>> ppe = new ArrayList<>(size);
-		for (ParameterExpression p : parameters) {
-			ppe.add(p.accept(this));
-		}
+	@Override
+	public Function<Object[], ?> visit(LogicalExpression e) {
+		final Function<Object[], ?>[] operands = visitArguments(e.getOperands());
+		// the value deciding the result
+		final Boolean decisive = e.getExpressionType() == ExpressionType.Disjunction;
 
-		return pp -> {
-			Object[] r = new Object[ppe.size()];
-			int index = 0;
-			for (Function<Object[], ?> pe : ppe) {
-				r[parameters.get(index++).getIndex()] = pe.apply(pp);
+		return t -> {
+			for (Function<Object[], ?> operand : operands) {
+				if (decisive.equals(operand.apply(t))) {
+					return decisive;
+				}
 			}
 
-			return r;
+			return !decisive;
 		};
 	}
 
 	@Override
-	public Function<Object[], ?> visit(DelegateExpression e) {
-		final Function<Object[], ?> f = e.getDelegate().accept(this);
-
-		Function<Object[], Object[]> params = visitParameters(e);
+	public Function<Object[], ?> visit(BetweenExpression e) {
+		final Function<Object[], ?> operand = e.getOperand().accept(this);
+		final Function<Object[], ?> lower = e.getLower().accept(this);
+		final Function<Object[], ?> upper = e.getUpper().accept(this);
 
 		return t -> {
-			InvocableExpression l = (InvocableExpression) f.apply((Object[]) t[0]);
-			Function<Object[], ?> f1 = (Function<Object[], ?>) l.accept(this).apply(params.apply((Object[]) t[1]));
-			return l.getExpressionType() == ExpressionType.Lambda ? f1.apply(emptyArray) : f1;
+			Object value = operand.apply(t);
+			return e.isAboveLower(value, lower.apply(t)) && e.isBelowUpper(value, upper.apply(t));
 		};
 	}
 
 	@Override
-	public Function<Object[], ?> visit(MemberExpression e) {
-		final Member m = e.getMember();
-
-		if (m instanceof AccessibleObject) {
-			AccessibleObject ao = (AccessibleObject) m;
-			try {
-				if (!ao.isAccessible()) {
-					ao.setAccessible(true);
-				}
-			} catch (Exception ee) {
-				// suppress
-			}
-		}
-
-		Expression ei = e.getInstance();
-		final Function<Object[], ?> instance = ei != null ? ei.accept(this) : null;
-
-		Function<Object[], Object[]> params = visitParameters(e);
-
-		Function<Object[], ?> field = t -> {
-			try {
-				return ((Field) m).get(instance == null ? null : instance.apply(t));
-			} catch (IllegalArgumentException | IllegalAccessException ex) {
-				throw new RuntimeException(ex);
-			}
-		};
+	public Function<Object[], ?> visit(InExpression e) {
+		final Function<Object[], ?> operand = e.getOperand().accept(this);
 
-		Function<Object[], ?> method = t -> {
-			Object inst;
-			if (instance != null) {
-				inst = instance.apply((Object[]) t[0]);
-			} else {
-				inst = null;
-			}
-			try {
-				Object[] pp = params.apply((Object[]) t[1]);
-				return ((Method) m).invoke(inst, pp);
-			} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-				throw new RuntimeException(ex);
-			}
-		};
-
-		Function<Object[], ?> ctor = t -> {
-			try {
-				return ((Constructor<?>) m).newInstance(params.apply(t));
-			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-				throw new RuntimeException(ex);
-			}
-		};
-
-		Function<Object[], ?> member;
-
-		if (m instanceof Field) {
-			member = field;
-		} else if (m instanceof Method) {
-			member = method;
-		} else {
-			member = ctor;
-		}
-
-		return member;// .compose(params);
+		return t -> e.test(operand.apply(t));
 	}
 
 	@Override
 	public Function<Object[], ?> visit(ParameterExpression e) {
-		final int index = e.getIndex();
+		final int slot = slot(e);
 
-		return t -> t[index];
+		return t -> t[slot];
 	}
 
 	@SuppressWarnings("unchecked")
@@ -290,79 +303,13 @@ final class Interpreter implements ExpressionVisitor<Function<Object[], ?>> {
 		final Function<Object[], ?> first = e.getFirst().accept(this);
 		switch (e.getExpressionType()) {
 			case ExpressionType.ArrayLength:
-				return t -> Array.getLength(first.apply(t));
+				return SpecializedOperations.arrayLength(e.getFirst().getResultType(), first);
 			case ExpressionType.BitwiseNot:
 				return (Function<Object[], ?>) bitwiseNot((Function<Object[], Number>) first);
 			case ExpressionType.Convert:
-				final Class<?> to = e.getResultType();
-				if (to.isPrimitive() || Number.class.isAssignableFrom(to)) {
-					return t -> {
-						Object source = first.apply(t);
-						if (source instanceof Number) {
-							Number result = (Number) source;
-							if (to.isPrimitive()) {
-								if (to == Integer.TYPE) {
-									return result.intValue();
-								}
-
-								if (to == Long.TYPE) {
-									return result.longValue();
-								}
-
-								if (to == Float.TYPE) {
-									return result.floatValue();
-								}
-
-								if (to == Double.TYPE) {
-									return result.doubleValue();
-								}
-
-								if (to == Byte.TYPE) {
-									return result.byteValue();
-								}
-
-								if (to == Character.TYPE) {
-									return (char) result.intValue();
-								}
-
-								if (to == Short.TYPE) {
-									return result.shortValue();
-								}
-							} else if (result != null) {
-								if (to == BigInteger.class) {
-									return BigInteger.valueOf(result.longValue());
-								}
-								if (to == BigDecimal.class) {
-									return BigDecimal.valueOf(result.doubleValue());
-								}
-							}
-						}
-						if (source instanceof Character) {
-							if (to == Character.TYPE) {
-								return (char) source;
-							}
-
-							if (to == Integer.TYPE) {
-								return (int) (char) source;
-							}
-
-							if (to == Long.TYPE) {
-								return (long) (char) source;
-							}
-
-							if (to == Float.TYPE) {
-								return (float) (char) source;
-							}
-
-							if (to == Double.TYPE) {
-								return (double) (char) source;
-							}
-						}
-						return to.cast(source);
-					};
-				}
+				final Function<Object, ?> converter = SpecializedOperations.converter(e.getFirst().getResultType(), e.getResultType());
 
-				return first;
+				return converter != null ? first.andThen(converter) : first;
 			case ExpressionType.IsNull:
 				return first.andThen(r -> r == null);
 			case ExpressionType.IsNonNull:
@@ -375,4 +322,23 @@ final class Interpreter implements ExpressionVisitor<Function<Object[], ?>> {
 				throw new IllegalArgumentException(ExpressionType.toString(e.getExpressionType()));
 		}
 	}
+
+	private static final class Delegate {
+		final int parameterCount;
+		final Function<Object[], ?> function;
+
+		Delegate(int parameterCount, Function<Object[], ?> function) {
+			this.parameterCount = parameterCount;
+			this.function = function;
+		}
+	}
+
+	private static final class Frame {
+		final Object[] slots;
+		boolean busy;
+
+		Frame(int size) {
+			slots = new Object[size];
+		}
+	}
 }
@@ -20,7 +20,13 @@ package com.github.collinalpert.expressions.expression;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
 
 /**
@@ -55,18 +61,170 @@ public final class LambdaExpression extends InvocableExpression {
 		return ExpressionClassCracker.getInstance().lambda(lambda);
 	}
 
+	/**
+	 * Produces the lambda expression with one of its parameters bound to a value, for example a rule of a user and an
+	 * order specialized for the user of a request.
+	 * <p>
+	 * The value is substituted for the parameter and the parts of the body depending only on constants are evaluated,
+	 * treating the value and what is read from it as immutable, as with {@link CompileOption#Snapshot}. Unlike a
+	 * snapshot, they are also read in branches which may not be evaluated, such as the later operands of {@code &&},
+	 * unless they are {@code null}. The other constants are only folded through pure members, as in any compilation.
+	 * The remaining parameters keep their order. The specialized lambda is compiled like any other, so the work
+	 * depending only on the value is done once, instead of at every evaluation.
+	 * </p>
+	 *
+	 * @param index The index of the parameter.
+	 * @param value The value of the parameter.
+	 * @return {@link LambdaExpression} of the remaining parameters.
+	 * @throws IndexOutOfBoundsException if there is no parameter at {@code index}.
+	 * @throws IllegalArgumentException  if {@code value} is not a value of the parameter type.
+	 */
+	public LambdaExpression specialize(int index, Object value) {
+		List<ParameterExpression> parameters = getParameters();
+		Class<?> type = parameters.get(index).getResultType();
+		if (type.isPrimitive() ? !TypeConverter.boxedType(type).isInstance(value) : value != null && !type.isInstance(value)) {
+			throw new IllegalArgumentException(value + " is not a value of " + type);
+		}
+
+		List<ParameterExpression> remaining = new ArrayList<>(parameters.size() - 1);
+		List<Expression> arguments = new ArrayList<>(parameters.size());
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i == index) {
+				arguments.add(Expression.constant(value, type));
+			} else {
+				ParameterExpression parameter = Expression.parameter(parameters.get(i).getResultType(), remaining.size());
+				remaining.add(parameter);
+				arguments.add(parameter);
+			}
+		}
+
+		// canonicalized first, so long chains are flattened before they are reduced
+		LambdaExpression applied = Expression.lambda(getResultType(), Expression.invoke(Canonicalizer.canonicalize(this), arguments), remaining);
+		return ConstantFolder.snapshot(BetaReducer.reduce(applied), value);
+	}
+
 	/**
 	 * Produces a {@link Function} that represents the lambda expression.
+	 * <p>
+	 * The expression is optimized, then compiled to bytecode. Expressions which cannot be compiled, for example because
+	 * they are not accessible from a generated class, are evaluated by an interpreter instead.
+	 * </p>
 	 *
 	 * @return {@link Function} that represents the lambda expression.
 	 */
 	public Function<Object[], ?> compile() {
-		final Function<Object[], ?> f = accept(Interpreter.Instance);
-		return (Object[] pp) -> {
-			Function<Object[], ?> f1 = (Function<Object[], ?>) f.apply(pp);
+		return compile(new CompileOption[0]);
+	}
+
+	/**
+	 * Produces a {@link Function} that represents the lambda expression.
+	 *
+	 * @param options The options controlling the compilation.
+	 * @return {@link Function} that represents the lambda expression.
+	 * @see #compile()
+	 */
+	public Function<Object[], ?> compile(CompileOption... options) {
+		Set<CompileOption> set = toSet(options);
+		LambdaExpression lambda = set.contains(CompileOption.Snapshot) ? ConstantFolder.snapshot(this) : this;
+		if (set.contains(CompileOption.AdaptiveOrdering)) {
+			return new AdaptiveFunction(lambda, optimized -> compile(optimized, set));
+		}
+
+		return compile(Optimizer.optimize(lambda), set);
+	}
+
+	private static Function<Object[], ?> compile(LambdaExpression optimized, Set<CompileOption> set) {
+		optimized = Optimizer.lower(optimized);
+		if (set.contains(CompileOption.Interpret)) {
+			return SpecializingInterpreter.interpret(optimized);
+		}
+
+		try {
+			if (set.contains(CompileOption.NoCodeGeneration)) {
+				return MethodHandleCompiler.compile(optimized);
+			}
+
+			return ExpressionCompiler.compile(optimized);
+		} catch (UnsupportedOperationException | SecurityException e) {
+			// fall back to the interpreter
+		}
+
+		return Interpreter.interpret(optimized);
+	}
+
+	/**
+	 * Produces an implementation of a functional interface that represents the lambda expression, for example a
+	 * {@code Predicate<Customer>} or a {@code ToIntBiFunction<A, B>}. Unlike {@link #compile()}, the arguments are passed
+	 * directly, without an array and without boxing primitive arguments.
+	 *
+	 * @param functionalInterface The functional interface to implement. Its method must take the lambda parameters.
+	 * @param <F>                 The type of the functional interface.
+	 * @return An instance of {@code functionalInterface} that represents the lambda expression.
+	 * @throws IllegalArgumentException if {@code functionalInterface} is not a functional interface taking the lambda
+	 *                                  parameters.
+	 */
+	public <F> F compile(Class<F> functionalInterface) {
+		return compile(functionalInterface, new CompileOption[0]);
+	}
+
+	/**
+	 * Produces an implementation of a functional interface that represents the lambda expression.
+	 *
+	 * @param functionalInterface The functional interface to implement. Its method must take the lambda parameters.
+	 * @param options             The options controlling the compilation.
+	 * @param <F>                 The type of the functional interface.
+	 * @return An instance of {@code functionalInterface} that represents the lambda expression.
+	 * @throws IllegalArgumentException if {@code functionalInterface} is not a functional interface taking the lambda
+	 *                                  parameters.
+	 * @see #compile(Class)
+	 */
+	public <F> F compile(Class<F> functionalInterface, CompileOption... options) {
+		Method method = ExpressionCompiler.getFunctionalMethods(functionalInterface).get(0);
+		List<ParameterExpression> parameters = getParameters();
+		int count = parameters.size();
+		if (method.getParameterCount() != count) {
+			throw new IllegalArgumentException(functionalInterface + " does not take " + count + " parameters.");
+		}
+
+		for (ParameterExpression parameter : parameters) {
+			Class<?> declared = method.getParameterTypes()[parameter.getIndex()];
+			Class<?> type = parameter.getResultType();
+			// the declared type may be an erased type variable, which is cast to the parameter type
+			if (!TypeConverter.isAssignable(type, declared) && !TypeConverter.isAssignable(declared, type)) {
+				throw new IllegalArgumentException(functionalInterface + " does not take " + type + " as parameter " + parameter.getIndex() + ".");
+			}
+		}
+
+		Set<CompileOption> set = toSet(options);
+		// the options avoiding code generation implement the interface with a proxy rather than an adapter class
+		boolean defineClasses = !set.contains(CompileOption.NoCodeGeneration) && !set.contains(CompileOption.Interpret);
+		if (set.contains(CompileOption.AdaptiveOrdering)) {
+			return MethodHandleCompiler.implement(functionalInterface, method, MethodHandleCompiler.spread(compile(options), count), defineClasses);
+		}
+
+		LambdaExpression lambda = set.contains(CompileOption.Snapshot) ? ConstantFolder.snapshot(this) : this;
+		LambdaExpression optimized = Optimizer.lower(Optimizer.optimize(lambda));
+		if (set.contains(CompileOption.Interpret)) {
+			MethodHandle interpreted = MethodHandleCompiler.spread(SpecializingInterpreter.interpret(optimized), count);
+			return MethodHandleCompiler.implement(functionalInterface, method, interpreted, false);
+		}
+
+		try {
+			if (set.contains(CompileOption.NoCodeGeneration)) {
+				return MethodHandleCompiler.implement(functionalInterface, method, MethodHandleCompiler.bind(optimized, method), false);
+			}
+
+			return ExpressionCompiler.compile(optimized, functionalInterface);
+		} catch (UnsupportedOperationException | SecurityException e) {
+			// fall back to the interpreter
+		}
+
+		MethodHandle interpreted = MethodHandleCompiler.spread(Interpreter.interpret(optimized), count);
+		return MethodHandleCompiler.implement(functionalInterface, method, interpreted, defineClasses);
+	}
 
-			return f1.apply(null);
-		};
+	private static Set<CompileOption> toSet(CompileOption[] options) {
+		return options.length == 0 ? EnumSet.noneOf(CompileOption.class) : EnumSet.copyOf(Arrays.asList(options));
 	}
 
 	@Override
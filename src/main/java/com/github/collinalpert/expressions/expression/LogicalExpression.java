@@ -0,0 +1,79 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import lombok.EqualsAndHashCode;
+
+import java.util.List;
+
+/**
+ * Represents a short-circuiting conditional AND or OR of any number of operands, which are evaluated in order until one
+ * decides the result.
+ */
+@EqualsAndHashCode(callSuper = true)
+public final class LogicalExpression extends Expression {
+
+	private final List<Expression> operands;
+
+	LogicalExpression(int expressionType, List<Expression> operands) {
+		super(expressionType, Boolean.TYPE);
+
+		this.operands = operands;
+	}
+
+	@Override
+	protected <T> T visit(ExpressionVisitor<T> v) {
+		return v.visit(this);
+	}
+
+	/**
+	 * Gets the equivalent chain of {@link BinaryExpression}s, associating to the left.
+	 *
+	 * @return The chain of {@link ExpressionType#LogicalAnd} or {@link ExpressionType#LogicalOr} expressions.
+	 */
+	public Expression toBinary() {
+		int type = getExpressionType() == ExpressionType.Conjunction ? ExpressionType.LogicalAnd : ExpressionType.LogicalOr;
+		Expression chain = operands.get(0);
+		for (int i = 1; i < operands.size(); i++) {
+			chain = Expression.binary(type, chain, operands.get(i));
+		}
+
+		return chain;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		String operator = ExpressionType.toString(getExpressionType());
+		b.append('(');
+		for (int i = 0; i < operands.size(); i++) {
+			if (i > 0) {
+				b.append(' ');
+				b.append(operator);
+				b.append(' ');
+			}
+			b.append(operands.get(i).toString());
+		}
+		b.append(')');
+		return b.toString();
+	}
+
+	public List<Expression> getOperands() {
+		return operands;
+	}
+}
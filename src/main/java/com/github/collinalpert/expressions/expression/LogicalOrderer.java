@@ -0,0 +1,614 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Orders the operands of {@code &&} and {@code ||} chains so the cheapest and most decisive tests are evaluated first.
+ * <p>
+ * Conditionals encoding a conjunction or a disjunction, such as {@code a ? b : false}, are rewritten into {@code &&} and
+ * {@code ||} first, and nested chains of the same operator are flattened. Every operand gets a static cost, where a
+ * field read is cheaper than a getter, a getter is cheaper than any other method and a delegate is the most expensive,
+ * and an estimated probability of being {@code true}. The operands of a chain are ordered by the expected cost of
+ * deciding the chain, which is the cost divided by the probability of not short-circuiting.
+ * </p>
+ * <p>
+ * Only {@link Purity pure} operands are moved, and never across an operand with side effects. An operand which may throw
+ * is never moved ahead of an operand originally before it, which may be guarding it, as in
+ * {@code o != null && o.getName() != null}, unless it can only throw by dereferencing parameters which the first of
+ * those operands dereferences anyway. A test which is moved ahead may decide the chain before such an operand is
+ * evaluated, so a chain which used to throw may return its result instead.
+ * </p>
+ */
+final class LogicalOrderer extends SimpleExpressionVisitor {
+
+	private static final double FieldCost = 2;
+	private static final double GetterCost = 5;
+	private static final double MethodCost = 20;
+	private static final double DelegateCost = 50;
+
+	private static final Estimate Static = new Estimate() {
+		@Override
+		public double cost(Expression operand) {
+			return LogicalOrderer.cost(operand);
+		}
+
+		@Override
+		public double probability(Expression operand) {
+			return LogicalOrderer.probability(operand);
+		}
+	};
+
+	private final Estimate measured;
+	private int depth;
+
+	private LogicalOrderer(Estimate measured) {
+		this.measured = measured;
+	}
+
+	/**
+	 * Orders the {@code &&} and {@code ||} operands of a lambda by their static estimates.
+	 *
+	 * @param e The lambda.
+	 * @return The ordered lambda, or {@code e} if there is nothing to order.
+	 */
+	static LambdaExpression order(LambdaExpression e) {
+		return order(e, Static);
+	}
+
+	/**
+	 * Orders the {@code &&} and {@code ||} operands of a lambda by the given estimates. The operands of nested lambdas,
+	 * which are evaluated in another scope, are ordered by their static estimates.
+	 *
+	 * @param e        The lambda.
+	 * @param estimate The estimates of the operands in the scope of {@code e}.
+	 * @return The ordered lambda, or {@code e} if there is nothing to order.
+	 */
+	static LambdaExpression order(LambdaExpression e, Estimate estimate) {
+		return (LambdaExpression) e.accept(new LogicalOrderer(estimate));
+	}
+
+	@Override
+	public Expression visit(BinaryExpression e) {
+		Expression normalized = Canonicalizer.toLogical(e);
+		if (normalized != e) {
+			return TypeConverter.convert(normalized.accept(this), e.getResultType());
+		}
+
+		int type = e.getExpressionType();
+		if (type != ExpressionType.LogicalAnd && type != ExpressionType.LogicalOr) {
+			return super.visit(e);
+		}
+
+		List<Expression> operands = new ArrayList<>();
+		flatten(e, type, operands);
+		return order(e, type, operands);
+	}
+
+	@Override
+	public Expression visit(LogicalExpression e) {
+		return order(e, e.getExpressionType() == ExpressionType.Conjunction ? ExpressionType.LogicalAnd : ExpressionType.LogicalOr, e.getOperands());
+	}
+
+	private Expression order(Expression e, int type, List<Expression> operands) {
+		List<Expression> visited = visitExpressionList(operands);
+		if (visited != operands) {
+			// a visited operand may be a chain of the same operator
+			operands = new ArrayList<>();
+			flatten(Canonicalizer.chain(type, visited), type, operands);
+		}
+
+		List<Expression> ordered = order(operands, type == ExpressionType.LogicalOr);
+		if (visited == operands && ordered.equals(operands)) {
+			return e;
+		}
+
+		return Canonicalizer.chain(type, ordered);
+	}
+
+	@Override
+	public Expression visit(LambdaExpression e) {
+		depth++;
+		try {
+			return super.visit(e);
+		} finally {
+			depth--;
+		}
+	}
+
+	@Override
+	public Expression visit(DelegateExpression e) {
+		return e;
+	}
+
+	/**
+	 * Collects the operands of a chain of {@code &&} or {@code ||}.
+	 *
+	 * @param e        The chain.
+	 * @param type     The operator of the chain, {@link ExpressionType#LogicalAnd} or {@link ExpressionType#LogicalOr}. The
+	 *                 operands of nested {@link LogicalExpression}s of the same operator are collected as well.
+	 * @param operands The list collecting the operands.
+	 */
+	static void flatten(Expression e, int type, List<Expression> operands) {
+		int nary = type == ExpressionType.LogicalAnd ? ExpressionType.Conjunction : ExpressionType.Disjunction;
+		Deque<Expression> pending = new ArrayDeque<>();
+		pending.push(e);
+		// iterates, so long chains do not exhaust the stack
+		while (!pending.isEmpty()) {
+			Expression operand = pending.pop();
+			if (operand.getExpressionType() == type) {
+				BinaryExpression binary = (BinaryExpression) operand;
+				pending.push(binary.getSecond());
+				pending.push(binary.getFirst());
+			} else if (operand.getExpressionType() == nary) {
+				List<Expression> nested = ((LogicalExpression) operand).getOperands();
+				for (int i = nested.size() - 1; i >= 0; i--) {
+					pending.push(nested.get(i));
+				}
+			} else {
+				operands.add(operand);
+			}
+		}
+	}
+
+	private List<Expression> order(List<Expression> operands, boolean disjunction) {
+		List<Expression> ordered = new ArrayList<>(operands.size());
+		int start = 0;
+		for (int i = 0; i <= operands.size(); i++) {
+			if (i == operands.size() || !isPure(operands.get(i))) {
+				// operands with side effects delimit the segments that may be reordered
+				ordered.addAll(orderSegment(operands.subList(start, i), disjunction));
+				if (i < operands.size()) {
+					ordered.add(operands.get(i));
+				}
+				start = i + 1;
+			}
+		}
+
+		return ordered;
+	}
+
+	private List<Expression> orderSegment(List<Expression> segment, boolean disjunction) {
+		Estimate estimate = depth == 1 ? measured : Static;
+		List<Expression> remaining = new ArrayList<>(segment);
+		List<Expression> ordered = new ArrayList<>(segment.size());
+		while (!remaining.isEmpty()) {
+			int best = -1;
+			double bestRank = 0;
+			Set<ParameterExpression> guarded = new HashSet<>();
+			mayThrow(remaining.get(0), guarded, false);
+			for (int i = 0; i < remaining.size(); i++) {
+				Expression operand = remaining.get(i);
+				// an operand that may throw waits for the operands before it, it may be guarded by them, unless it only
+				// dereferences parameters the first of them dereferences anyway
+				Set<ParameterExpression> dereferenced = new HashSet<>();
+				if (i > 0 && (mayThrow(operand, dereferenced, true) || !guarded.containsAll(dereferenced))) {
+					continue;
+				}
+
+				double p = estimate.probability(operand);
+				double rank = estimate.cost(operand) / Math.max(disjunction ? p : 1 - p, 0.01);
+				if (best < 0 || rank < bestRank) {
+					best = i;
+					bestRank = rank;
+				}
+			}
+
+			ordered.add(remaining.remove(best));
+		}
+
+		return ordered;
+	}
+
+	/**
+	 * Determines whether an operand may be evaluated in another order, more times or fewer times.
+	 *
+	 * @param e The operand.
+	 * @return {@code true} if evaluating {@code e} has no side effects.
+	 */
+	static boolean isPure(Expression e) {
+		switch (e.getExpressionType()) {
+			case ExpressionType.Constant:
+			case ExpressionType.Parameter:
+				return true;
+			case ExpressionType.Lambda:
+			case ExpressionType.Delegate:
+			case ExpressionType.MethodAccess:
+			case ExpressionType.New:
+				return false;
+			case ExpressionType.FieldAccess: {
+				Expression instance = ((MemberExpression) e).getInstance();
+				return instance == null || isPure(instance);
+			}
+			case ExpressionType.Invoke: {
+				InvocationExpression invocation = (InvocationExpression) e;
+				for (Expression argument : invocation.getArguments()) {
+					if (!isPure(argument)) {
+						return false;
+					}
+				}
+
+				InvocableExpression target = invocation.getTarget();
+				switch (target.getExpressionType()) {
+					case ExpressionType.Lambda:
+						return isPure(((LambdaExpression) target).getBody());
+					case ExpressionType.Delegate:
+						return false;
+					default:
+						MemberExpression member = (MemberExpression) target;
+						Expression instance = member.getInstance();
+						return member.isReadOnly()
+								&& (instance == null || isPure(instance));
+				}
+			}
+			case ExpressionType.In:
+				return isPure(((InExpression) e).getOperand());
+			case ExpressionType.Between: {
+				BetweenExpression between = (BetweenExpression) e;
+				return isPure(between.getOperand()) && isPure(between.getLower()) && isPure(between.getUpper());
+			}
+			case ExpressionType.Conjunction:
+			case ExpressionType.Disjunction: {
+				for (Expression operand : ((LogicalExpression) e).getOperands()) {
+					if (!isPure(operand)) {
+						return false;
+					}
+				}
+
+				return true;
+			}
+			default: {
+				UnaryExpression unary = (UnaryExpression) e;
+				if (!isPure(unary.getFirst())) {
+					return false;
+				}
+
+				if (e instanceof BinaryExpression) {
+					BinaryExpression binary = (BinaryExpression) e;
+					return isPure(binary.getSecond()) && (binary.getOperator() == null || isPure(binary.getOperator()));
+				}
+
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Determines whether an operand may throw, other than by dereferencing a {@code null} parameter.
+	 *
+	 * @param e            The operand.
+	 * @param dereferenced The set collecting the parameters {@code e} dereferences.
+	 * @param conditional  Whether to collect the parameters dereferenced by the parts of {@code e} which are evaluated
+	 *                     conditionally.
+	 * @return {@code true} if {@code e} may throw for another reason.
+	 */
+	private static boolean mayThrow(Expression e, Set<ParameterExpression> dereferenced, boolean conditional) {
+		switch (e.getExpressionType()) {
+			case ExpressionType.Constant:
+			case ExpressionType.Parameter:
+				return false;
+			case ExpressionType.FieldAccess: {
+				Expression instance = ((MemberExpression) e).getInstance();
+				return instance != null && dereference(instance, dereferenced, conditional);
+			}
+			case ExpressionType.Invoke: {
+				InvocationExpression invocation = (InvocationExpression) e;
+				InvocableExpression target = invocation.getTarget();
+				if (!(target instanceof MemberExpression)) {
+					return true;
+				}
+
+				MemberExpression member = (MemberExpression) target;
+				// getters and pure methods without arguments only throw on a null instance
+				boolean throwing = member.getExpressionType() != ExpressionType.FieldAccess && (!invocation.getArguments().isEmpty()
+						|| member.getExpressionType() != ExpressionType.MethodAccess || !member.isGetter() && !member.isPure());
+				Expression instance = member.getInstance();
+				if (instance != null) {
+					throwing |= dereference(instance, dereferenced, conditional);
+				}
+
+				for (Expression argument : invocation.getArguments()) {
+					throwing |= mayThrow(argument, dereferenced, conditional);
+				}
+
+				return throwing;
+			}
+			case ExpressionType.Lambda:
+			case ExpressionType.Delegate:
+			case ExpressionType.MethodAccess:
+			case ExpressionType.New:
+				return true;
+			case ExpressionType.ArrayIndex: {
+				BinaryExpression binary = (BinaryExpression) e;
+				dereference(binary.getFirst(), dereferenced, conditional);
+				mayThrow(binary.getSecond(), dereferenced, conditional);
+				return true;
+			}
+			case ExpressionType.ArrayLength:
+				return dereference(((UnaryExpression) e).getFirst(), dereferenced, conditional);
+			case ExpressionType.IsNull:
+			case ExpressionType.IsNonNull:
+			case ExpressionType.InstanceOf:
+				return mayThrow(((UnaryExpression) e).getFirst(), dereferenced, conditional);
+			case ExpressionType.Convert: {
+				Expression operand = ((UnaryExpression) e).getFirst();
+				Class<?> from = operand.getResultType();
+				Class<?> to = e.getResultType();
+				if (from.isPrimitive()) {
+					return mayThrow(operand, dereferenced, conditional);
+				}
+
+				if (to.isPrimitive()) {
+					return dereference(operand, dereferenced, conditional);
+				}
+
+				return mayThrow(operand, dereferenced, conditional) | !to.isAssignableFrom(from);
+			}
+			case ExpressionType.LogicalAnd:
+			case ExpressionType.LogicalOr:
+			case ExpressionType.Coalesce: {
+				BinaryExpression binary = (BinaryExpression) e;
+				Set<ParameterExpression> second = conditional ? dereferenced : new HashSet<>();
+				return mayThrow(binary.getFirst(), dereferenced, conditional) | mayThrow(binary.getSecond(), second, conditional);
+			}
+			case ExpressionType.Between: {
+				BetweenExpression between = (BetweenExpression) e;
+				Set<ParameterExpression> upper = conditional ? dereferenced : new HashSet<>();
+				return mayThrow(between.getOperand(), dereferenced, conditional) | mayThrow(between.getLower(), dereferenced, conditional)
+						| mayThrow(between.getUpper(), upper, conditional);
+			}
+			case ExpressionType.In: {
+				// sets of references reject null
+				Expression operand = ((InExpression) e).getOperand();
+				return operand(operand, dereferenced, conditional);
+			}
+			case ExpressionType.Conjunction:
+			case ExpressionType.Disjunction: {
+				List<Expression> operands = ((LogicalExpression) e).getOperands();
+				Set<ParameterExpression> rest = conditional ? dereferenced : new HashSet<>();
+				boolean throwing = mayThrow(operands.get(0), dereferenced, conditional);
+				for (int i = 1; i < operands.size(); i++) {
+					throwing |= mayThrow(operands.get(i), rest, conditional);
+				}
+
+				return throwing;
+			}
+			case ExpressionType.Conditional: {
+				BinaryExpression binary = (BinaryExpression) e;
+				Set<ParameterExpression> branches = conditional ? dereferenced : new HashSet<>();
+				return mayThrow(binary.getOperator(), dereferenced, conditional) | mayThrow(binary.getFirst(), branches, conditional)
+						| mayThrow(binary.getSecond(), branches, conditional);
+			}
+			default:
+				break;
+		}
+
+		// the remaining operators only throw when unboxing
+		UnaryExpression unary = (UnaryExpression) e;
+		Expression first = unary.getFirst();
+		if (!(e instanceof BinaryExpression)) {
+			return operand(first, dereferenced, conditional);
+		}
+
+		Expression second = ((BinaryExpression) e).getSecond();
+		switch (e.getExpressionType()) {
+			case ExpressionType.Equal:
+			case ExpressionType.NotEqual:
+				if (first.getResultType().isPrimitive() == second.getResultType().isPrimitive()) {
+					return mayThrow(first, dereferenced, conditional) | mayThrow(second, dereferenced, conditional);
+				}
+				break;
+			case ExpressionType.Divide:
+			case ExpressionType.Modulo: {
+				// integral division by zero throws
+				boolean throwing = operand(first, dereferenced, conditional) | operand(second, dereferenced, conditional);
+				Class<?> type = TypeConverter.unboxedType(e.getResultType());
+				return throwing || type != Float.TYPE && type != Double.TYPE;
+			}
+			default:
+				break;
+		}
+
+		return operand(first, dereferenced, conditional) | operand(second, dereferenced, conditional);
+	}
+
+	private static boolean operand(Expression e, Set<ParameterExpression> dereferenced, boolean conditional) {
+		return e.getResultType().isPrimitive() ? mayThrow(e, dereferenced, conditional) : dereference(e, dereferenced, conditional);
+	}
+
+	private static boolean dereference(Expression e, Set<ParameterExpression> dereferenced, boolean conditional) {
+		if (e.getExpressionType() == ExpressionType.Parameter) {
+			dereferenced.add((ParameterExpression) e);
+			return false;
+		}
+
+		// any other instance may be null
+		mayThrow(e, dereferenced, conditional);
+		return true;
+	}
+
+	private static double cost(Expression e) {
+		switch (e.getExpressionType()) {
+			case ExpressionType.Constant:
+			case ExpressionType.Parameter:
+				return 0;
+			case ExpressionType.Lambda:
+			case ExpressionType.Delegate:
+				return DelegateCost;
+			case ExpressionType.FieldAccess:
+			case ExpressionType.MethodAccess:
+			case ExpressionType.New: {
+				MemberExpression member = (MemberExpression) e;
+				Expression instance = member.getInstance();
+				return memberCost(member) + (instance != null ? cost(instance) : 0);
+			}
+			case ExpressionType.Invoke: {
+				InvocationExpression invocation = (InvocationExpression) e;
+				double cost = 0;
+				for (Expression argument : invocation.getArguments()) {
+					cost += cost(argument);
+				}
+
+				InvocableExpression target = invocation.getTarget();
+				return cost + (target.getExpressionType() == ExpressionType.Lambda ? cost(((LambdaExpression) target).getBody()) : cost(target));
+			}
+			case ExpressionType.LogicalAnd:
+			case ExpressionType.LogicalOr: {
+				BinaryExpression binary = (BinaryExpression) e;
+				double p = probability(binary.getFirst());
+				double evaluated = e.getExpressionType() == ExpressionType.LogicalAnd ? p : 1 - p;
+				return 1 + cost(binary.getFirst()) + evaluated * cost(binary.getSecond());
+			}
+			case ExpressionType.Between: {
+				BetweenExpression between = (BetweenExpression) e;
+				return 2 + cost(between.getOperand()) + cost(between.getLower()) + cost(between.getUpper());
+			}
+			case ExpressionType.In:
+				// hashing the value
+				return 2 + cost(((InExpression) e).getOperand());
+			case ExpressionType.Conjunction:
+			case ExpressionType.Disjunction: {
+				boolean and = e.getExpressionType() == ExpressionType.Conjunction;
+				double cost = 1;
+				double evaluated = 1;
+				for (Expression operand : ((LogicalExpression) e).getOperands()) {
+					cost += evaluated * cost(operand);
+					double p = probability(operand);
+					evaluated *= and ? p : 1 - p;
+				}
+
+				return cost;
+			}
+			default: {
+				UnaryExpression unary = (UnaryExpression) e;
+				double cost = 1 + cost(unary.getFirst());
+				if (e instanceof BinaryExpression) {
+					BinaryExpression binary = (BinaryExpression) e;
+					cost += cost(binary.getSecond());
+					if (binary.getOperator() != null) {
+						cost += cost(binary.getOperator());
+					}
+				}
+
+				return cost;
+			}
+		}
+	}
+
+	private static double memberCost(MemberExpression member) {
+		Member m = member.getMember();
+		if (m instanceof Field) {
+			return Modifier.isStatic(m.getModifiers()) ? 1 : FieldCost;
+		}
+
+		// pure methods of values without arguments, such as String.length(), are as cheap as getters
+		boolean accessor = member.isGetter() || member.isPure() && m instanceof Method && ((Method) m).getParameterCount() == 0;
+		return accessor ? GetterCost : MethodCost;
+	}
+
+	private static double probability(Expression e) {
+		switch (e.getExpressionType()) {
+			case ExpressionType.Constant:
+				return Canonicalizer.isConstant(e, true) ? 1 : 0;
+			case ExpressionType.Equal:
+			case ExpressionType.IsNull:
+				return 0.1;
+			case ExpressionType.NotEqual:
+			case ExpressionType.IsNonNull:
+				return 0.9;
+			case ExpressionType.LessThan:
+			case ExpressionType.LessThanOrEqual:
+			case ExpressionType.GreaterThan:
+			case ExpressionType.GreaterThanOrEqual:
+			case ExpressionType.Between:
+				return 1.0 / 3;
+			case ExpressionType.LogicalNot:
+				return 1 - probability(((UnaryExpression) e).getFirst());
+			case ExpressionType.Convert:
+				return probability(((UnaryExpression) e).getFirst());
+			case ExpressionType.LogicalAnd: {
+				BinaryExpression binary = (BinaryExpression) e;
+				return probability(binary.getFirst()) * probability(binary.getSecond());
+			}
+			case ExpressionType.LogicalOr: {
+				BinaryExpression binary = (BinaryExpression) e;
+				return 1 - (1 - probability(binary.getFirst())) * (1 - probability(binary.getSecond()));
+			}
+			case ExpressionType.In:
+				// as a chain of equalities
+				return 1 - Math.pow(0.9, ((InExpression) e).getValues().size());
+			case ExpressionType.Conjunction: {
+				double p = 1;
+				for (Expression operand : ((LogicalExpression) e).getOperands()) {
+					p *= probability(operand);
+				}
+
+				return p;
+			}
+			case ExpressionType.Disjunction: {
+				double q = 1;
+				for (Expression operand : ((LogicalExpression) e).getOperands()) {
+					q *= 1 - probability(operand);
+				}
+
+				return 1 - q;
+			}
+			case ExpressionType.Invoke: {
+				InvocableExpression target = ((InvocationExpression) e).getTarget();
+				if (target instanceof MemberExpression && ((MemberExpression) target).getMember().getName().equals("equals")) {
+					return 0.1;
+				}
+
+				return 0.5;
+			}
+			default:
+				return 0.5;
+		}
+	}
+
+	/**
+	 * Estimates the operands of {@code &&} and {@code ||}.
+	 */
+	interface Estimate {
+		/**
+		 * Estimates the cost of evaluating an operand, in any unit used consistently for the operands of a lambda.
+		 *
+		 * @param operand The operand.
+		 * @return The cost.
+		 */
+		double cost(Expression operand);
+
+		/**
+		 * Estimates the probability of an operand evaluating to {@code true}.
+		 *
+		 * @param operand The operand.
+		 * @return The probability, between 0 and 1.
+		 */
+		double probability(Expression operand);
+	}
+}
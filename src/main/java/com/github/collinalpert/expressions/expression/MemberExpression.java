@@ -31,6 +31,8 @@ public final class MemberExpression extends InvocableExpression {
 
 	private final Expression instance;
 	private final Member member;
+	@EqualsAndHashCode.Exclude
+	private int purity = -1;
 
 	MemberExpression(int expressionType, Expression instance, Member member, Class<?> resultType, List<ParameterExpression> params) {
 		super(expressionType, resultType, params);
@@ -59,4 +61,42 @@ public final class MemberExpression extends InvocableExpression {
 	public Member getMember() {
 		return member;
 	}
+
+	/**
+	 * Determines whether the member is {@link Purity#isPure(Member) pure}.
+	 *
+	 * @return {@code true} if accessing the member has no side effects and yields the same result for the same instance
+	 * and arguments.
+	 */
+	boolean isPure() {
+		return (getPurity() & Purity.Stable) != 0;
+	}
+
+	/**
+	 * Determines whether the member is {@link Purity#isReadOnly(Member) read-only}.
+	 *
+	 * @return {@code true} if accessing the member has no side effects.
+	 */
+	boolean isReadOnly() {
+		return (getPurity() & Purity.ReadOnly) != 0;
+	}
+
+	/**
+	 * Determines whether the member is a {@link Purity#isGetter(Member) getter}.
+	 *
+	 * @return {@code true} if the member is a method returning a field of its instance.
+	 */
+	boolean isGetter() {
+		return (getPurity() & Purity.Getter) != 0;
+	}
+
+	private int getPurity() {
+		int purity = this.purity;
+		if (purity < 0) {
+			Expression instance = getInstance();
+			this.purity = purity = Purity.analyze(member, instance != null ? instance.getResultType() : null);
+		}
+
+		return purity;
+	}
 }
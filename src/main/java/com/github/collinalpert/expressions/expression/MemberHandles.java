@@ -0,0 +1,180 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves {@link Member}s to {@link MethodHandle}s once and caches them per declaring class.
+ * <p>
+ * The caches are stored in {@link ClassValue}s, so they do not keep the declaring classes and their class loaders alive.
+ * </p>
+ */
+final class MemberHandles {
+
+	/**
+	 * The largest arity invoked with a direct {@code invokeExact} call. Larger arities are invoked through a spreader.
+	 */
+	static final int MaxDirectArity = 5;
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+	private static final ClassValue<Map<Member, MethodHandle>> handles = new ClassValue<>() {
+		@Override
+		protected Map<Member, MethodHandle> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private static final ClassValue<Map<Member, MethodHandle>> invokers = new ClassValue<>() {
+		@Override
+		protected Map<Member, MethodHandle> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private MemberHandles() {
+	}
+
+	/**
+	 * Gets the handle of a member: the method, the constructor or the field getter.
+	 *
+	 * @param m The member.
+	 * @return The {@link MethodHandle} of {@code m}.
+	 * @throws UnsupportedOperationException if {@code m} is not accessible.
+	 */
+	static MethodHandle get(Member m) {
+		return handles.get(m.getDeclaringClass()).computeIfAbsent(m, MemberHandles::unreflect);
+	}
+
+	/**
+	 * Gets the handle of a member adapted to take and return {@link Object}s. Members whose arity, including the
+	 * instance, exceeds {@link #MaxDirectArity} take their arguments as an {@code Object[]}.
+	 *
+	 * @param m The member.
+	 * @return The generic {@link MethodHandle} of {@code m}, to be called with {@link #invoke(MethodHandle, Object[], int, int)}
+	 * or {@link #invoke(MethodHandle, Object, Object[], int, int)}.
+	 * @throws UnsupportedOperationException if {@code m} is not accessible.
+	 */
+	static MethodHandle getInvoker(Member m) {
+		return invokers.get(m.getDeclaringClass()).computeIfAbsent(m, member -> {
+			MethodHandle handle = get(member);
+			int arity = handle.type().parameterCount();
+			handle = handle.asType(handle.type().generic());
+			return arity > MaxDirectArity ? handle.asSpreader(Object[].class, arity) : handle;
+		});
+	}
+
+	/**
+	 * Invokes a static member invoker.
+	 *
+	 * @param invoker   The invoker obtained from {@link #getInvoker(Member)}.
+	 * @param arguments The array holding the arguments.
+	 * @param offset    The index of the first argument in {@code arguments}.
+	 * @param count     The number of arguments.
+	 * @return The result of the invocation.
+	 */
+	static Object invoke(MethodHandle invoker, Object[] arguments, int offset, int count) {
+		try {
+			switch (count) {
+				case 0:
+					return invoker.invokeExact();
+				case 1:
+					return invoker.invokeExact(arguments[offset]);
+				case 2:
+					return invoker.invokeExact(arguments[offset], arguments[offset + 1]);
+				case 3:
+					return invoker.invokeExact(arguments[offset], arguments[offset + 1], arguments[offset + 2]);
+				case 4:
+					return invoker.invokeExact(arguments[offset], arguments[offset + 1], arguments[offset + 2], arguments[offset + 3]);
+				case 5:
+					return invoker.invokeExact(arguments[offset], arguments[offset + 1], arguments[offset + 2], arguments[offset + 3],
+							arguments[offset + 4]);
+				default:
+					return invoker.invokeExact(Arrays.copyOfRange(arguments, offset, offset + count));
+			}
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Invokes an instance member invoker.
+	 *
+	 * @param invoker   The invoker obtained from {@link #getInvoker(Member)}.
+	 * @param instance  The instance.
+	 * @param arguments The array holding the arguments.
+	 * @param offset    The index of the first argument in {@code arguments}.
+	 * @param count     The number of arguments.
+	 * @return The result of the invocation.
+	 */
+	static Object invoke(MethodHandle invoker, Object instance, Object[] arguments, int offset, int count) {
+		try {
+			switch (count) {
+				case 0:
+					return invoker.invokeExact(instance);
+				case 1:
+					return invoker.invokeExact(instance, arguments[offset]);
+				case 2:
+					return invoker.invokeExact(instance, arguments[offset], arguments[offset + 1]);
+				case 3:
+					return invoker.invokeExact(instance, arguments[offset], arguments[offset + 1], arguments[offset + 2]);
+				case 4:
+					return invoker.invokeExact(instance, arguments[offset], arguments[offset + 1], arguments[offset + 2],
+							arguments[offset + 3]);
+				default:
+					Object[] all = new Object[count + 1];
+					all[0] = instance;
+					System.arraycopy(arguments, offset, all, 1, count);
+					return invoker.invokeExact(all);
+			}
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static MethodHandle unreflect(Member m) {
+		((AccessibleObject) m).trySetAccessible();
+		try {
+			if (m instanceof Method) {
+				return lookup.unreflect((Method) m);
+			}
+
+			if (m instanceof Field) {
+				return lookup.unreflectGetter((Field) m);
+			}
+
+			return lookup.unreflectConstructor((Constructor<?>) m);
+		} catch (IllegalAccessException e) {
+			throw new UnsupportedOperationException(e);
+		}
+	}
+}
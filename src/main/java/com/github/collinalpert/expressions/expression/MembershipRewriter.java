@@ -0,0 +1,254 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Replaces tests against several constants with an {@link InExpression}.
+ * <p>
+ * A run of adjacent {@code ||} operands comparing the same pure integral operand to at least {@link #MinimumSize}
+ * constants with {@code ==}, such as {@code c == 1 || c == 7 || c == 9}, becomes {@code c in [1, 7, 9]}, and a run of
+ * {@code !=} in {@code &&} becomes its negation. Fewer constants are cheaper to compare one by one.
+ * </p>
+ * <p>
+ * A call to {@code contains} on a constant collection created by {@link Set#of}, {@link List#of} or their
+ * {@code copyOf} counterparts becomes a test of its elements. The collection is either captured or created in the lambda
+ * from constant elements, which {@link ConstantFolder} evaluates ahead of time, such as
+ * {@code Set.of("a", "b").contains(x)}. Other collections may change after the lambda is compiled and are still called. Lists, which may contain {@code null} when they come from a stream, are only rewritten for
+ * primitive operands.
+ * </p>
+ */
+final class MembershipRewriter extends SimpleExpressionVisitor {
+
+	/**
+	 * The minimal number of constants tested in a set.
+	 */
+	static final int MinimumSize = 3;
+
+	private MembershipRewriter() {
+	}
+
+	/**
+	 * Rewrites the membership tests of a lambda.
+	 *
+	 * @param e The lambda.
+	 * @return The rewritten lambda, or {@code e} if there is nothing to rewrite.
+	 */
+	static LambdaExpression rewrite(LambdaExpression e) {
+		return (LambdaExpression) e.accept(new MembershipRewriter());
+	}
+
+	@Override
+	public Expression visit(BinaryExpression e) {
+		int type = e.getExpressionType();
+		if (type != ExpressionType.LogicalAnd && type != ExpressionType.LogicalOr) {
+			return super.visit(e);
+		}
+
+		List<Expression> operands = new ArrayList<>();
+		LogicalOrderer.flatten(e, type, operands);
+		return group(e, type, operands);
+	}
+
+	@Override
+	public Expression visit(LogicalExpression e) {
+		return group(e, e.getExpressionType() == ExpressionType.Conjunction ? ExpressionType.LogicalAnd : ExpressionType.LogicalOr, e.getOperands());
+	}
+
+	@Override
+	public Expression visit(InvocationExpression e) {
+		InvocableExpression target = e.getTarget();
+		List<Expression> arguments = visitArguments(e.getArguments());
+		Expression visited = target;
+		switch (target.getExpressionType()) {
+			case ExpressionType.Lambda:
+				visited = target.accept(this);
+				break;
+			case ExpressionType.Delegate:
+				break;
+			default:
+				visited = visit((MemberExpression) target);
+				break;
+		}
+
+		if (visited != target || arguments != e.getArguments()) {
+			e = Expression.invoke((InvocableExpression) visited, arguments);
+		}
+
+		Expression in = contains(e);
+		return in != null ? in : e;
+	}
+
+	@Override
+	public Expression visit(DelegateExpression e) {
+		return e;
+	}
+
+	private Expression group(Expression e, int type, List<Expression> operands) {
+		List<Expression> visited = visitExpressionList(operands);
+		boolean disjunction = type == ExpressionType.LogicalOr;
+		List<Expression> grouped = new ArrayList<>(visited.size());
+		for (int i = 0; i < visited.size(); ) {
+			Expression operand = compared(visited.get(i), disjunction);
+			Set<Object> values = new LinkedHashSet<>();
+			int end = i;
+			do {
+				collect(visited.get(end), disjunction, values);
+				end++;
+			} while (operand != null && end < visited.size() && operand.equals(compared(visited.get(end), disjunction)));
+
+			if (end - i > 1 && values.size() >= MinimumSize) {
+				InExpression in = Expression.in(operand, values);
+				grouped.add(disjunction ? in : Expression.logicalNot(in));
+			} else {
+				grouped.addAll(visited.subList(i, end));
+			}
+
+			i = end;
+		}
+
+		if (grouped.size() == operands.size() && visited == operands) {
+			return e;
+		}
+
+		return Canonicalizer.chain(type, grouped);
+	}
+
+	/**
+	 * Gets the operand a chain operand compares to constants, {@code ==} in a disjunction and {@code !=} in a
+	 * conjunction.
+	 *
+	 * @return The compared operand, or {@code null} if {@code e} does not compare one.
+	 */
+	private static Expression compared(Expression e, boolean disjunction) {
+		if (!disjunction && e.getExpressionType() == ExpressionType.LogicalNot) {
+			Expression negated = ((UnaryExpression) e).getFirst();
+			return negated.getExpressionType() == ExpressionType.In ? ((InExpression) negated).getOperand() : null;
+		}
+
+		if (disjunction && e.getExpressionType() == ExpressionType.In) {
+			return ((InExpression) e).getOperand();
+		}
+
+		if (e.getExpressionType() != (disjunction ? ExpressionType.Equal : ExpressionType.NotEqual)) {
+			return null;
+		}
+
+		BinaryExpression comparison = (BinaryExpression) e;
+		Expression first = comparison.getFirst();
+		Expression second = comparison.getSecond();
+		if (first.getExpressionType() == ExpressionType.Constant) {
+			Expression swapped = first;
+			first = second;
+			second = swapped;
+		}
+
+		if (second.getExpressionType() != ExpressionType.Constant || first.getExpressionType() == ExpressionType.Constant
+				|| !isIntegral(first.getResultType()) || !LogicalOrderer.isPure(first)) {
+			return null;
+		}
+
+		Object value = ((ConstantExpression) second).getValue();
+		return TypeConverter.boxedType(first.getResultType()).isInstance(value) ? first : null;
+	}
+
+	private static void collect(Expression e, boolean disjunction, Set<Object> values) {
+		if (e.getExpressionType() == ExpressionType.LogicalNot) {
+			e = ((UnaryExpression) e).getFirst();
+		}
+
+		if (e.getExpressionType() == ExpressionType.In) {
+			values.addAll(((InExpression) e).getValues());
+			return;
+		}
+
+		if (e instanceof BinaryExpression) {
+			BinaryExpression comparison = (BinaryExpression) e;
+			Expression constant = comparison.getSecond().getExpressionType() == ExpressionType.Constant ? comparison.getSecond() : comparison.getFirst();
+			if (constant.getExpressionType() == ExpressionType.Constant) {
+				values.add(((ConstantExpression) constant).getValue());
+			}
+		}
+	}
+
+	private static boolean isIntegral(Class<?> type) {
+		return type == Integer.TYPE || type == Long.TYPE || type == Short.TYPE || type == Byte.TYPE || type == Character.TYPE;
+	}
+
+	/**
+	 * Rewrites a call to {@code contains} on a constant immutable collection.
+	 *
+	 * @return The {@link InExpression}, or {@code null} if {@code e} is not such a call.
+	 */
+	private static Expression contains(InvocationExpression e) {
+		if (!(e.getTarget() instanceof MemberExpression) || e.getArguments().size() != 1) {
+			return null;
+		}
+
+		MemberExpression member = (MemberExpression) e.getTarget();
+		Member m = member.getMember();
+		Expression instance = member.getInstance();
+		if (!(m instanceof Method) || !m.getName().equals("contains") || !Collection.class.isAssignableFrom(m.getDeclaringClass())
+				|| instance == null || instance.getExpressionType() != ExpressionType.Constant) {
+			return null;
+		}
+
+		Object collection = ((ConstantExpression) instance).getValue();
+		if (collection == null || !collection.getClass().getName().startsWith("java.util.ImmutableCollections$")) {
+			return null;
+		}
+
+		Expression argument = e.getArguments().get(0);
+		while (argument.getExpressionType() == ExpressionType.Convert) {
+			Expression source = ((UnaryExpression) argument).getFirst();
+			Class<?> from = source.getResultType();
+			Class<?> to = argument.getResultType();
+			// upcasts and boxing keep the value
+			if (from.isPrimitive() ? to != TypeConverter.boxedType(from) : to.isPrimitive() || !to.isAssignableFrom(from)) {
+				break;
+			}
+
+			argument = source;
+		}
+
+		Collection<?> elements = (Collection<?>) collection;
+		Class<?> type = argument.getResultType();
+		if (!type.isPrimitive()) {
+			// immutable sets never contain null
+			return collection instanceof Set<?> ? Expression.in(argument, elements) : null;
+		}
+
+		// the other elements never equal the boxed argument
+		Class<?> boxed = TypeConverter.boxedType(type);
+		List<Object> values = new ArrayList<>(elements.size());
+		for (Object element : elements) {
+			if (boxed.isInstance(element)) {
+				values.add(element);
+			}
+		}
+
+		return Expression.in(argument, values);
+	}
+}
@@ -0,0 +1,742 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import com.github.collinalpert.expressions.function.math.BinaryOperator;
+import com.github.collinalpert.expressions.function.math.UnaryOperator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+
+/**
+ * Binds a {@link LambdaExpression} into a single {@link MethodHandle} built from {@link MethodHandles} combinators,
+ * without defining classes.
+ * <p>
+ * Every node becomes a handle taking the parameters of the enclosing lambda, so the handle of the body has the
+ * parameter types of the lambda. Operands are attached with {@link MethodHandles#collectArguments} and deduplicated
+ * with {@link MethodHandles#permuteArguments}, conditionals and logical operators use
+ * {@link MethodHandles#guardWithTest}. Long chains of {@code &&} or {@code ||} evaluate their operands in a loop
+ * instead, since every nested guard deepens the stack.
+ * </p>
+ */
+final class MethodHandleCompiler implements ExpressionVisitor<MethodHandle> {
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+	// the longest chain of && or || nested into guards, longer chains loop over their operands
+	private static final int maxNestedOperands = 8;
+	private static final MethodHandle objectsEquals;
+	private static final MethodHandle isNull;
+	private static final MethodHandle nonNull;
+	private static final MethodHandle isInstance;
+	private static final MethodHandle delegateInvoker;
+	private static final MethodHandle binaryEval;
+	private static final MethodHandle unaryEval;
+	private static final MethodHandle functionApply;
+	private static final MethodHandle intTest;
+	private static final MethodHandle longTest;
+	private static final MethodHandle setContains;
+	private static final MethodHandle all;
+	private static final MethodHandle any;
+
+	static {
+		try {
+			objectsEquals = lookup.findStatic(Objects.class, "equals", MethodType.methodType(Boolean.TYPE, Object.class, Object.class));
+			isNull = lookup.findStatic(Objects.class, "isNull", MethodType.methodType(Boolean.TYPE, Object.class));
+			nonNull = lookup.findStatic(Objects.class, "nonNull", MethodType.methodType(Boolean.TYPE, Object.class));
+			isInstance = lookup.findVirtual(Class.class, "isInstance", MethodType.methodType(Boolean.TYPE, Object.class));
+			delegateInvoker = lookup.findStatic(ExpressionCompiler.class, "invokeDelegate",
+					MethodType.methodType(Object.class, Object.class, Object[].class));
+			binaryEval = lookup.findVirtual(BinaryOperator.class, "eval", MethodType.methodType(Number.class, Number.class, Number.class));
+			unaryEval = lookup.findVirtual(UnaryOperator.class, "eval", MethodType.methodType(Number.class, Number.class));
+			functionApply = lookup.findVirtual(Function.class, "apply", MethodType.methodType(Object.class, Object.class));
+			intTest = lookup.findVirtual(IntPredicate.class, "test", MethodType.methodType(Boolean.TYPE, Integer.TYPE));
+			longTest = lookup.findVirtual(LongPredicate.class, "test", MethodType.methodType(Boolean.TYPE, Long.TYPE));
+			setContains = lookup.findVirtual(Set.class, "contains", MethodType.methodType(Boolean.TYPE, Object.class));
+			all = lookup.findStatic(MethodHandleCompiler.class, "all", MethodType.methodType(Boolean.TYPE, MethodHandle[].class, Object[].class));
+			any = lookup.findStatic(MethodHandleCompiler.class, "any", MethodType.methodType(Boolean.TYPE, MethodHandle[].class, Object[].class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final Class<?>[] scope;
+
+	private MethodHandleCompiler(Class<?>[] scope) {
+		this.scope = scope;
+	}
+
+	/**
+	 * Binds the lambda into a {@link MethodHandle}.
+	 *
+	 * @param lambda The lambda to bind.
+	 * @return A {@link MethodHandle} whose parameters are the lambda parameters, ordered by their index.
+	 */
+	static MethodHandle bind(LambdaExpression lambda) {
+		return bind(lambda, null);
+	}
+
+	/**
+	 * Binds the lambda into a {@link MethodHandle} implementing {@code method}. Boxed lambda parameters and results are
+	 * kept unboxed when {@code method} declares them primitive.
+	 *
+	 * @param lambda The lambda to bind.
+	 * @param method The method to be implemented.
+	 * @return A {@link MethodHandle} whose parameters are the lambda parameters, ordered by their index.
+	 */
+	static MethodHandle bind(LambdaExpression lambda, Method method) {
+		List<ParameterExpression> params = lambda.getParameters();
+		int size = params.stream().mapToInt(ParameterExpression::getIndex).max().orElse(-1) + 1;
+		Class<?>[] scope = new Class<?>[size];
+		Arrays.fill(scope, Object.class);
+		for (ParameterExpression p : params) {
+			Class<?> type = p.getResultType();
+			if (method != null) {
+				Class<?> declared = method.getParameterTypes()[p.getIndex()];
+				if (declared.isPrimitive() && TypeConverter.unboxedType(type) == declared) {
+					type = declared;
+				}
+			}
+			scope[p.getIndex()] = type;
+		}
+
+		Class<?> resultType = method != null && method.getReturnType().isPrimitive() ? method.getReturnType() : lambda.getResultType();
+		return convert(new MethodHandleCompiler(scope).visit(lambda.getBody(), resultType), resultType);
+	}
+
+	/**
+	 * Binds the lambda into a {@link Function} taking the lambda arguments as an array.
+	 *
+	 * @param lambda The lambda to bind.
+	 * @return A {@link Function} which evaluates {@code lambda}.
+	 */
+	static Function<Object[], ?> compile(LambdaExpression lambda) {
+		MethodHandle handle = bind(lambda);
+		MethodHandle spread = handle.asType(handle.type().generic()).asSpreader(Object[].class, handle.type().parameterCount());
+		return (Object[] pp) -> {
+			try {
+				return (Object) spread.invokeExact(pp);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new RuntimeException(e);
+			}
+		};
+	}
+
+	/**
+	 * Implements a functional interface with a {@link MethodHandle}. When classes may be defined, an accessible
+	 * interface is implemented by an adapter which passes primitive arguments and results unboxed. Otherwise the
+	 * interface is implemented by a {@link MethodHandleProxies proxy}, which boxes them.
+	 *
+	 * @param functionalInterface The functional interface to implement.
+	 * @param method              The first of the functional methods of the interface.
+	 * @param handle              The handle taking the method parameters.
+	 * @param defineClasses       Whether an adapter class may be defined.
+	 * @param <F>                 The type of the functional interface.
+	 * @return An instance of {@code functionalInterface} invoking {@code handle}.
+	 */
+	static <F> F implement(Class<F> functionalInterface, Method method, MethodHandle handle, boolean defineClasses) {
+		try {
+			handle = handle.asType(MethodType.methodType(method.getReturnType(), method.getParameterTypes()));
+		} catch (WrongMethodTypeException e) {
+			throw new IllegalArgumentException(e);
+		}
+
+		if (defineClasses) {
+			try {
+				return ExpressionCompiler.adapt(functionalInterface, handle);
+			} catch (UnsupportedOperationException | SecurityException e) {
+				// proxies implement any public interface
+			}
+		}
+
+		return MethodHandleProxies.asInterfaceInstance(functionalInterface, handle);
+	}
+
+	/**
+	 * Adapts a {@link Function} taking the arguments as an array to a {@link MethodHandle} taking them one by one.
+	 *
+	 * @param f     The function.
+	 * @param count The number of arguments.
+	 * @return A {@link MethodHandle} collecting its arguments into an array and applying {@code f}.
+	 */
+	static MethodHandle spread(Function<Object[], ?> f, int count) {
+		return functionApply.bindTo(f).asType(MethodType.methodType(Object.class, Object[].class)).asCollector(Object[].class, count);
+	}
+
+	private static boolean all(MethodHandle[] tests, Object[] args) throws Throwable {
+		for (MethodHandle test : tests) {
+			if (!(boolean) test.invokeExact(args)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean any(MethodHandle[] tests, Object[] args) throws Throwable {
+		for (MethodHandle test : tests) {
+			if ((boolean) test.invokeExact(args)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static MethodHandle findOperator(String name, Class<?> returnType, Class<?>... parameterTypes) {
+		try {
+			return lookup.findStatic(Operators.class, name, MethodType.methodType(returnType, parameterTypes));
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException(e);
+		}
+	}
+
+	private static MethodHandle convert(MethodHandle h, Class<?> to) {
+		Class<?> from = h.type().returnType();
+		if (from == to) {
+			return h;
+		}
+
+		if (from == Void.TYPE || to == Void.TYPE) {
+			throw new UnsupportedOperationException("void");
+		}
+
+		if (!from.isPrimitive() && !to.isPrimitive()) {
+			if (to.isAssignableFrom(from)) {
+				return h.asType(h.type().changeReturnType(to));
+			}
+
+			if (to.isInterface() && InvocableExpression.class.isAssignableFrom(from)) {
+				return h; // special case: lambda passed as a functional interface argument
+			}
+		}
+
+		Class<?> fromPrimitive = TypeConverter.unboxedType(from);
+		Class<?> toPrimitive = TypeConverter.unboxedType(to);
+		if (fromPrimitive != null) {
+			if (to == BigInteger.class || to == BigDecimal.class) {
+				boolean integer = to == BigInteger.class;
+				h = convert(h, integer ? Long.TYPE : Double.TYPE);
+				try {
+					return MethodHandles.filterReturnValue(h, lookup.findStatic(to, "valueOf", MethodType.methodType(to, h.type().returnType())));
+				} catch (ReflectiveOperationException e) {
+					throw new UnsupportedOperationException(e);
+				}
+			}
+
+			if (toPrimitive != null && toPrimitive != fromPrimitive && !to.isPrimitive()) {
+				h = convert(h, toPrimitive);
+			}
+
+			if (!from.isPrimitive() && to.isPrimitive()) {
+				// unlike explicitCastArguments, asType rejects a null box
+				h = h.asType(h.type().changeReturnType(fromPrimitive));
+			}
+		} else if (to.isPrimitive()) {
+			if (to == Boolean.TYPE || to == Character.TYPE) {
+				return convert(convert(h, TypeConverter.boxedType(to)), to);
+			} else {
+				Class<?> primitive = to == Byte.TYPE || to == Short.TYPE || to == Long.TYPE || to == Float.TYPE || to == Double.TYPE ? to : Integer.TYPE;
+				try {
+					MethodHandle value = lookup.findVirtual(Number.class, primitive.getName() + "Value", MethodType.methodType(primitive));
+					h = MethodHandles.filterReturnValue(convert(h, Number.class), value);
+				} catch (ReflectiveOperationException e) {
+					throw new UnsupportedOperationException(e);
+				}
+			}
+		}
+
+		return MethodHandles.explicitCastArguments(h, h.type().changeReturnType(to));
+	}
+
+	private static Class<?> promote(Class<?> type) {
+		if (type == Long.TYPE || type == Float.TYPE || type == Double.TYPE) {
+			return type;
+		}
+
+		return Integer.TYPE;
+	}
+
+	private static Class<?> promote(Class<?> first, Class<?> second) {
+		if (first == Double.TYPE || second == Double.TYPE) {
+			return Double.TYPE;
+		}
+
+		if (first == Float.TYPE || second == Float.TYPE) {
+			return Float.TYPE;
+		}
+
+		if (first == Long.TYPE || second == Long.TYPE) {
+			return Long.TYPE;
+		}
+
+		return Integer.TYPE;
+	}
+
+	private static boolean isNumeric(Class<?> type) {
+		return type != null && type.isPrimitive() && type != Boolean.TYPE && type != Void.TYPE;
+	}
+
+	private static Class<?> unboxed(Expression e) {
+		return TypeConverter.unboxedType(e.getResultType());
+	}
+
+	private static boolean isNullConstant(Expression e) {
+		return e.getExpressionType() == ExpressionType.Constant && ((ConstantExpression) e).getValue() == null;
+	}
+
+	/**
+	 * Attaches the operands to {@code op}. The resulting handle takes the scope parameters and evaluates the operands left
+	 * to right.
+	 */
+	private MethodHandle combine(MethodHandle op, List<MethodHandle> operands) {
+		MethodType type = op.type();
+		MethodHandle result = op;
+		for (int i = operands.size() - 1; i >= 0; i--) {
+			result = MethodHandles.collectArguments(result, i, convert(operands.get(i), type.parameterType(i)));
+		}
+
+		int[] reorder = new int[operands.size() * scope.length];
+		for (int i = 0; i < reorder.length; i++) {
+			reorder[i] = i % scope.length;
+		}
+
+		return MethodHandles.permuteArguments(result, MethodType.methodType(type.returnType(), scope), reorder);
+	}
+
+	private MethodHandle combine(MethodHandle op, MethodHandle... operands) {
+		return combine(op, Arrays.asList(operands));
+	}
+
+	private MethodHandle constant(Class<?> type, Object value) {
+		return MethodHandles.dropArguments(MethodHandles.constant(type, value), 0, scope);
+	}
+
+	private MethodHandle test(Expression e) {
+		return convert(visit(e, Boolean.TYPE), Boolean.TYPE);
+	}
+
+	/**
+	 * Binds {@code e} for a consumer expecting {@code type}. When {@code type} is primitive and {@code e} merely boxes a
+	 * primitive value, the value is left unboxed.
+	 */
+	private MethodHandle visit(Expression e, Class<?> type) {
+		Class<?> primitive;
+		if (!type.isPrimitive() || e.getResultType().isPrimitive() || (primitive = unboxed(e)) == null) {
+			return e.accept(this);
+		}
+
+		switch (e.getExpressionType()) {
+			case ExpressionType.Convert: {
+				Expression operand = ((UnaryExpression) e).getFirst();
+				if (operand.getResultType() == primitive || unboxed(operand) == primitive) {
+					return visit(operand, type);
+				}
+				break;
+			}
+			case ExpressionType.Constant: {
+				Object value = ((ConstantExpression) e).getValue();
+				if (value != null && TypeConverter.unboxedType(value.getClass()) == primitive) {
+					return constant(primitive, value);
+				}
+				break;
+			}
+			case ExpressionType.Parameter: {
+				int index = ((ParameterExpression) e).getIndex();
+				if (index < scope.length && scope[index] == primitive) {
+					return MethodHandles.permuteArguments(MethodHandles.identity(primitive), MethodType.methodType(primitive, scope), index);
+				}
+				break;
+			}
+			default:
+				break;
+		}
+
+		return e.accept(this);
+	}
+
+	private MethodHandle arithmetic(BinaryExpression e, String name, BinaryOperator operator) {
+		Expression first = e.getFirst();
+		Expression second = e.getSecond();
+		Class<?> firstType = unboxed(first);
+		Class<?> secondType = unboxed(second);
+		int expressionType = e.getExpressionType();
+		boolean shift = expressionType == ExpressionType.LeftShift || expressionType == ExpressionType.RightShift;
+		boolean bitwise = expressionType == ExpressionType.BitwiseAnd || expressionType == ExpressionType.BitwiseOr
+				|| expressionType == ExpressionType.ExclusiveOr;
+
+		if (firstType == Boolean.TYPE && secondType == Boolean.TYPE && bitwise) {
+			return combine(findOperator(name, Boolean.TYPE, Boolean.TYPE, Boolean.TYPE), visit(first, Boolean.TYPE), visit(second, Boolean.TYPE));
+		}
+
+		if (isNumeric(firstType) && isNumeric(secondType)) {
+			Class<?> type = shift ? promote(firstType) : promote(firstType, secondType);
+			if (type == Integer.TYPE || type == Long.TYPE || !(shift || bitwise)) {
+				MethodHandle op = findOperator(name, type, type, shift ? Integer.TYPE : type);
+				return combine(op, visit(first, type), visit(second, shift ? Integer.TYPE : type));
+			}
+		}
+
+		return combine(binaryEval.bindTo(operator), first.accept(this), second.accept(this));
+	}
+
+	private MethodHandle compare(BinaryExpression e, String name) {
+		Expression first = e.getFirst();
+		Expression second = e.getSecond();
+		Class<?> firstType = unboxed(first);
+		Class<?> secondType = unboxed(second);
+		int expressionType = e.getExpressionType();
+		boolean equality = expressionType == ExpressionType.Equal || expressionType == ExpressionType.NotEqual;
+
+		if (firstType != null && secondType != null && (first.getResultType().isPrimitive() || second.getResultType().isPrimitive() || !equality)) {
+			Class<?> type = promote(firstType, secondType);
+			return combine(findOperator(name, Boolean.TYPE, type, type), visit(first, type), visit(second, type));
+		}
+
+		if (!equality) {
+			return combine(findOperator(name, Boolean.TYPE, Comparable.class, Object.class), first.accept(this), second.accept(this));
+		}
+
+		boolean equal = expressionType == ExpressionType.Equal;
+		Expression operand = isNullConstant(second) ? first : isNullConstant(first) ? second : null;
+		if (operand != null) {
+			return combine(equal ? isNull : nonNull, operand.accept(this));
+		}
+
+		MethodHandle result = combine(objectsEquals, first.accept(this), second.accept(this));
+		return equal ? result : MethodHandles.filterReturnValue(result, findOperator("not", Boolean.TYPE, Boolean.TYPE));
+	}
+
+	@Override
+	public MethodHandle visit(BinaryExpression e) {
+		switch (e.getExpressionType()) {
+			case ExpressionType.Add:
+				return arithmetic(e, "add", BinaryOperator.Add);
+			case ExpressionType.Subtract:
+				return arithmetic(e, "subtract", BinaryOperator.Subtract);
+			case ExpressionType.Multiply:
+				return arithmetic(e, "multiply", BinaryOperator.Multiply);
+			case ExpressionType.Divide:
+				return arithmetic(e, "divide", BinaryOperator.Divide);
+			case ExpressionType.Modulo:
+				return arithmetic(e, "modulo", BinaryOperator.Modulo);
+			case ExpressionType.BitwiseAnd:
+				return arithmetic(e, "and", BinaryOperator.And);
+			case ExpressionType.BitwiseOr:
+				return arithmetic(e, "or", BinaryOperator.Or);
+			case ExpressionType.ExclusiveOr:
+				return arithmetic(e, "xor", BinaryOperator.Xor);
+			case ExpressionType.LeftShift:
+				return arithmetic(e, "shiftLeft", BinaryOperator.ShiftLeft);
+			case ExpressionType.RightShift:
+				return arithmetic(e, "shiftRight", BinaryOperator.ShiftRight);
+			case ExpressionType.Equal:
+				return compare(e, "equal");
+			case ExpressionType.NotEqual:
+				return compare(e, "notEqual");
+			case ExpressionType.GreaterThan:
+				return compare(e, "greaterThan");
+			case ExpressionType.GreaterThanOrEqual:
+				return compare(e, "greaterThanOrEqual");
+			case ExpressionType.LessThan:
+				return compare(e, "lessThan");
+			case ExpressionType.LessThanOrEqual:
+				return compare(e, "lessThanOrEqual");
+			case ExpressionType.LogicalAnd:
+				return MethodHandles.guardWithTest(test(e.getFirst()), test(e.getSecond()), constant(Boolean.TYPE, false));
+			case ExpressionType.LogicalOr:
+				return MethodHandles.guardWithTest(test(e.getFirst()), constant(Boolean.TYPE, true), test(e.getSecond()));
+			case ExpressionType.Conditional: {
+				Class<?> type = e.getResultType();
+				return MethodHandles.guardWithTest(test(e.getOperator()), convert(visit(e.getFirst(), type), type),
+						convert(visit(e.getSecond(), type), type));
+			}
+			case ExpressionType.Coalesce: {
+				MethodHandle first = e.getFirst().accept(this);
+				Class<?> type = first.type().returnType();
+				if (type.isPrimitive()) {
+					return first;
+				}
+
+				MethodHandle test = MethodHandles.dropArguments(isNull.asType(MethodType.methodType(Boolean.TYPE, type)), 1, scope);
+				MethodHandle ifNull = MethodHandles.dropArguments(convert(e.getSecond().accept(this), type), 0, type);
+				MethodHandle ifNonNull = MethodHandles.dropArguments(MethodHandles.identity(type), 1, scope);
+				return MethodHandles.foldArguments(MethodHandles.guardWithTest(test, ifNull, ifNonNull), first);
+			}
+			case ExpressionType.InstanceOf: {
+				Expression second = e.getSecond();
+				if (second.getExpressionType() == ExpressionType.Constant) {
+					return combine(isInstance.bindTo(((ConstantExpression) second).getValue()), e.getFirst().accept(this));
+				}
+				MethodHandle first = e.getFirst().accept(this);
+				return combine(MethodHandles.permuteArguments(isInstance, MethodType.methodType(Boolean.TYPE, Object.class, Class.class), 1, 0),
+						first, second.accept(this));
+			}
+			case ExpressionType.ArrayIndex: {
+				MethodHandle array = array(e.getFirst());
+				return combine(MethodHandles.arrayElementGetter(array.type().returnType()), array, visit(e.getSecond(), Integer.TYPE));
+			}
+			default:
+				throw new UnsupportedOperationException(ExpressionType.toString(e.getExpressionType()));
+		}
+	}
+
+	private MethodHandle array(Expression e) {
+		MethodHandle array = e.accept(this);
+		if (!array.type().returnType().isArray()) {
+			if (!e.getResultType().isArray()) {
+				throw new UnsupportedOperationException(e + " is not an array.");
+			}
+			array = convert(array, e.getResultType());
+		}
+
+		return array;
+	}
+
+	@Override
+	public MethodHandle visit(ConstantExpression e) {
+		Object value = e.getValue();
+		Class<?> type = e.getResultType();
+		if (value == null) {
+			return constant(type.isPrimitive() ? Object.class : type, null);
+		}
+
+		Class<?> primitive = type.isPrimitive() ? TypeConverter.unboxedType(value.getClass()) : null;
+		return convert(constant(primitive != null ? primitive : type, value), type);
+	}
+
+	@Override
+	public MethodHandle visit(InvocationExpression e) {
+		InvocableExpression target = e.getTarget();
+		List<Expression> arguments = e.getArguments();
+		switch (target.getExpressionType()) {
+			case ExpressionType.Lambda:
+				return inline((LambdaExpression) target, arguments);
+			case ExpressionType.FieldAccess:
+			case ExpressionType.MethodAccess:
+			case ExpressionType.New:
+				return member((MemberExpression) target, arguments);
+			case ExpressionType.Delegate: {
+				List<MethodHandle> operands = new ArrayList<>(arguments.size() + 1);
+				operands.add(((DelegateExpression) target).getDelegate().accept(this));
+				for (Expression argument : arguments) {
+					operands.add(argument.accept(this));
+				}
+				MethodHandle invoker = delegateInvoker.asCollector(Object[].class, arguments.size());
+				return convert(combine(invoker, operands), e.getResultType());
+			}
+			default:
+				throw new UnsupportedOperationException(ExpressionType.toString(target.getExpressionType()));
+		}
+	}
+
+	private MethodHandle inline(LambdaExpression lambda, List<Expression> arguments) {
+		Class<?>[] inner = new Class<?>[arguments.size()];
+		for (ParameterExpression p : lambda.getParameters()) {
+			if (p.getIndex() < inner.length) {
+				inner[p.getIndex()] = p.getResultType();
+			}
+		}
+
+		List<MethodHandle> operands = new ArrayList<>(inner.length);
+		for (int i = 0; i < inner.length; i++) {
+			MethodHandle argument;
+			if (inner[i] == null) {
+				argument = arguments.get(i).accept(this);
+			} else {
+				Class<?> primitive = TypeConverter.unboxedType(inner[i]);
+				argument = visit(arguments.get(i), primitive != null ? primitive : inner[i]);
+				Class<?> type = argument.type().returnType();
+				if (!type.isPrimitive() || TypeConverter.unboxedType(inner[i]) != type) {
+					argument = convert(argument, inner[i]);
+				}
+			}
+			inner[i] = argument.type().returnType();
+			operands.add(argument);
+		}
+
+		MethodHandle body = lambda.getBody().accept(new MethodHandleCompiler(inner));
+		return combine(body, operands);
+	}
+
+	private MethodHandle member(MemberExpression target, List<Expression> arguments) {
+		Member m = target.getMember();
+		MethodHandle handle = MemberHandles.get(m);
+		boolean hasInstance = !Modifier.isStatic(m.getModifiers()) && !(m instanceof Constructor<?>);
+
+		List<MethodHandle> operands = new ArrayList<>(handle.type().parameterCount());
+		if (hasInstance) {
+			operands.add(target.getInstance().accept(this));
+		}
+		for (int i = 0; operands.size() < handle.type().parameterCount(); i++) {
+			operands.add(visit(arguments.get(i), handle.type().parameterType(operands.size())));
+		}
+
+		return combine(handle, operands);
+	}
+
+	@Override
+	public MethodHandle visit(LambdaExpression e) {
+		throw new UnsupportedOperationException(e.toString());
+	}
+
+	@Override
+	public MethodHandle visit(DelegateExpression e) {
+		throw new UnsupportedOperationException(e.toString());
+	}
+
+	@Override
+	public MethodHandle visit(BetweenExpression e) {
+		Class<?> type = promote(e.getOperand().getResultType());
+		MethodHandle above = findOperator(e.isLowerInclusive() ? "greaterThanOrEqual" : "greaterThan", Boolean.TYPE, type, type);
+		MethodHandle below = findOperator(e.isUpperInclusive() ? "lessThanOrEqual" : "lessThan", Boolean.TYPE, type, type);
+		above = MethodHandles.collectArguments(above, 1, convert(visit(e.getLower(), type), type));
+		below = MethodHandles.collectArguments(below, 1, convert(visit(e.getUpper(), type), type));
+		MethodHandle outside = MethodHandles.dropArguments(constant(Boolean.TYPE, false), 0, type);
+
+		// evaluates the operand once and passes it to both tests
+		MethodHandle test = MethodHandles.guardWithTest(above, below, outside);
+		return MethodHandles.foldArguments(test, convert(visit(e.getOperand(), type), type));
+	}
+
+	@Override
+	public MethodHandle visit(InExpression e) {
+		Object set = e.getSet();
+		Class<?> type;
+		MethodHandle test;
+		if (set instanceof IntPredicate) {
+			type = Integer.TYPE;
+			test = intTest;
+		} else if (set instanceof LongPredicate) {
+			type = Long.TYPE;
+			test = longTest;
+		} else {
+			type = Object.class;
+			test = setContains;
+		}
+
+		return MethodHandles.filterReturnValue(convert(visit(e.getOperand(), type), type), test.bindTo(set));
+	}
+
+	@Override
+	public MethodHandle visit(LogicalExpression e) {
+		List<Expression> operands = e.getOperands();
+		boolean and = e.getExpressionType() == ExpressionType.Conjunction;
+		if (operands.size() > maxNestedOperands) {
+			MethodType spread = MethodType.genericMethodType(scope.length).changeReturnType(Boolean.TYPE);
+			MethodHandle[] tests = new MethodHandle[operands.size()];
+			for (int i = 0; i < tests.length; i++) {
+				tests[i] = test(operands.get(i)).asType(spread).asSpreader(Object[].class, scope.length);
+			}
+
+			MethodHandle loop = MethodHandles.insertArguments(and ? all : any, 0, (Object) tests);
+			return loop.asCollector(Object[].class, scope.length).asType(MethodType.methodType(Boolean.TYPE, scope));
+		}
+
+		MethodHandle decided = constant(Boolean.TYPE, !and);
+		MethodHandle chain = test(operands.get(operands.size() - 1));
+		for (int i = operands.size() - 2; i >= 0; i--) {
+			MethodHandle test = test(operands.get(i));
+			chain = and ? MethodHandles.guardWithTest(test, chain, decided) : MethodHandles.guardWithTest(test, decided, chain);
+		}
+
+		return chain;
+	}
+
+	@Override
+	public MethodHandle visit(MemberExpression e) {
+		if (e.getExpressionType() != ExpressionType.FieldAccess) {
+			throw new UnsupportedOperationException(e.toString());
+		}
+
+		return member(e, List.of());
+	}
+
+	@Override
+	public MethodHandle visit(ParameterExpression e) {
+		int index = e.getIndex();
+		if (index >= scope.length) {
+			throw new UnsupportedOperationException(e.toString());
+		}
+
+		Class<?> type = scope[index];
+		MethodHandle parameter = MethodHandles.permuteArguments(MethodHandles.identity(type), MethodType.methodType(type, scope), index);
+		return convert(parameter, e.getResultType());
+	}
+
+	@Override
+	public MethodHandle visit(UnaryExpression e) {
+		Expression first = e.getFirst();
+		switch (e.getExpressionType()) {
+			case ExpressionType.ArrayLength: {
+				MethodHandle array = array(first);
+				return combine(MethodHandles.arrayLength(array.type().returnType()), array);
+			}
+			case ExpressionType.Convert:
+				return convert(visit(first, e.getResultType()), e.getResultType());
+			case ExpressionType.IsNull:
+			case ExpressionType.IsNonNull: {
+				boolean nullCheck = e.getExpressionType() == ExpressionType.IsNull;
+				MethodHandle operand = first.accept(this);
+				Class<?> type = operand.type().returnType();
+				if (type.isPrimitive()) {
+					MethodHandle result = MethodHandles.dropArguments(MethodHandles.constant(Boolean.TYPE, !nullCheck), 0, type);
+					return MethodHandles.filterReturnValue(operand, result);
+				}
+				return combine(nullCheck ? isNull : nonNull, operand);
+			}
+			case ExpressionType.LogicalNot:
+				return combine(findOperator("not", Boolean.TYPE, Boolean.TYPE), first.accept(this));
+			case ExpressionType.Negate: {
+				Class<?> type = unboxed(first);
+				if (isNumeric(type)) {
+					type = promote(type);
+					return combine(findOperator("negate", type, type), visit(first, type));
+				}
+				return combine(unaryEval.bindTo(UnaryOperator.Negate), first.accept(this));
+			}
+			case ExpressionType.BitwiseNot: {
+				Class<?> type = unboxed(first);
+				if (isNumeric(type) && ((type = promote(type)) == Integer.TYPE || type == Long.TYPE)) {
+					return combine(findOperator("bitwiseNot", type, type), visit(first, type));
+				}
+				return combine(unaryEval.bindTo(UnaryOperator.Not), first.accept(this));
+			}
+			default:
+				throw new UnsupportedOperationException(ExpressionType.toString(e.getExpressionType()));
+		}
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+/**
+ * Primitive implementations of the operators, bound by the {@link java.lang.invoke.MethodHandle} based evaluation.
+ */
+final class Operators {
+
+	private Operators() {
+	}
+
+	static int add(int left, int right) {
+		return left + right;
+	}
+
+	static int subtract(int left, int right) {
+		return left - right;
+	}
+
+	static int multiply(int left, int right) {
+		return left * right;
+	}
+
+	static int divide(int left, int right) {
+		return left / right;
+	}
+
+	static int modulo(int left, int right) {
+		return left % right;
+	}
+
+	static long add(long left, long right) {
+		return left + right;
+	}
+
+	static long subtract(long left, long right) {
+		return left - right;
+	}
+
+	static long multiply(long left, long right) {
+		return left * right;
+	}
+
+	static long divide(long left, long right) {
+		return left / right;
+	}
+
+	static long modulo(long left, long right) {
+		return left % right;
+	}
+
+	static float add(float left, float right) {
+		return left + right;
+	}
+
+	static float subtract(float left, float right) {
+		return left - right;
+	}
+
+	static float multiply(float left, float right) {
+		return left * right;
+	}
+
+	static float divide(float left, float right) {
+		return left / right;
+	}
+
+	static float modulo(float left, float right) {
+		return left % right;
+	}
+
+	static double add(double left, double right) {
+		return left + right;
+	}
+
+	static double subtract(double left, double right) {
+		return left - right;
+	}
+
+	static double multiply(double left, double right) {
+		return left * right;
+	}
+
+	static double divide(double left, double right) {
+		return left / right;
+	}
+
+	static double modulo(double left, double right) {
+		return left % right;
+	}
+
+	static boolean and(boolean left, boolean right) {
+		return left & right;
+	}
+
+	static boolean or(boolean left, boolean right) {
+		return left | right;
+	}
+
+	static boolean xor(boolean left, boolean right) {
+		return left ^ right;
+	}
+
+	static int and(int left, int right) {
+		return left & right;
+	}
+
+	static int or(int left, int right) {
+		return left | right;
+	}
+
+	static int xor(int left, int right) {
+		return left ^ right;
+	}
+
+	static long and(long left, long right) {
+		return left & right;
+	}
+
+	static long or(long left, long right) {
+		return left | right;
+	}
+
+	static long xor(long left, long right) {
+		return left ^ right;
+	}
+
+	static int shiftLeft(int left, int right) {
+		return left << right;
+	}
+
+	static int shiftRight(int left, int right) {
+		return left >> right;
+	}
+
+	static long shiftLeft(long left, int right) {
+		return left << right;
+	}
+
+	static long shiftRight(long left, int right) {
+		return left >> right;
+	}
+
+	static boolean equal(int left, int right) {
+		return left == right;
+	}
+
+	static boolean notEqual(int left, int right) {
+		return left != right;
+	}
+
+	static boolean lessThan(int left, int right) {
+		return left < right;
+	}
+
+	static boolean lessThanOrEqual(int left, int right) {
+		return left <= right;
+	}
+
+	static boolean greaterThan(int left, int right) {
+		return left > right;
+	}
+
+	static boolean greaterThanOrEqual(int left, int right) {
+		return left >= right;
+	}
+
+	static boolean equal(long left, long right) {
+		return left == right;
+	}
+
+	static boolean notEqual(long left, long right) {
+		return left != right;
+	}
+
+	static boolean lessThan(long left, long right) {
+		return left < right;
+	}
+
+	static boolean lessThanOrEqual(long left, long right) {
+		return left <= right;
+	}
+
+	static boolean greaterThan(long left, long right) {
+		return left > right;
+	}
+
+	static boolean greaterThanOrEqual(long left, long right) {
+		return left >= right;
+	}
+
+	static boolean equal(float left, float right) {
+		return left == right;
+	}
+
+	static boolean notEqual(float left, float right) {
+		return left != right;
+	}
+
+	static boolean lessThan(float left, float right) {
+		return left < right;
+	}
+
+	static boolean lessThanOrEqual(float left, float right) {
+		return left <= right;
+	}
+
+	static boolean greaterThan(float left, float right) {
+		return left > right;
+	}
+
+	static boolean greaterThanOrEqual(float left, float right) {
+		return left >= right;
+	}
+
+	static boolean equal(double left, double right) {
+		return left == right;
+	}
+
+	static boolean notEqual(double left, double right) {
+		return left != right;
+	}
+
+	static boolean lessThan(double left, double right) {
+		return left < right;
+	}
+
+	static boolean lessThanOrEqual(double left, double right) {
+		return left <= right;
+	}
+
+	static boolean greaterThan(double left, double right) {
+		return left > right;
+	}
+
+	static boolean greaterThanOrEqual(double left, double right) {
+		return left >= right;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static boolean lessThan(Comparable left, Object right) {
+		return left.compareTo(right) < 0;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static boolean lessThanOrEqual(Comparable left, Object right) {
+		return left.compareTo(right) <= 0;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static boolean greaterThan(Comparable left, Object right) {
+		return left.compareTo(right) > 0;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static boolean greaterThanOrEqual(Comparable left, Object right) {
+		return left.compareTo(right) >= 0;
+	}
+
+	static int negate(int value) {
+		return -value;
+	}
+
+	static long negate(long value) {
+		return -value;
+	}
+
+	static float negate(float value) {
+		return -value;
+	}
+
+	static double negate(double value) {
+		return -value;
+	}
+
+	static int bitwiseNot(int value) {
+		return ~value;
+	}
+
+	static long bitwiseNot(long value) {
+		return ~value;
+	}
+
+	static boolean not(boolean value) {
+		return !value;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+/**
+ * Rewrites a lambda into an equivalent one that is cheaper to evaluate, before it is compiled.
+ * <p>
+ * Besides the node types produced by the parser, the passes produce {@link LogicalExpression}s,
+ * {@link InExpression}s and {@link BetweenExpression}s, which every backend evaluates.
+ * </p>
+ */
+final class Optimizer {
+
+	private Optimizer() {
+	}
+
+	/**
+	 * Optimizes a lambda.
+	 *
+	 * @param e The lambda.
+	 * @return The optimized lambda, or {@code e} if there is nothing to optimize.
+	 */
+	static LambdaExpression optimize(LambdaExpression e) {
+		e = LogicalOrderer.order(simplify(e));
+		return SubexpressionEliminator.eliminate(e);
+	}
+
+	/**
+	 * Optimizes a lambda, ordering the operands of its {@code &&} and {@code ||} chains by the given estimates.
+	 *
+	 * @param e        The lambda.
+	 * @param estimate The estimates of the operands.
+	 * @return The optimized lambda, or {@code e} if there is nothing to optimize.
+	 */
+	static LambdaExpression optimize(LambdaExpression e, LogicalOrderer.Estimate estimate) {
+		e = LogicalOrderer.order(simplify(e), estimate);
+		return SubexpressionEliminator.eliminate(e);
+	}
+
+	/**
+	 * Canonicalizes a lambda, folds its constant parts, rewrites its membership and string tests and fuses its ranges,
+	 * the passes preceding the ordering of its operands.
+	 *
+	 * @param e The lambda.
+	 * @return The simplified lambda, or {@code e} if there is nothing to simplify.
+	 */
+	static LambdaExpression simplify(LambdaExpression e) {
+		e = Canonicalizer.canonicalize(e);
+		e = ConstantFolder.fold(e);
+		e = MembershipRewriter.rewrite(e);
+		e = StringMatchRewriter.rewrite(e);
+		return RangeFuser.fuse(e);
+	}
+
+	/**
+	 * Compiles the constant patterns of an optimized lambda, the last step before it is compiled. Unlike the other
+	 * passes, it produces constants compared by identity, so trees are compared before it.
+	 *
+	 * @param e The optimized lambda.
+	 * @return The lowered lambda, or {@code e} if there is nothing to lower.
+	 */
+	static LambdaExpression lower(LambdaExpression e) {
+		return PatternHoister.hoist(e);
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles the constant regular expressions and date-time patterns of a lambda once, instead of at every evaluation.
+ * <p>
+ * Calls to {@link String#matches}, {@link String#replaceAll}, {@link String#replaceFirst}, {@link String#split} and
+ * {@link Pattern#matches} with a constant regular expression call the {@link Pattern} compiled from it instead, and
+ * {@link Pattern#compile} and {@link DateTimeFormatter#ofPattern} with constant arguments are replaced with their
+ * result. A regular expression which does not compile is left to throw at run time, as are the splits
+ * {@link String#split} performs without one.
+ * </p>
+ * <p>
+ * Since the compiled patterns are compared by identity, the pass is applied to an optimized lambda just before it is
+ * compiled, so it does not keep other passes from recognizing equal trees.
+ * </p>
+ */
+final class PatternHoister extends SimpleExpressionVisitor {
+
+	private static final Method matcher;
+	private static final Method matches;
+	private static final Method replaceAll;
+	private static final Method replaceFirst;
+	private static final Method split;
+	private static final Method splitLimited;
+
+	static {
+		try {
+			matcher = Pattern.class.getMethod("matcher", CharSequence.class);
+			matches = Matcher.class.getMethod("matches");
+			replaceAll = Matcher.class.getMethod("replaceAll", String.class);
+			replaceFirst = Matcher.class.getMethod("replaceFirst", String.class);
+			split = Pattern.class.getMethod("split", CharSequence.class);
+			splitLimited = Pattern.class.getMethod("split", CharSequence.class, Integer.TYPE);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private PatternHoister() {
+	}
+
+	/**
+	 * Compiles the constant patterns of a lambda.
+	 *
+	 * @param e The lambda.
+	 * @return The rewritten lambda, or {@code e} if it compiles no constant pattern.
+	 */
+	static LambdaExpression hoist(LambdaExpression e) {
+		return (LambdaExpression) e.accept(new PatternHoister());
+	}
+
+	@Override
+	public Expression visit(InvocationExpression e) {
+		InvocableExpression target = e.getTarget();
+		List<Expression> arguments = visitArguments(e.getArguments());
+		Expression visited = target;
+		switch (target.getExpressionType()) {
+			case ExpressionType.Lambda:
+				visited = target.accept(this);
+				break;
+			case ExpressionType.Delegate:
+				break;
+			default:
+				visited = visit((MemberExpression) target);
+				break;
+		}
+
+		if (visited != target || arguments != e.getArguments()) {
+			e = Expression.invoke((InvocableExpression) visited, arguments);
+		}
+
+		return visited instanceof MemberExpression ? hoist(e, (MemberExpression) visited, arguments) : e;
+	}
+
+	@Override
+	public Expression visit(DelegateExpression e) {
+		return e;
+	}
+
+	private static Expression hoist(InvocationExpression e, MemberExpression member, List<Expression> arguments) {
+		Member m = member.getMember();
+		if (!(m instanceof Method) || arguments.isEmpty()) {
+			return e;
+		}
+
+		Class<?> declaring = m.getDeclaringClass();
+		boolean isStatic = Modifier.isStatic(m.getModifiers());
+		if (declaring == String.class && !isStatic) {
+			return string(e, m.getName(), member.getInstance(), arguments);
+		}
+
+		if (declaring == Pattern.class && isStatic) {
+			switch (m.getName()) {
+				case "matches":
+					Pattern pattern = compile(arguments.get(0));
+					return pattern != null ? Expression.invoke(Expression.invoke(constant(pattern), matcher, arguments.get(1)), matches) : e;
+				case "compile":
+					return constantResult(e, arguments);
+				default:
+					return e;
+			}
+		}
+
+		if (declaring == DateTimeFormatter.class && isStatic && m.getName().equals("ofPattern")) {
+			return constantResult(e, arguments);
+		}
+
+		return e;
+	}
+
+	private static Expression string(InvocationExpression e, String name, Expression instance, List<Expression> arguments) {
+		switch (name) {
+			case "matches":
+			case "replaceAll":
+			case "replaceFirst":
+			case "split":
+				break;
+			default:
+				return e;
+		}
+
+		if (name.equals("split") && isFastSplit(arguments.get(0))) {
+			return e;
+		}
+
+		Pattern pattern = compile(arguments.get(0));
+		if (pattern == null) {
+			return e;
+		}
+
+		switch (name) {
+			case "matches":
+				return Expression.invoke(Expression.invoke(constant(pattern), matcher, instance), matches);
+			case "replaceAll":
+				return Expression.invoke(Expression.invoke(constant(pattern), matcher, instance), replaceAll, arguments.get(1));
+			case "replaceFirst":
+				return Expression.invoke(Expression.invoke(constant(pattern), matcher, instance), replaceFirst, arguments.get(1));
+			default:
+				return arguments.size() == 1
+						? Expression.invoke(constant(pattern), split, instance)
+						: Expression.invoke(constant(pattern), splitLimited, instance, arguments.get(1));
+		}
+	}
+
+	private static Expression constant(Pattern pattern) {
+		return Expression.constant(pattern, Pattern.class);
+	}
+
+	/**
+	 * Compiles a constant regular expression.
+	 *
+	 * @return The compiled {@link Pattern}, or {@code null} if {@code regex} is not a constant or does not compile.
+	 */
+	private static Pattern compile(Expression regex) {
+		if (regex.getExpressionType() != ExpressionType.Constant || !(((ConstantExpression) regex).getValue() instanceof String)) {
+			return null;
+		}
+
+		try {
+			return Pattern.compile((String) ((ConstantExpression) regex).getValue());
+		} catch (RuntimeException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Determines whether {@link String#split} splits around a constant without compiling it, which is the case for a
+	 * single character which is not a metacharacter, or a backslash followed by a character which is neither a letter nor
+	 * a digit.
+	 */
+	private static boolean isFastSplit(Expression regex) {
+		if (regex.getExpressionType() != ExpressionType.Constant || !(((ConstantExpression) regex).getValue() instanceof String)) {
+			return false;
+		}
+
+		String s = (String) ((ConstantExpression) regex).getValue();
+		if (s.length() == 1) {
+			return ".$|()[{^?*+\\".indexOf(s.charAt(0)) < 0;
+		}
+
+		return s.length() == 2 && s.charAt(0) == '\\' && !Character.isLetterOrDigit(s.charAt(1));
+	}
+
+	private static Expression constantResult(InvocationExpression e, List<Expression> arguments) {
+		for (Expression argument : arguments) {
+			if (argument.getExpressionType() != ExpressionType.Constant) {
+				return e;
+			}
+		}
+
+		Object value;
+		try {
+			value = Interpreter.evaluate(e, null);
+		} catch (RuntimeException ex) {
+			return e;
+		}
+
+		return Expression.constant(value, e.getResultType());
+	}
+}
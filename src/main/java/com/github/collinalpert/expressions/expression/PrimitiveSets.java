@@ -0,0 +1,173 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.util.Collection;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+
+/**
+ * Immutable open-addressing hash sets of {@code int} and {@code long} values, testing membership without boxing.
+ * <p>
+ * The keys are stored in an array of twice the number of values, rounded up to a power of two, and probed linearly from
+ * their mixed hash. Zero marks an empty slot, so whether zero is a member is kept apart.
+ * </p>
+ */
+final class PrimitiveSets {
+
+	private PrimitiveSets() {
+	}
+
+	/**
+	 * Creates a set of {@code int} values.
+	 *
+	 * @param values The values, as {@link Number}s or {@link Character}s.
+	 * @return The set.
+	 */
+	static IntPredicate ints(Collection<?> values) {
+		int[] keys = new int[capacity(values.size())];
+		boolean containsZero = false;
+		for (Object value : values) {
+			int key = toInt(value);
+			if (key == 0) {
+				containsZero = true;
+				continue;
+			}
+
+			int i = mix(key) & (keys.length - 1);
+			while (keys[i] != 0 && keys[i] != key) {
+				i = (i + 1) & (keys.length - 1);
+			}
+
+			keys[i] = key;
+		}
+
+		return new IntSet(keys, containsZero);
+	}
+
+	/**
+	 * Creates a set of {@code long} values.
+	 *
+	 * @param values The values, as {@link Number}s.
+	 * @return The set.
+	 */
+	static LongPredicate longs(Collection<?> values) {
+		long[] keys = new long[capacity(values.size())];
+		boolean containsZero = false;
+		for (Object value : values) {
+			long key = ((Number) value).longValue();
+			if (key == 0) {
+				containsZero = true;
+				continue;
+			}
+
+			int i = mix(key) & (keys.length - 1);
+			while (keys[i] != 0 && keys[i] != key) {
+				i = (i + 1) & (keys.length - 1);
+			}
+
+			keys[i] = key;
+		}
+
+		return new LongSet(keys, containsZero);
+	}
+
+	/**
+	 * Converts a boxed integral value of at most 32 bits to an {@code int}.
+	 *
+	 * @param value The {@link Number} or {@link Character}.
+	 * @return The value as an {@code int}.
+	 */
+	static int toInt(Object value) {
+		return value instanceof Character ? (Character) value : ((Number) value).intValue();
+	}
+
+	private static int capacity(int size) {
+		return Math.max(Integer.highestOneBit(Math.max(size, 1)) << 2, 4);
+	}
+
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static final class IntSet implements IntPredicate {
+		private final int[] keys;
+		private final int mask;
+		private final boolean containsZero;
+
+		IntSet(int[] keys, boolean containsZero) {
+			this.keys = keys;
+			this.mask = keys.length - 1;
+			this.containsZero = containsZero;
+		}
+
+		@Override
+		public boolean test(int value) {
+			if (value == 0) {
+				return containsZero;
+			}
+
+			for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+				int key = keys[i];
+				if (key == value) {
+					return true;
+				}
+
+				if (key == 0) {
+					return false;
+				}
+			}
+		}
+	}
+
+	private static final class LongSet implements LongPredicate {
+		private final long[] keys;
+		private final int mask;
+		private final boolean containsZero;
+
+		LongSet(long[] keys, boolean containsZero) {
+			this.keys = keys;
+			this.mask = keys.length - 1;
+			this.containsZero = containsZero;
+		}
+
+		@Override
+		public boolean test(long value) {
+			if (value == 0) {
+				return containsZero;
+			}
+
+			for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+				long key = keys[i];
+				if (key == value) {
+					return true;
+				}
+
+				if (key == 0) {
+					return false;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Month;
+import java.time.Period;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tells which members the optimizer may evaluate fewer times, more times or ahead of time.
+ * <p>
+ * A member is pure if it has no side effects and its result depends only on its instance and arguments. Pure members
+ * are the final fields, the methods and constructors of immutable value types taking and returning values, except for
+ * the few reading global state, the static {@code of} factories of {@link Set} and {@link List}, whose results are
+ * immutable, the members annotated with {@link Pure}, and the getters of final fields. A member is
+ * read-only if it has no side effects, but its result may change as the state it reads changes, like the fields which
+ * are not final and their getters.
+ * </p>
+ * <p>
+ * A getter is a method which cannot be overridden and whose body only returns a field of its instance, as found by
+ * reading its class file. An overridable method is only a getter when it is accessed on an instance of a final class,
+ * whose implementation is then analyzed instead, so the getters of other classes are better declared final. The
+ * analysis of every member is cached with its declaring class, or with the final class of its instance.
+ * </p>
+ */
+final class Purity {
+
+	/**
+	 * The flag of an analysis telling the member has no side effects.
+	 */
+	static final int ReadOnly = 1;
+
+	/**
+	 * The flag of an analysis telling the member is pure.
+	 */
+	static final int Stable = 2;
+
+	/**
+	 * The flag of an analysis telling the member is a getter.
+	 */
+	static final int Getter = 4;
+
+	private static final Set<Class<?>> valueTypes = Set.of(String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class,
+			Long.class, Float.class, Double.class, BigDecimal.class, BigInteger.class, LocalDate.class, LocalTime.class, LocalDateTime.class,
+			Instant.class, Duration.class, Period.class, DayOfWeek.class, Month.class);
+
+	private static final Set<Class<?>> utilityTypes = Set.of(Math.class, StrictMath.class);
+
+	private static final Set<Class<?>> collectionTypes = Set.of(Set.class, List.class);
+
+	private static final Set<String> impureNames = Set.of("random", "now", "getInteger", "getLong", "getBoolean", "wait", "notify",
+			"notifyAll");
+
+	private static final ClassValue<Map<Member, Integer>> analyses = new ClassValue<>() {
+		@Override
+		protected Map<Member, Integer> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private Purity() {
+	}
+
+	/**
+	 * Determines whether a member is pure.
+	 *
+	 * @param m The member.
+	 * @return {@code true} if accessing {@code m} has no side effects and yields the same result for the same instance
+	 * and arguments.
+	 */
+	static boolean isPure(Member m) {
+		return (analyze(m) & Stable) != 0;
+	}
+
+	/**
+	 * Determines whether a member is read-only.
+	 *
+	 * @param m The member.
+	 * @return {@code true} if accessing {@code m} has no side effects.
+	 */
+	static boolean isReadOnly(Member m) {
+		return (analyze(m) & ReadOnly) != 0;
+	}
+
+	/**
+	 * Determines whether a member is a getter, so invoking it only throws if its instance is {@code null}.
+	 *
+	 * @param m The member.
+	 * @return {@code true} if {@code m} is a method returning a field of its instance.
+	 */
+	static boolean isGetter(Member m) {
+		return (analyze(m) & Getter) != 0;
+	}
+
+	/**
+	 * Analyzes a member.
+	 *
+	 * @param m The member.
+	 * @return The combination of the {@link #ReadOnly}, {@link #Stable} and {@link #Getter} flags applying to
+	 * {@code m}.
+	 */
+	static int analyze(Member m) {
+		return analyses.get(m.getDeclaringClass()).computeIfAbsent(m, Purity::analyzeMember);
+	}
+
+	/**
+	 * Analyzes a member accessed on an instance of a type.
+	 *
+	 * @param m        The member.
+	 * @param receiver The type of the instance, or {@code null} if {@code m} is static.
+	 * @return The combination of the {@link #ReadOnly}, {@link #Stable} and {@link #Getter} flags applying to
+	 * {@code m} on instances of {@code receiver}.
+	 */
+	static int analyze(Member m, Class<?> receiver) {
+		int purity = analyze(m);
+		if (purity != 0 || receiver == null || !Modifier.isFinal(receiver.getModifiers()) || !InlineCache.isPolymorphic(m)
+				|| !m.getDeclaringClass().isAssignableFrom(receiver)) {
+			return purity;
+		}
+
+		// a final class has no overrides, so the members it inherits are keyed apart from the ones it declares
+		return analyses.get(receiver).computeIfAbsent(m, key -> analyzeImplementation((Method) key, receiver));
+	}
+
+	private static int analyzeMember(Member m) {
+		if (m instanceof Field) {
+			return Modifier.isFinal(m.getModifiers()) ? ReadOnly | Stable : ReadOnly;
+		}
+
+		if (isWhitelisted(m) || ((AnnotatedElement) m).isAnnotationPresent(Pure.class)) {
+			return ReadOnly | Stable;
+		}
+
+		if (!(m instanceof Method) || InlineCache.isPolymorphic(m)) {
+			return 0;
+		}
+
+		return analyzeGetter((Method) m);
+	}
+
+	private static int analyzeImplementation(Method m, Class<?> receiver) {
+		Method implementation = m;
+		for (Class<?> type = receiver; type != null && type != m.getDeclaringClass(); type = type.getSuperclass()) {
+			try {
+				implementation = type.getDeclaredMethod(m.getName(), m.getParameterTypes());
+				break;
+			} catch (NoSuchMethodException e) {
+				// inherited
+			}
+		}
+
+		if (implementation.isAnnotationPresent(Pure.class)) {
+			return ReadOnly | Stable;
+		}
+
+		return analyzeGetter(implementation);
+	}
+
+	private static int analyzeGetter(Method m) {
+		Field field = getField(m);
+		if (field == null) {
+			return 0;
+		}
+
+		return Modifier.isFinal(field.getModifiers()) ? ReadOnly | Stable | Getter : ReadOnly | Getter;
+	}
+
+	private static boolean isWhitelisted(Member m) {
+		Class<?> declaring = m.getDeclaringClass();
+		if (!valueTypes.contains(declaring) && !utilityTypes.contains(declaring)) {
+			return m instanceof Method && (declaring == Enum.class && Modifier.isFinal(m.getModifiers())
+					|| collectionTypes.contains(declaring) && Modifier.isStatic(m.getModifiers()) && m.getName().equals("of"));
+		}
+
+		if (impureNames.contains(m.getName())) {
+			return false;
+		}
+
+		Class<?>[] parameterTypes;
+		if (m instanceof Method) {
+			// results such as arrays or streams are not values
+			Class<?> returnType = ((Method) m).getReturnType();
+			if (returnType == Void.TYPE || !returnType.isPrimitive() && !valueTypes.contains(returnType)) {
+				return false;
+			}
+
+			parameterTypes = ((Method) m).getParameterTypes();
+		} else {
+			parameterTypes = ((Constructor<?>) m).getParameterTypes();
+		}
+
+		boolean isEquals = m.getName().equals("equals");
+		for (Class<?> type : parameterTypes) {
+			if (!type.isPrimitive() && !valueTypes.contains(type) && type != CharSequence.class && !(isEquals && type == Object.class)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets the field returned by a getter.
+	 *
+	 * @param m The method.
+	 * @return The field, or {@code null} if {@code m} is not a getter.
+	 */
+	private static Field getField(Method m) {
+		Class<?> declaring = m.getDeclaringClass();
+		ClassLoader classLoader = declaring.getClassLoader();
+		if (m.getParameterCount() != 0 || Modifier.isStatic(m.getModifiers()) || m.getReturnType() == Void.TYPE
+				|| classLoader == null) {
+			return null;
+		}
+
+		GetterVisitor visitor = new GetterVisitor(m.getName(), Type.getMethodDescriptor(m), Type.getInternalName(declaring));
+		try {
+			ExpressionClassCracker.getInstance().readClass(classLoader, declaring.getName(), visitor);
+		} catch (IOException e) {
+			return null;
+		}
+
+		if (visitor.field == null) {
+			return null;
+		}
+
+		try {
+			return declaring.getDeclaredField(visitor.field);
+		} catch (NoSuchFieldException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Determines whether a value is immutable, so the result of a pure member applied to it may be computed ahead of
+	 * time.
+	 *
+	 * @param value The value.
+	 * @return {@code true} if {@code value} is {@code null} or an instance of an immutable value type.
+	 */
+	static boolean isImmutable(Object value) {
+		return value == null || valueTypes.contains(value.getClass()) || value instanceof Enum<?>;
+	}
+
+	/**
+	 * Finds the field returned by a method whose body is {@code return this.field;}.
+	 */
+	private static final class GetterVisitor extends ClassVisitor {
+		private final String name;
+		private final String descriptor;
+		private final String owner;
+		String field;
+
+		GetterVisitor(String name, String descriptor, String owner) {
+			super(Opcodes.ASM9);
+			this.name = name;
+			this.descriptor = descriptor;
+			this.owner = owner;
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+			if (!this.name.equals(name) || !this.descriptor.equals(descriptor)) {
+				return null;
+			}
+
+			return new MethodVisitor(Opcodes.ASM9) {
+				private int instructions;
+				private String read;
+
+				@Override
+				public void visitVarInsn(int opcode, int var) {
+					expect(instructions == 0 && opcode == Opcodes.ALOAD && var == 0);
+				}
+
+				@Override
+				public void visitFieldInsn(int opcode, String fieldOwner, String fieldName, String fieldDescriptor) {
+					expect(instructions == 1 && opcode == Opcodes.GETFIELD && owner.equals(fieldOwner));
+					read = fieldName;
+				}
+
+				@Override
+				public void visitInsn(int opcode) {
+					expect(instructions == 2 && opcode >= Opcodes.IRETURN && opcode <= Opcodes.ARETURN);
+				}
+
+				@Override
+				public void visitIntInsn(int opcode, int operand) {
+					expect(false);
+				}
+
+				@Override
+				public void visitTypeInsn(int opcode, String type) {
+					expect(false);
+				}
+
+				@Override
+				public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+					expect(false);
+				}
+
+				@Override
+				public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+					expect(false);
+				}
+
+				@Override
+				public void visitJumpInsn(int opcode, Label label) {
+					expect(false);
+				}
+
+				@Override
+				public void visitLdcInsn(Object value) {
+					expect(false);
+				}
+
+				@Override
+				public void visitIincInsn(int var, int increment) {
+					expect(false);
+				}
+
+				@Override
+				public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+					expect(false);
+				}
+
+				@Override
+				public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+					expect(false);
+				}
+
+				@Override
+				public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+					expect(false);
+				}
+
+				@Override
+				public void visitEnd() {
+					if (instructions == 3) {
+						field = read;
+					}
+				}
+
+				private void expect(boolean matches) {
+					instructions = matches && instructions >= 0 ? instructions + 1 : -1;
+				}
+			};
+		}
+	}
+}
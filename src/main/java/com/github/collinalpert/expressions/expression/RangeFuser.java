@@ -0,0 +1,223 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fuses the comparisons of an operand to a lower and to an upper bound into a {@link BetweenExpression}.
+ * <p>
+ * Two adjacent {@code &&} operands comparing the same pure operand of a primitive numeric type to pure bounds, such as
+ * {@code o.getAge() >= 18 && o.getAge() < 65}, become {@code 18 <= o.getAge() < 65}, which evaluates the operand once.
+ * A range evaluates its lower bound first, so when the upper bound comes first, both bounds must be constants.
+ * </p>
+ */
+final class RangeFuser extends SimpleExpressionVisitor {
+
+	private RangeFuser() {
+	}
+
+	/**
+	 * Fuses the ranges of a lambda.
+	 *
+	 * @param e The lambda.
+	 * @return The fused lambda, or {@code e} if there is nothing to fuse.
+	 */
+	static LambdaExpression fuse(LambdaExpression e) {
+		return (LambdaExpression) e.accept(new RangeFuser());
+	}
+
+	@Override
+	public Expression visit(BinaryExpression e) {
+		if (e.getExpressionType() != ExpressionType.LogicalAnd) {
+			return super.visit(e);
+		}
+
+		List<Expression> operands = new ArrayList<>();
+		LogicalOrderer.flatten(e, ExpressionType.LogicalAnd, operands);
+		return fuse(e, operands);
+	}
+
+	@Override
+	public Expression visit(LogicalExpression e) {
+		if (e.getExpressionType() != ExpressionType.Conjunction) {
+			return super.visit(e);
+		}
+
+		return fuse(e, e.getOperands());
+	}
+
+	@Override
+	public Expression visit(InvocationExpression e) {
+		InvocableExpression target = e.getTarget();
+		List<Expression> arguments = visitArguments(e.getArguments());
+		Expression visited = target;
+		switch (target.getExpressionType()) {
+			case ExpressionType.Lambda:
+				visited = target.accept(this);
+				break;
+			case ExpressionType.Delegate:
+				break;
+			default:
+				visited = visit((MemberExpression) target);
+				break;
+		}
+
+		if (visited != target || arguments != e.getArguments()) {
+			return Expression.invoke((InvocableExpression) visited, arguments);
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(DelegateExpression e) {
+		return e;
+	}
+
+	private Expression fuse(Expression e, List<Expression> operands) {
+		List<Expression> visited = visitExpressionList(operands);
+		List<Expression> fused = new ArrayList<>(visited.size());
+		for (int i = 0; i < visited.size(); i++) {
+			Expression range = i + 1 < visited.size() ? range(visited.get(i), visited.get(i + 1)) : null;
+			if (range != null) {
+				fused.add(range);
+				i++;
+			} else {
+				fused.add(visited.get(i));
+			}
+		}
+
+		if (fused.size() == operands.size() && visited == operands) {
+			return e;
+		}
+
+		return Canonicalizer.chain(ExpressionType.LogicalAnd, fused);
+	}
+
+	/**
+	 * Fuses two comparisons into a range.
+	 *
+	 * @return The {@link BetweenExpression}, or {@code null} if the comparisons do not bound the same operand.
+	 */
+	private static Expression range(Expression first, Expression second) {
+		if (!isRelational(first) || !isRelational(second)) {
+			return null;
+		}
+
+		BinaryExpression comparison = (BinaryExpression) first;
+		for (Expression operand : new Expression[]{comparison.getFirst(), comparison.getSecond()}) {
+			if (operand.getExpressionType() == ExpressionType.Constant || !isNumeric(operand.getResultType()) || !LogicalOrderer.isPure(operand)) {
+				continue;
+			}
+
+			Bound a = bound((BinaryExpression) first, operand);
+			Bound b = bound((BinaryExpression) second, operand);
+			if (a == null || b == null || a.lower == b.lower) {
+				continue;
+			}
+
+			if (!a.lower && (a.value.getExpressionType() != ExpressionType.Constant || b.value.getExpressionType() != ExpressionType.Constant)) {
+				continue;
+			}
+
+			Bound lower = a.lower ? a : b;
+			Bound upper = a.lower ? b : a;
+			return Expression.between(operand, lower.value, lower.inclusive, upper.value, upper.inclusive);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the bound a comparison sets on an operand.
+	 *
+	 * @return The bound, or {@code null} if the comparison does not compare {@code operand} to a pure value of its type.
+	 */
+	private static Bound bound(BinaryExpression comparison, Expression operand) {
+		Expression first = comparison.getFirst();
+		Expression second = comparison.getSecond();
+		if (first.getResultType() != operand.getResultType() || second.getResultType() != operand.getResultType()) {
+			return null;
+		}
+
+		int type = comparison.getExpressionType();
+		Expression value;
+		if (first.equals(operand)) {
+			value = second;
+		} else if (second.equals(operand)) {
+			value = first;
+			// the operand is on the right
+			type = mirror(type);
+		} else {
+			return null;
+		}
+
+		if (!LogicalOrderer.isPure(value)) {
+			return null;
+		}
+
+		boolean lower = type == ExpressionType.GreaterThan || type == ExpressionType.GreaterThanOrEqual;
+		boolean inclusive = type == ExpressionType.GreaterThanOrEqual || type == ExpressionType.LessThanOrEqual;
+		return new Bound(value, lower, inclusive);
+	}
+
+	private static int mirror(int type) {
+		switch (type) {
+			case ExpressionType.GreaterThan:
+				return ExpressionType.LessThan;
+			case ExpressionType.GreaterThanOrEqual:
+				return ExpressionType.LessThanOrEqual;
+			case ExpressionType.LessThan:
+				return ExpressionType.GreaterThan;
+			case ExpressionType.LessThanOrEqual:
+				return ExpressionType.GreaterThanOrEqual;
+			default:
+				throw new IllegalArgumentException(ExpressionType.toString(type));
+		}
+	}
+
+	private static boolean isRelational(Expression e) {
+		switch (e.getExpressionType()) {
+			case ExpressionType.GreaterThan:
+			case ExpressionType.GreaterThanOrEqual:
+			case ExpressionType.LessThan:
+			case ExpressionType.LessThanOrEqual:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static boolean isNumeric(Class<?> type) {
+		return type.isPrimitive() && type != Boolean.TYPE && type != Void.TYPE;
+	}
+
+	private static final class Bound {
+		final Expression value;
+		final boolean lower;
+		final boolean inclusive;
+
+		Bound(Expression value, boolean lower, boolean inclusive) {
+			this.value = value;
+			this.lower = lower;
+			this.inclusive = inclusive;
+		}
+	}
+}
@@ -135,7 +135,7 @@ public abstract class SimpleExpressionVisitor implements ExpressionVisitor<Expre
 	@Override
 	public Expression visit(DelegateExpression e) {
 		Expression delegate = e.getDelegate().accept(this);
-		Object result = delegate.accept(Interpreter.Instance).apply(argumentsStack.peek().toArray());
+		Object result = Interpreter.evaluateDelegate(delegate, argumentsStack.peek().toArray());
 		if (result instanceof ConstantExpression) {
 			Object value = ((ConstantExpression) result).getValue();
 			if (value instanceof Expression) {
@@ -151,6 +151,38 @@ public abstract class SimpleExpressionVisitor implements ExpressionVisitor<Expre
 		return e;
 	}
 
+	@Override
+	public Expression visit(LogicalExpression e) {
+		List<Expression> operands = visitExpressionList(e.getOperands());
+		if (operands != e.getOperands()) {
+			return e.getExpressionType() == ExpressionType.Conjunction ? Expression.conjunction(operands) : Expression.disjunction(operands);
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(BetweenExpression e) {
+		Expression operand = e.getOperand().accept(this);
+		Expression lower = e.getLower().accept(this);
+		Expression upper = e.getUpper().accept(this);
+		if (operand != e.getOperand() || lower != e.getLower() || upper != e.getUpper()) {
+			return Expression.between(operand, lower, e.isLowerInclusive(), upper, e.isUpperInclusive());
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(InExpression e) {
+		Expression operand = e.getOperand().accept(this);
+		if (operand != e.getOperand()) {
+			return Expression.in(operand, e.getValues());
+		}
+
+		return e;
+	}
+
 	@Override
 	public Expression visit(MemberExpression e) {
 		Expression instance = e.getInstance();
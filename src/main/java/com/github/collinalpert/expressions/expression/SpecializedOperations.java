@@ -0,0 +1,589 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Binds operations to implementations specialized for the operand types known on the tree, so the interpreter does
+ * not rediscover them on every evaluation.
+ */
+final class SpecializedOperations {
+
+	private SpecializedOperations() {
+	}
+
+	/**
+	 * Specializes a binary expression.
+	 *
+	 * @param e      The binary expression.
+	 * @param first  The closure evaluating the first operand.
+	 * @param second The closure evaluating the second operand.
+	 * @return The specialized closure, or {@code null} if the operand types do not allow specialization.
+	 */
+	static Function<Object[], ?> specialize(BinaryExpression e, Function<Object[], ?> first, Function<Object[], ?> second) {
+		int expressionType = e.getExpressionType();
+		Class<?> firstType = TypeConverter.unboxedType(e.getFirst().getResultType());
+		Class<?> secondType = TypeConverter.unboxedType(e.getSecond().getResultType());
+
+		switch (expressionType) {
+			case ExpressionType.Equal:
+			case ExpressionType.NotEqual:
+				if (firstType == null || secondType == null
+						|| !(e.getFirst().getResultType().isPrimitive() || e.getSecond().getResultType().isPrimitive())) {
+					return null;
+				}
+
+				if (firstType == Boolean.TYPE || secondType == Boolean.TYPE) {
+					return firstType == secondType ? compare(expressionType, Boolean.TYPE, first, second) : null;
+				}
+
+				return compare(expressionType, promote(firstType, secondType), first, second);
+			case ExpressionType.GreaterThan:
+			case ExpressionType.GreaterThanOrEqual:
+			case ExpressionType.LessThan:
+			case ExpressionType.LessThanOrEqual:
+				if (isNumeric(firstType) && isNumeric(secondType)) {
+					return compare(expressionType, promote(firstType, secondType), first, second);
+				}
+
+				Class<?> type = e.getFirst().getResultType();
+				if (Comparable.class.isAssignableFrom(type) && !Number.class.isAssignableFrom(type) && type == e.getSecond().getResultType()) {
+					return compareTo(expressionType, first, second);
+				}
+
+				return null;
+			case ExpressionType.Add:
+			case ExpressionType.Subtract:
+			case ExpressionType.Multiply:
+			case ExpressionType.Divide:
+			case ExpressionType.Modulo:
+			case ExpressionType.BitwiseAnd:
+			case ExpressionType.BitwiseOr:
+			case ExpressionType.ExclusiveOr:
+			case ExpressionType.LeftShift:
+			case ExpressionType.RightShift:
+				boolean shift = expressionType == ExpressionType.LeftShift || expressionType == ExpressionType.RightShift;
+				if (firstType == Boolean.TYPE && secondType == Boolean.TYPE) {
+					return logical(expressionType, first, second);
+				}
+
+				if (isNumeric(firstType) && isNumeric(secondType)) {
+					return arithmetic(expressionType, shift ? promote(firstType) : promote(firstType, secondType), first, second);
+				}
+
+				return null;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Specializes an array element read.
+	 *
+	 * @param arrayType The static type of the array.
+	 * @param array     The closure evaluating the array.
+	 * @param index     The closure evaluating the index.
+	 * @return The closure reading the element.
+	 */
+	static Function<Object[], ?> arrayIndex(Class<?> arrayType, Function<Object[], ?> array, Function<Object[], ?> index) {
+		ToIntFunction<Object[]> i = asInt(index);
+		Class<?> component = arrayType.getComponentType();
+		if (component == null) {
+			return t -> Array.get(array.apply(t), i.applyAsInt(t));
+		}
+
+		if (!component.isPrimitive()) {
+			return t -> ((Object[]) array.apply(t))[i.applyAsInt(t)];
+		}
+
+		if (component == Integer.TYPE) {
+			return t -> ((int[]) array.apply(t))[i.applyAsInt(t)];
+		}
+
+		if (component == Long.TYPE) {
+			return t -> ((long[]) array.apply(t))[i.applyAsInt(t)];
+		}
+
+		if (component == Double.TYPE) {
+			return t -> ((double[]) array.apply(t))[i.applyAsInt(t)];
+		}
+
+		if (component == Float.TYPE) {
+			return t -> ((float[]) array.apply(t))[i.applyAsInt(t)];
+		}
+
+		if (component == Boolean.TYPE) {
+			return t -> ((boolean[]) array.apply(t))[i.applyAsInt(t)];
+		}
+
+		if (component == Byte.TYPE) {
+			return t -> ((byte[]) array.apply(t))[i.applyAsInt(t)];
+		}
+
+		if (component == Short.TYPE) {
+			return t -> ((short[]) array.apply(t))[i.applyAsInt(t)];
+		}
+
+		return t -> ((char[]) array.apply(t))[i.applyAsInt(t)];
+	}
+
+	/**
+	 * Specializes an array length read.
+	 *
+	 * @param arrayType The static type of the array.
+	 * @param array     The closure evaluating the array.
+	 * @return The closure reading the length.
+	 */
+	static Function<Object[], ?> arrayLength(Class<?> arrayType, Function<Object[], ?> array) {
+		Class<?> component = arrayType.getComponentType();
+		if (component == null) {
+			return t -> Array.getLength(array.apply(t));
+		}
+
+		if (!component.isPrimitive()) {
+			return t -> ((Object[]) array.apply(t)).length;
+		}
+
+		if (component == Integer.TYPE) {
+			return t -> ((int[]) array.apply(t)).length;
+		}
+
+		if (component == Long.TYPE) {
+			return t -> ((long[]) array.apply(t)).length;
+		}
+
+		if (component == Double.TYPE) {
+			return t -> ((double[]) array.apply(t)).length;
+		}
+
+		if (component == Float.TYPE) {
+			return t -> ((float[]) array.apply(t)).length;
+		}
+
+		if (component == Boolean.TYPE) {
+			return t -> ((boolean[]) array.apply(t)).length;
+		}
+
+		if (component == Byte.TYPE) {
+			return t -> ((byte[]) array.apply(t)).length;
+		}
+
+		if (component == Short.TYPE) {
+			return t -> ((short[]) array.apply(t)).length;
+		}
+
+		return t -> ((char[]) array.apply(t)).length;
+	}
+
+	/**
+	 * Resolves a conversion to a primitive or a {@link Number} type. {@code null} converts to {@code null}.
+	 *
+	 * @param from The static type of the converted value.
+	 * @param to   The type to convert to.
+	 * @return The converter, or {@code null} if values are passed through unchanged.
+	 */
+	static Function<Object, ?> converter(Class<?> from, Class<?> to) {
+		if (!to.isPrimitive() && !Number.class.isAssignableFrom(to)) {
+			return null;
+		}
+
+		Class<?> unboxedFrom = TypeConverter.unboxedType(from);
+		if (to.isPrimitive() && unboxedFrom == to) {
+			return null;
+		}
+
+		Function<Number, ?> number = numberConverter(to);
+		Function<Character, ?> character = characterConverter(to);
+		Class<?> target = to.isPrimitive() ? TypeConverter.boxedType(to) : to;
+
+		if (number != null && (isNumeric(unboxedFrom) && unboxedFrom != Character.TYPE || Number.class.isAssignableFrom(from))) {
+			return v -> v == null ? null : number.apply((Number) v);
+		}
+
+		if (character != null && unboxedFrom == Character.TYPE) {
+			return v -> v == null ? null : character.apply((Character) v);
+		}
+
+		return v -> {
+			if (number != null && v instanceof Number) {
+				return number.apply((Number) v);
+			}
+
+			if (character != null && v instanceof Character) {
+				return character.apply((Character) v);
+			}
+
+			return target.cast(v);
+		};
+	}
+
+	private static Function<Number, ?> numberConverter(Class<?> to) {
+		if (to == Integer.TYPE) {
+			return Number::intValue;
+		}
+
+		if (to == Long.TYPE) {
+			return Number::longValue;
+		}
+
+		if (to == Float.TYPE) {
+			return Number::floatValue;
+		}
+
+		if (to == Double.TYPE) {
+			return Number::doubleValue;
+		}
+
+		if (to == Byte.TYPE) {
+			return Number::byteValue;
+		}
+
+		if (to == Character.TYPE) {
+			return n -> (char) n.intValue();
+		}
+
+		if (to == Short.TYPE) {
+			return Number::shortValue;
+		}
+
+		if (to == BigInteger.class) {
+			return n -> BigInteger.valueOf(n.longValue());
+		}
+
+		if (to == BigDecimal.class) {
+			return n -> BigDecimal.valueOf(n.doubleValue());
+		}
+
+		return null;
+	}
+
+	private static Function<Character, ?> characterConverter(Class<?> to) {
+		if (to == Character.TYPE) {
+			return c -> c;
+		}
+
+		if (to == Integer.TYPE) {
+			return c -> (int) c;
+		}
+
+		if (to == Long.TYPE) {
+			return c -> (long) c;
+		}
+
+		if (to == Float.TYPE) {
+			return c -> (float) c;
+		}
+
+		if (to == Double.TYPE) {
+			return c -> (double) c;
+		}
+
+		if (to == Byte.TYPE) {
+			return c -> (byte) (char) c;
+		}
+
+		if (to == Short.TYPE) {
+			return c -> (short) (char) c;
+		}
+
+		return null;
+	}
+
+	private static boolean isNumeric(Class<?> type) {
+		return type != null && type.isPrimitive() && type != Boolean.TYPE && type != Void.TYPE;
+	}
+
+	private static Class<?> promote(Class<?> type) {
+		if (type == Long.TYPE || type == Float.TYPE || type == Double.TYPE) {
+			return type;
+		}
+
+		return Integer.TYPE;
+	}
+
+	private static Class<?> promote(Class<?> first, Class<?> second) {
+		if (first == Double.TYPE || second == Double.TYPE) {
+			return Double.TYPE;
+		}
+
+		if (first == Float.TYPE || second == Float.TYPE) {
+			return Float.TYPE;
+		}
+
+		if (first == Long.TYPE || second == Long.TYPE) {
+			return Long.TYPE;
+		}
+
+		return Integer.TYPE;
+	}
+
+	private static int toInt(Object value) {
+		return value instanceof Character ? (Character) value : ((Number) value).intValue();
+	}
+
+	private static long toLong(Object value) {
+		return value instanceof Character ? (Character) value : ((Number) value).longValue();
+	}
+
+	private static float toFloat(Object value) {
+		return value instanceof Character ? (Character) value : ((Number) value).floatValue();
+	}
+
+	private static double toDouble(Object value) {
+		return value instanceof Character ? (Character) value : ((Number) value).doubleValue();
+	}
+
+	private static ToIntFunction<Object[]> asInt(Function<Object[], ?> f) {
+		return t -> toInt(f.apply(t));
+	}
+
+	private static ToLongFunction<Object[]> asLong(Function<Object[], ?> f) {
+		return t -> toLong(f.apply(t));
+	}
+
+	private static ToDoubleFunction<Object[]> asDouble(Function<Object[], ?> f) {
+		return t -> toDouble(f.apply(t));
+	}
+
+	private static Predicate<Object[]> asBoolean(Function<Object[], ?> f) {
+		return t -> (Boolean) f.apply(t);
+	}
+
+	private static Function<Object[], ?> logical(int expressionType, Function<Object[], ?> first, Function<Object[], ?> second) {
+		Predicate<Object[]> a = asBoolean(first);
+		Predicate<Object[]> b = asBoolean(second);
+		switch (expressionType) {
+			case ExpressionType.BitwiseAnd:
+				return t -> a.test(t) & b.test(t);
+			case ExpressionType.BitwiseOr:
+				return t -> a.test(t) | b.test(t);
+			case ExpressionType.ExclusiveOr:
+				return t -> a.test(t) ^ b.test(t);
+			default:
+				return null;
+		}
+	}
+
+	private static Function<Object[], ?> arithmetic(int expressionType, Class<?> type, Function<Object[], ?> first, Function<Object[], ?> second) {
+		if (type == Integer.TYPE) {
+			ToIntFunction<Object[]> a = asInt(first);
+			ToIntFunction<Object[]> b = asInt(second);
+			switch (expressionType) {
+				case ExpressionType.Add:
+					return t -> a.applyAsInt(t) + b.applyAsInt(t);
+				case ExpressionType.Subtract:
+					return t -> a.applyAsInt(t) - b.applyAsInt(t);
+				case ExpressionType.Multiply:
+					return t -> a.applyAsInt(t) * b.applyAsInt(t);
+				case ExpressionType.Divide:
+					return t -> a.applyAsInt(t) / b.applyAsInt(t);
+				case ExpressionType.Modulo:
+					return t -> a.applyAsInt(t) % b.applyAsInt(t);
+				case ExpressionType.BitwiseAnd:
+					return t -> a.applyAsInt(t) & b.applyAsInt(t);
+				case ExpressionType.BitwiseOr:
+					return t -> a.applyAsInt(t) | b.applyAsInt(t);
+				case ExpressionType.ExclusiveOr:
+					return t -> a.applyAsInt(t) ^ b.applyAsInt(t);
+				case ExpressionType.LeftShift:
+					return t -> a.applyAsInt(t) << b.applyAsInt(t);
+				case ExpressionType.RightShift:
+					return t -> a.applyAsInt(t) >> b.applyAsInt(t);
+				default:
+					return null;
+			}
+		}
+
+		if (type == Long.TYPE) {
+			ToLongFunction<Object[]> a = asLong(first);
+			ToLongFunction<Object[]> b = asLong(second);
+			ToIntFunction<Object[]> distance = asInt(second);
+			switch (expressionType) {
+				case ExpressionType.Add:
+					return t -> a.applyAsLong(t) + b.applyAsLong(t);
+				case ExpressionType.Subtract:
+					return t -> a.applyAsLong(t) - b.applyAsLong(t);
+				case ExpressionType.Multiply:
+					return t -> a.applyAsLong(t) * b.applyAsLong(t);
+				case ExpressionType.Divide:
+					return t -> a.applyAsLong(t) / b.applyAsLong(t);
+				case ExpressionType.Modulo:
+					return t -> a.applyAsLong(t) % b.applyAsLong(t);
+				case ExpressionType.BitwiseAnd:
+					return t -> a.applyAsLong(t) & b.applyAsLong(t);
+				case ExpressionType.BitwiseOr:
+					return t -> a.applyAsLong(t) | b.applyAsLong(t);
+				case ExpressionType.ExclusiveOr:
+					return t -> a.applyAsLong(t) ^ b.applyAsLong(t);
+				case ExpressionType.LeftShift:
+					return t -> a.applyAsLong(t) << distance.applyAsInt(t);
+				case ExpressionType.RightShift:
+					return t -> a.applyAsLong(t) >> distance.applyAsInt(t);
+				default:
+					return null;
+			}
+		}
+
+		if (type == Float.TYPE) {
+			switch (expressionType) {
+				case ExpressionType.Add:
+					return t -> toFloat(first.apply(t)) + toFloat(second.apply(t));
+				case ExpressionType.Subtract:
+					return t -> toFloat(first.apply(t)) - toFloat(second.apply(t));
+				case ExpressionType.Multiply:
+					return t -> toFloat(first.apply(t)) * toFloat(second.apply(t));
+				case ExpressionType.Divide:
+					return t -> toFloat(first.apply(t)) / toFloat(second.apply(t));
+				case ExpressionType.Modulo:
+					return t -> toFloat(first.apply(t)) % toFloat(second.apply(t));
+				default:
+					return null;
+			}
+		}
+
+		ToDoubleFunction<Object[]> a = asDouble(first);
+		ToDoubleFunction<Object[]> b = asDouble(second);
+		switch (expressionType) {
+			case ExpressionType.Add:
+				return t -> a.applyAsDouble(t) + b.applyAsDouble(t);
+			case ExpressionType.Subtract:
+				return t -> a.applyAsDouble(t) - b.applyAsDouble(t);
+			case ExpressionType.Multiply:
+				return t -> a.applyAsDouble(t) * b.applyAsDouble(t);
+			case ExpressionType.Divide:
+				return t -> a.applyAsDouble(t) / b.applyAsDouble(t);
+			case ExpressionType.Modulo:
+				return t -> a.applyAsDouble(t) % b.applyAsDouble(t);
+			default:
+				return null;
+		}
+	}
+
+	private static Function<Object[], Boolean> compare(int expressionType, Class<?> type, Function<Object[], ?> first, Function<Object[], ?> second) {
+		if (type == Boolean.TYPE) {
+			Predicate<Object[]> a = asBoolean(first);
+			Predicate<Object[]> b = asBoolean(second);
+			return expressionType == ExpressionType.Equal ? t -> a.test(t) == b.test(t) : t -> a.test(t) != b.test(t);
+		}
+
+		if (type == Integer.TYPE) {
+			ToIntFunction<Object[]> a = asInt(first);
+			ToIntFunction<Object[]> b = asInt(second);
+			switch (expressionType) {
+				case ExpressionType.Equal:
+					return t -> a.applyAsInt(t) == b.applyAsInt(t);
+				case ExpressionType.NotEqual:
+					return t -> a.applyAsInt(t) != b.applyAsInt(t);
+				case ExpressionType.GreaterThan:
+					return t -> a.applyAsInt(t) > b.applyAsInt(t);
+				case ExpressionType.GreaterThanOrEqual:
+					return t -> a.applyAsInt(t) >= b.applyAsInt(t);
+				case ExpressionType.LessThan:
+					return t -> a.applyAsInt(t) < b.applyAsInt(t);
+				case ExpressionType.LessThanOrEqual:
+					return t -> a.applyAsInt(t) <= b.applyAsInt(t);
+				default:
+					return null;
+			}
+		}
+
+		if (type == Long.TYPE) {
+			ToLongFunction<Object[]> a = asLong(first);
+			ToLongFunction<Object[]> b = asLong(second);
+			switch (expressionType) {
+				case ExpressionType.Equal:
+					return t -> a.applyAsLong(t) == b.applyAsLong(t);
+				case ExpressionType.NotEqual:
+					return t -> a.applyAsLong(t) != b.applyAsLong(t);
+				case ExpressionType.GreaterThan:
+					return t -> a.applyAsLong(t) > b.applyAsLong(t);
+				case ExpressionType.GreaterThanOrEqual:
+					return t -> a.applyAsLong(t) >= b.applyAsLong(t);
+				case ExpressionType.LessThan:
+					return t -> a.applyAsLong(t) < b.applyAsLong(t);
+				case ExpressionType.LessThanOrEqual:
+					return t -> a.applyAsLong(t) <= b.applyAsLong(t);
+				default:
+					return null;
+			}
+		}
+
+		if (type == Float.TYPE) {
+			switch (expressionType) {
+				case ExpressionType.Equal:
+					return t -> toFloat(first.apply(t)) == toFloat(second.apply(t));
+				case ExpressionType.NotEqual:
+					return t -> toFloat(first.apply(t)) != toFloat(second.apply(t));
+				case ExpressionType.GreaterThan:
+					return t -> toFloat(first.apply(t)) > toFloat(second.apply(t));
+				case ExpressionType.GreaterThanOrEqual:
+					return t -> toFloat(first.apply(t)) >= toFloat(second.apply(t));
+				case ExpressionType.LessThan:
+					return t -> toFloat(first.apply(t)) < toFloat(second.apply(t));
+				case ExpressionType.LessThanOrEqual:
+					return t -> toFloat(first.apply(t)) <= toFloat(second.apply(t));
+				default:
+					return null;
+			}
+		}
+
+		ToDoubleFunction<Object[]> a = asDouble(first);
+		ToDoubleFunction<Object[]> b = asDouble(second);
+		switch (expressionType) {
+			case ExpressionType.Equal:
+				return t -> a.applyAsDouble(t) == b.applyAsDouble(t);
+			case ExpressionType.NotEqual:
+				return t -> a.applyAsDouble(t) != b.applyAsDouble(t);
+			case ExpressionType.GreaterThan:
+				return t -> a.applyAsDouble(t) > b.applyAsDouble(t);
+			case ExpressionType.GreaterThanOrEqual:
+				return t -> a.applyAsDouble(t) >= b.applyAsDouble(t);
+			case ExpressionType.LessThan:
+				return t -> a.applyAsDouble(t) < b.applyAsDouble(t);
+			case ExpressionType.LessThanOrEqual:
+				return t -> a.applyAsDouble(t) <= b.applyAsDouble(t);
+			default:
+				return null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Function<Object[], Boolean> compareTo(int expressionType, Function<Object[], ?> first, Function<Object[], ?> second) {
+		Function<Object[], Comparable<Object>> a = (Function<Object[], Comparable<Object>>) first;
+		switch (expressionType) {
+			case ExpressionType.GreaterThan:
+				return t -> a.apply(t).compareTo(second.apply(t)) > 0;
+			case ExpressionType.GreaterThanOrEqual:
+				return t -> a.apply(t).compareTo(second.apply(t)) >= 0;
+			case ExpressionType.LessThan:
+				return t -> a.apply(t).compareTo(second.apply(t)) < 0;
+			case ExpressionType.LessThanOrEqual:
+				return t -> a.apply(t).compareTo(second.apply(t)) <= 0;
+			default:
+				return null;
+		}
+	}
+}
@@ -0,0 +1,611 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import com.github.collinalpert.expressions.function.math.BinaryOperator;
+import com.github.collinalpert.expressions.function.math.UnaryOperator;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Evaluates expression trees with a tree of nodes that specialize themselves to the value types they observe.
+ * <p>
+ * An arithmetic node, for example, starts uninitialized, rewrites itself to an {@code int} fast path after seeing two
+ * {@link Integer}s, and falls back to the generic {@link BinaryOperator} path for good once it sees any other types.
+ * Every fast path checks the types it was specialized for, so a state written by a racing thread only costs a
+ * deoptimization. Frames are laid out, and members invoked, by the {@link FrameInterpreter} shared with
+ * {@link Interpreter}.
+ * </p>
+ */
+final class SpecializingInterpreter extends FrameInterpreter<SpecializingInterpreter.Node> {
+
+	private static final int Uninitialized = 0;
+	private static final int Ints = 1;
+	private static final int Longs = 2;
+	private static final int Doubles = 3;
+	private static final int Booleans = 4;
+	private static final int Generic = 5;
+
+	private SpecializingInterpreter(int parameterCount) {
+		super(parameterCount);
+	}
+
+	/**
+	 * Interprets a lambda.
+	 *
+	 * @param lambda The lambda to interpret.
+	 * @return A {@link Function} taking the lambda arguments as an array and returning the lambda result.
+	 */
+	static Function<Object[], ?> interpret(LambdaExpression lambda) {
+		int parameterCount = lambda.getParameters().size();
+		SpecializingInterpreter interpreter = new SpecializingInterpreter(parameterCount);
+		Node body = lambda.getBody().accept(interpreter);
+
+		return Interpreter.framed(body, parameterCount, interpreter.getFrameSize());
+	}
+
+	@Override
+	Node closure(Function<Object[], ?> closure) {
+		return new ClosureNode(closure);
+	}
+
+	private Node[] visitOperands(List<? extends Expression> arguments) {
+		Node[] values = new Node[arguments.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = arguments.get(i).accept(this);
+		}
+
+		return values;
+	}
+
+	@Override
+	public Node visit(BinaryExpression e) {
+		final Node first = e.getFirst().accept(this);
+		final Node second = e.getSecond().accept(this);
+		int expressionType = e.getExpressionType();
+		switch (expressionType) {
+			case ExpressionType.Add:
+				return new ArithmeticNode(BinaryOperator.Add, first, second, Operators::add, Operators::add, Operators::add);
+			case ExpressionType.Subtract:
+				return new ArithmeticNode(BinaryOperator.Subtract, first, second, Operators::subtract, Operators::subtract, Operators::subtract);
+			case ExpressionType.Multiply:
+				return new ArithmeticNode(BinaryOperator.Multiply, first, second, Operators::multiply, Operators::multiply, Operators::multiply);
+			case ExpressionType.Divide:
+				return new ArithmeticNode(BinaryOperator.Divide, first, second, Operators::divide, Operators::divide, Operators::divide);
+			case ExpressionType.Modulo:
+				return new ArithmeticNode(BinaryOperator.Modulo, first, second, Operators::modulo, Operators::modulo, Operators::modulo);
+			case ExpressionType.BitwiseAnd:
+				return new ArithmeticNode(BinaryOperator.And, first, second, Operators::and, Operators::and, null);
+			case ExpressionType.BitwiseOr:
+				return new ArithmeticNode(BinaryOperator.Or, first, second, Operators::or, Operators::or, null);
+			case ExpressionType.ExclusiveOr:
+				return new ArithmeticNode(BinaryOperator.Xor, first, second, Operators::xor, Operators::xor, null);
+			case ExpressionType.LeftShift:
+				return new ArithmeticNode(BinaryOperator.ShiftLeft, first, second, Operators::shiftLeft, (a, b) -> a << b, null);
+			case ExpressionType.RightShift:
+				return new ArithmeticNode(BinaryOperator.ShiftRight, first, second, Operators::shiftRight, (a, b) -> a >> b, null);
+			case ExpressionType.Equal:
+			case ExpressionType.NotEqual:
+				if (!e.getFirst().getResultType().isPrimitive() && !e.getSecond().getResultType().isPrimitive()) {
+					return new EqualsNode(first, second, expressionType == ExpressionType.Equal);
+				}
+
+				return new ComparisonNode(expressionType, first, second);
+			case ExpressionType.GreaterThan:
+			case ExpressionType.GreaterThanOrEqual:
+			case ExpressionType.LessThan:
+			case ExpressionType.LessThanOrEqual:
+				return new ComparisonNode(expressionType, first, second);
+			case ExpressionType.LogicalAnd:
+				return new Node() {
+					@Override
+					Object execute(Object[] frame) {
+						return (Boolean) first.execute(frame) && (Boolean) second.execute(frame);
+					}
+				};
+			case ExpressionType.LogicalOr:
+				return new Node() {
+					@Override
+					Object execute(Object[] frame) {
+						return (Boolean) first.execute(frame) || (Boolean) second.execute(frame);
+					}
+				};
+			case ExpressionType.Conditional:
+				final Node test = e.getOperator().accept(this);
+				return new Node() {
+					@Override
+					Object execute(Object[] frame) {
+						return (Boolean) test.execute(frame) ? first.execute(frame) : second.execute(frame);
+					}
+				};
+			case ExpressionType.ArrayIndex:
+				return new ClosureNode(SpecializedOperations.arrayIndex(e.getFirst().getResultType(), first, second));
+			case ExpressionType.InstanceOf:
+				final Class<?> type = (Class<?>) second.execute(null);
+				return new Node() {
+					@Override
+					Object execute(Object[] frame) {
+						return type.isInstance(first.execute(frame));
+					}
+				};
+			default:
+				throw new IllegalArgumentException(ExpressionType.toString(expressionType));
+		}
+	}
+
+	@Override
+	public Node visit(ConstantExpression e) {
+		final Object value = e.getValue();
+
+		return new Node() {
+			@Override
+			Object execute(Object[] frame) {
+				return value;
+			}
+		};
+	}
+
+	@Override
+	public Node visit(LambdaExpression e) {
+		final Function<Object[], ?> f = interpret(e);
+
+		return new ClosureNode(t -> f);
+	}
+
+	@Override
+	public Node visit(LogicalExpression e) {
+		return new LogicalNode(visitOperands(e.getOperands()), e.getExpressionType() == ExpressionType.Disjunction);
+	}
+
+	@Override
+	public Node visit(BetweenExpression e) {
+		final Node operand = e.getOperand().accept(this);
+		final Node lower = e.getLower().accept(this);
+		final Node upper = e.getUpper().accept(this);
+
+		return new Node() {
+			@Override
+			Object execute(Object[] frame) {
+				Object value = operand.execute(frame);
+				return e.isAboveLower(value, lower.execute(frame)) && e.isBelowUpper(value, upper.execute(frame));
+			}
+		};
+	}
+
+	@Override
+	public Node visit(InExpression e) {
+		final Node operand = e.getOperand().accept(this);
+
+		return new Node() {
+			@Override
+			Object execute(Object[] frame) {
+				return e.test(operand.execute(frame));
+			}
+		};
+	}
+
+	@Override
+	public Node visit(ParameterExpression e) {
+		final int slot = slot(e);
+
+		return new Node() {
+			@Override
+			Object execute(Object[] frame) {
+				return frame[slot];
+			}
+		};
+	}
+
+	@Override
+	public Node visit(UnaryExpression e) {
+		final Node first = e.getFirst().accept(this);
+		switch (e.getExpressionType()) {
+			case ExpressionType.ArrayLength:
+				return new ClosureNode(SpecializedOperations.arrayLength(e.getFirst().getResultType(), first));
+			case ExpressionType.BitwiseNot:
+				return new NumericNode(UnaryOperator.Not, first);
+			case ExpressionType.Negate:
+				return new NumericNode(UnaryOperator.Negate, first);
+			case ExpressionType.Convert:
+				final Function<Object, ?> converter = SpecializedOperations.converter(e.getFirst().getResultType(), e.getResultType());
+				if (e.getResultType().isPrimitive() && !e.getFirst().getResultType().isPrimitive()) {
+					return new Node() {
+						@Override
+						Object execute(Object[] frame) {
+							// unboxing rejects null
+							Object value = Objects.requireNonNull(first.execute(frame));
+							return converter != null ? converter.apply(value) : value;
+						}
+					};
+				}
+
+				if (converter == null) {
+					return first;
+				}
+
+				return new Node() {
+					@Override
+					Object execute(Object[] frame) {
+						return converter.apply(first.execute(frame));
+					}
+				};
+			case ExpressionType.IsNull:
+				return new Node() {
+					@Override
+					Object execute(Object[] frame) {
+						return first.execute(frame) == null;
+					}
+				};
+			case ExpressionType.IsNonNull:
+				return new Node() {
+					@Override
+					Object execute(Object[] frame) {
+						return first.execute(frame) != null;
+					}
+				};
+			case ExpressionType.LogicalNot:
+				return new Node() {
+					@Override
+					Object execute(Object[] frame) {
+						return !(Boolean) first.execute(frame);
+					}
+				};
+			default:
+				throw new IllegalArgumentException(ExpressionType.toString(e.getExpressionType()));
+		}
+	}
+
+	private static boolean isIntegral(Object value) {
+		return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+				|| value instanceof Character;
+	}
+
+	private static boolean isNumber(Object value) {
+		return value instanceof Number && !(value instanceof BigInteger || value instanceof BigDecimal) || value instanceof Character;
+	}
+
+	private static long toLong(Object value) {
+		return value instanceof Character ? (Character) value : ((Number) value).longValue();
+	}
+
+	private static double toDouble(Object value) {
+		return value instanceof Character ? (Character) value : ((Number) value).doubleValue();
+	}
+
+	/**
+	 * A node of the evaluated tree. A node is a {@link Function} of the frame, so it composes with the closures of
+	 * {@link SpecializedOperations}.
+	 */
+	abstract static class Node implements Function<Object[], Object> {
+		abstract Object execute(Object[] frame);
+
+		@Override
+		public final Object apply(Object[] frame) {
+			return execute(frame);
+		}
+	}
+
+	private static final class ClosureNode extends Node {
+		private final Function<Object[], ?> closure;
+
+		ClosureNode(Function<Object[], ?> closure) {
+			this.closure = closure;
+		}
+
+		@Override
+		Object execute(Object[] frame) {
+			return closure.apply(frame);
+		}
+	}
+
+	private static final class LogicalNode extends Node {
+		private final Node[] operands;
+		private final boolean decisive;
+
+		LogicalNode(Node[] operands, boolean decisive) {
+			this.operands = operands;
+			this.decisive = decisive;
+		}
+
+		@Override
+		Object execute(Object[] frame) {
+			for (Node operand : operands) {
+				if ((Boolean) operand.execute(frame) == decisive) {
+					return decisive;
+				}
+			}
+
+			return !decisive;
+		}
+	}
+
+	private static final class ArithmeticNode extends Node {
+		private final BinaryOperator operator;
+		private final Node left;
+		private final Node right;
+		private final IntBinaryOperator intOperator;
+		private final LongBinaryOperator longOperator;
+		private final DoubleBinaryOperator doubleOperator;
+		private int state;
+
+		ArithmeticNode(BinaryOperator operator, Node left, Node right, IntBinaryOperator intOperator, LongBinaryOperator longOperator,
+					   DoubleBinaryOperator doubleOperator) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+			this.intOperator = intOperator;
+			this.longOperator = longOperator;
+			this.doubleOperator = doubleOperator;
+		}
+
+		@Override
+		Object execute(Object[] frame) {
+			Object a = left.execute(frame);
+			Object b = right.execute(frame);
+			int s = state;
+			if (s == Uninitialized) {
+				state = s = specialize(a, b);
+			}
+
+			switch (s) {
+				case Ints:
+					if (a instanceof Integer && b instanceof Integer) {
+						return intOperator.applyAsInt((Integer) a, (Integer) b);
+					}
+					break;
+				case Longs:
+					if (a instanceof Long && (b instanceof Long || b instanceof Integer)) {
+						return longOperator.applyAsLong((Long) a, ((Number) b).longValue());
+					}
+					break;
+				case Doubles:
+					if (a instanceof Double && b instanceof Double) {
+						return doubleOperator.applyAsDouble((Double) a, (Double) b);
+					}
+					break;
+				case Booleans:
+					if (a instanceof Boolean && b instanceof Boolean) {
+						return logical((Boolean) a, (Boolean) b);
+					}
+					break;
+				default:
+					return generic(a, b);
+			}
+
+			// deoptimize
+			state = Generic;
+			return generic(a, b);
+		}
+
+		private Object generic(Object a, Object b) {
+			// the operands are unboxed, so null is rejected
+			return operator.eval((Number) Objects.requireNonNull(a), (Number) Objects.requireNonNull(b));
+		}
+
+		private int specialize(Object a, Object b) {
+			if (a instanceof Integer && b instanceof Integer) {
+				return Ints;
+			}
+
+			if (a instanceof Long && (b instanceof Long || b instanceof Integer)) {
+				return Longs;
+			}
+
+			if (a instanceof Double && b instanceof Double && doubleOperator != null) {
+				return Doubles;
+			}
+
+			if (a instanceof Boolean && b instanceof Boolean
+					&& (operator == BinaryOperator.And || operator == BinaryOperator.Or || operator == BinaryOperator.Xor)) {
+				return Booleans;
+			}
+
+			return Generic;
+		}
+
+		private boolean logical(boolean a, boolean b) {
+			switch (operator) {
+				case And:
+					return a & b;
+				case Or:
+					return a | b;
+				case Xor:
+					return a ^ b;
+				default:
+					throw new ArithmeticException(operator.name());
+			}
+		}
+	}
+
+	private static final class ComparisonNode extends Node {
+		private final int expressionType;
+		private final Node left;
+		private final Node right;
+		private int state;
+
+		ComparisonNode(int expressionType, Node left, Node right) {
+			this.expressionType = expressionType;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		Object execute(Object[] frame) {
+			Object a = left.execute(frame);
+			Object b = right.execute(frame);
+			int s = state;
+			if (s == Uninitialized) {
+				state = s = specialize(a, b);
+			}
+
+			switch (s) {
+				case Ints:
+					if (a instanceof Integer && b instanceof Integer) {
+						return test(Integer.compare((Integer) a, (Integer) b));
+					}
+					break;
+				case Longs:
+					if (a instanceof Long && b instanceof Long) {
+						return test(Long.compare((Long) a, (Long) b));
+					}
+					break;
+				case Doubles:
+					if (a instanceof Double && b instanceof Double) {
+						return test((Double) a, (Double) b);
+					}
+					break;
+				default:
+					return generic(a, b);
+			}
+
+			// deoptimize
+			state = Generic;
+			return generic(a, b);
+		}
+
+		private static int specialize(Object a, Object b) {
+			if (a instanceof Integer && b instanceof Integer) {
+				return Ints;
+			}
+
+			if (a instanceof Long && b instanceof Long) {
+				return Longs;
+			}
+
+			if (a instanceof Double && b instanceof Double) {
+				return Doubles;
+			}
+
+			return Generic;
+		}
+
+		@SuppressWarnings("unchecked")
+		private boolean generic(Object a, Object b) {
+			// one operand at least is primitive, so the other is unboxed and null is rejected
+			Objects.requireNonNull(a);
+			Objects.requireNonNull(b);
+			if (isIntegral(a) && isIntegral(b)) {
+				return test(Long.compare(toLong(a), toLong(b)));
+			}
+
+			if (isNumber(a) && isNumber(b)) {
+				return test(toDouble(a), toDouble(b));
+			}
+
+			if (expressionType == ExpressionType.Equal) {
+				return Objects.equals(a, b);
+			}
+
+			if (expressionType == ExpressionType.NotEqual) {
+				return !Objects.equals(a, b);
+			}
+
+			return test(((Comparable<Object>) a).compareTo(b));
+		}
+
+		private boolean test(int comparison) {
+			switch (expressionType) {
+				case ExpressionType.Equal:
+					return comparison == 0;
+				case ExpressionType.NotEqual:
+					return comparison != 0;
+				case ExpressionType.GreaterThan:
+					return comparison > 0;
+				case ExpressionType.GreaterThanOrEqual:
+					return comparison >= 0;
+				case ExpressionType.LessThan:
+					return comparison < 0;
+				default:
+					return comparison <= 0;
+			}
+		}
+
+		private boolean test(double a, double b) {
+			switch (expressionType) {
+				case ExpressionType.Equal:
+					return a == b;
+				case ExpressionType.NotEqual:
+					return a != b;
+				case ExpressionType.GreaterThan:
+					return a > b;
+				case ExpressionType.GreaterThanOrEqual:
+					return a >= b;
+				case ExpressionType.LessThan:
+					return a < b;
+				default:
+					return a <= b;
+			}
+		}
+	}
+
+	private static final class EqualsNode extends Node {
+		private final Node left;
+		private final Node right;
+		private final boolean equal;
+
+		EqualsNode(Node left, Node right, boolean equal) {
+			this.left = left;
+			this.right = right;
+			this.equal = equal;
+		}
+
+		@Override
+		Object execute(Object[] frame) {
+			return Objects.equals(left.execute(frame), right.execute(frame)) == equal;
+		}
+	}
+
+	private static final class NumericNode extends Node {
+		private final UnaryOperator operator;
+		private final Node operand;
+		private int state;
+
+		NumericNode(UnaryOperator operator, Node operand) {
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		@Override
+		Object execute(Object[] frame) {
+			Object value = operand.execute(frame);
+			int s = state;
+			if (s == Uninitialized) {
+				state = s = value instanceof Integer ? Ints : Generic;
+			}
+
+			if (s == Ints) {
+				if (value instanceof Integer) {
+					int i = (Integer) value;
+					return operator == UnaryOperator.Negate ? -i : ~i;
+				}
+
+				// deoptimize
+				state = Generic;
+			}
+
+			return operator.eval((Number) value);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Replaces chains of string tests against constants with a single {@link StringMatcher}.
+ * <p>
+ * A run of at least {@link #MinimumSize} adjacent {@code ||} operands calling {@code equals}, {@code startsWith},
+ * {@code endsWith} or {@code contains} with a constant string on the same pure string operand, such as
+ * {@code s.contains("ERR") || s.contains("FATAL") || s.startsWith("WARN")}, becomes a call to
+ * {@link StringMatcher#matches(String)}, which reads the operand once instead of once per pattern. Calls to
+ * {@code equals} on a constant, like {@code "ERR".equals(s)}, are matched too. The matcher only tolerates a
+ * {@code null} operand if every call of the run does.
+ * </p>
+ */
+final class StringMatchRewriter extends SimpleExpressionVisitor {
+
+	/**
+	 * The minimal number of patterns tested by a matcher.
+	 */
+	static final int MinimumSize = 3;
+
+	private static final Method matches;
+	private static final Set<String> patternMethods = Set.of("equals", "startsWith", "endsWith", "contains");
+
+	static {
+		try {
+			matches = StringMatcher.class.getMethod("matches", String.class);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private StringMatchRewriter() {
+	}
+
+	/**
+	 * Rewrites the string tests of a lambda.
+	 *
+	 * @param e The lambda.
+	 * @return The rewritten lambda, or {@code e} if there is nothing to rewrite.
+	 */
+	static LambdaExpression rewrite(LambdaExpression e) {
+		return (LambdaExpression) e.accept(new StringMatchRewriter());
+	}
+
+	@Override
+	public Expression visit(BinaryExpression e) {
+		if (e.getExpressionType() != ExpressionType.LogicalOr) {
+			return super.visit(e);
+		}
+
+		List<Expression> operands = new ArrayList<>();
+		LogicalOrderer.flatten(e, ExpressionType.LogicalOr, operands);
+		return group(e, operands);
+	}
+
+	@Override
+	public Expression visit(LogicalExpression e) {
+		if (e.getExpressionType() != ExpressionType.Disjunction) {
+			return super.visit(e);
+		}
+
+		return group(e, e.getOperands());
+	}
+
+	@Override
+	public Expression visit(InvocationExpression e) {
+		InvocableExpression target = e.getTarget();
+		List<Expression> arguments = visitArguments(e.getArguments());
+		Expression visited = target;
+		switch (target.getExpressionType()) {
+			case ExpressionType.Lambda:
+				visited = target.accept(this);
+				break;
+			case ExpressionType.Delegate:
+				break;
+			default:
+				visited = visit((MemberExpression) target);
+				break;
+		}
+
+		if (visited != target || arguments != e.getArguments()) {
+			return Expression.invoke((InvocableExpression) visited, arguments);
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(DelegateExpression e) {
+		return e;
+	}
+
+	private Expression group(Expression e, List<Expression> operands) {
+		List<Expression> visited = visitExpressionList(operands);
+		List<Expression> grouped = new ArrayList<>(visited.size());
+		for (int i = 0; i < visited.size(); ) {
+			Pattern first = pattern(visited.get(i));
+			int end = i + 1;
+			while (first != null && end < visited.size()) {
+				Pattern next = pattern(visited.get(end));
+				if (next == null || !next.operand.equals(first.operand)) {
+					break;
+				}
+
+				end++;
+			}
+
+			if (end - i >= MinimumSize) {
+				grouped.add(match(first.operand, visited.subList(i, end)));
+			} else {
+				grouped.addAll(visited.subList(i, end));
+			}
+
+			i = end;
+		}
+
+		if (grouped.size() == operands.size() && visited == operands) {
+			return e;
+		}
+
+		return Canonicalizer.chain(ExpressionType.LogicalOr, grouped);
+	}
+
+	private static Expression match(Expression operand, List<Expression> tests) {
+		Set<String> equal = new LinkedHashSet<>();
+		Set<String> prefixes = new LinkedHashSet<>();
+		Set<String> suffixes = new LinkedHashSet<>();
+		Set<String> infixes = new LinkedHashSet<>();
+		boolean nullSafe = true;
+		for (Expression test : tests) {
+			Pattern pattern = pattern(test);
+			nullSafe &= pattern.nullSafe;
+			switch (pattern.method) {
+				case "equals":
+					equal.add(pattern.value);
+					break;
+				case "startsWith":
+					prefixes.add(pattern.value);
+					break;
+				case "endsWith":
+					suffixes.add(pattern.value);
+					break;
+				default:
+					infixes.add(pattern.value);
+					break;
+			}
+		}
+
+		StringMatcher matcher = new StringMatcher(equal, prefixes, suffixes, infixes, nullSafe);
+		return Expression.invoke(Expression.constant(matcher, StringMatcher.class), matches, operand);
+	}
+
+	/**
+	 * Gets the pattern a chain operand tests its string operand against.
+	 *
+	 * @return The pattern, or {@code null} if {@code e} does not test a pure string against a constant.
+	 */
+	private static Pattern pattern(Expression e) {
+		if (e.getExpressionType() != ExpressionType.Invoke) {
+			return null;
+		}
+
+		InvocationExpression invocation = (InvocationExpression) e;
+		if (!(invocation.getTarget() instanceof MemberExpression) || invocation.getArguments().size() != 1) {
+			return null;
+		}
+
+		MemberExpression member = (MemberExpression) invocation.getTarget();
+		Member m = member.getMember();
+		Expression instance = member.getInstance();
+		if (!(m instanceof Method) || m.getDeclaringClass() != String.class || !patternMethods.contains(m.getName()) || instance == null) {
+			return null;
+		}
+
+		Expression argument = unconverted(invocation.getArguments().get(0));
+		Expression operand;
+		Object value;
+		boolean nullSafe;
+		if (instance.getExpressionType() == ExpressionType.Constant) {
+			// "ERR".equals(s) is false for a null s
+			if (!m.getName().equals("equals") || argument.getResultType() != String.class) {
+				return null;
+			}
+
+			operand = argument;
+			value = ((ConstantExpression) instance).getValue();
+			nullSafe = true;
+		} else {
+			if (argument.getExpressionType() != ExpressionType.Constant) {
+				return null;
+			}
+
+			operand = instance;
+			value = ((ConstantExpression) argument).getValue();
+			nullSafe = false;
+		}
+
+		if (!(value instanceof String) || operand.getExpressionType() == ExpressionType.Constant || !LogicalOrderer.isPure(operand)) {
+			return null;
+		}
+
+		return new Pattern(operand, m.getName(), (String) value, nullSafe);
+	}
+
+	/**
+	 * Strips the upcasts of an expression, which keep its value.
+	 */
+	private static Expression unconverted(Expression e) {
+		while (e.getExpressionType() == ExpressionType.Convert) {
+			Expression source = ((UnaryExpression) e).getFirst();
+			if (source.getResultType().isPrimitive() || !e.getResultType().isAssignableFrom(source.getResultType())) {
+				break;
+			}
+
+			e = source;
+		}
+
+		return e;
+	}
+
+	private static final class Pattern {
+		final Expression operand;
+		final String method;
+		final String value;
+		final boolean nullSafe;
+
+		Pattern(Expression operand, String method, String value, boolean nullSafe) {
+			this.operand = operand;
+			this.method = method;
+			this.value = value;
+			this.nullSafe = nullSafe;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import lombok.EqualsAndHashCode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Tests a string against several constant patterns in a single pass.
+ * <p>
+ * A string matches if it equals one of the patterns, starts with one of the prefixes, ends with one of the suffixes or
+ * contains one of the infixes. The prefixes and suffixes are kept in a trie walked from either end of the string, and
+ * the infixes in an Aho-Corasick automaton, so every character is read at most once by each of them, however many
+ * patterns there are. Instances are created by the optimizer for chains of {@code ||} operands calling
+ * {@link String#equals(Object)}, {@link String#startsWith(String)}, {@link String#endsWith(String)} and
+ * {@link String#contains(CharSequence)} on the same string.
+ * </p>
+ */
+@EqualsAndHashCode
+public final class StringMatcher {
+
+	private final Set<String> equal;
+	private final Set<String> prefixes;
+	private final Set<String> suffixes;
+	private final Set<String> infixes;
+	private final boolean nullSafe;
+	@EqualsAndHashCode.Exclude
+	private final Automaton prefixAutomaton;
+	@EqualsAndHashCode.Exclude
+	private final Automaton suffixAutomaton;
+	@EqualsAndHashCode.Exclude
+	private final Automaton infixAutomaton;
+
+	/**
+	 * Creates a matcher.
+	 *
+	 * @param equal    The strings a matching string may equal.
+	 * @param prefixes The strings a matching string may start with.
+	 * @param suffixes The strings a matching string may end with.
+	 * @param infixes  The strings a matching string may contain.
+	 * @param nullSafe Whether {@code null} does not match instead of throwing {@link NullPointerException}.
+	 */
+	StringMatcher(Collection<String> equal, Collection<String> prefixes, Collection<String> suffixes, Collection<String> infixes, boolean nullSafe) {
+		this.equal = Collections.unmodifiableSet(new LinkedHashSet<>(equal));
+		this.prefixes = Collections.unmodifiableSet(new LinkedHashSet<>(prefixes));
+		this.suffixes = Collections.unmodifiableSet(new LinkedHashSet<>(suffixes));
+		this.infixes = Collections.unmodifiableSet(new LinkedHashSet<>(infixes));
+		this.nullSafe = nullSafe;
+
+		prefixAutomaton = this.prefixes.isEmpty() ? null : new Automaton(this.prefixes, true, false);
+		suffixAutomaton = this.suffixes.isEmpty() ? null : new Automaton(this.suffixes, true, true);
+		infixAutomaton = this.infixes.isEmpty() ? null : new Automaton(this.infixes, false, false);
+	}
+
+	/**
+	 * Tests a string against the patterns.
+	 *
+	 * @param s The string.
+	 * @return {@code true} if {@code s} matches one of the patterns.
+	 * @throws NullPointerException If {@code s} is {@code null} and the matcher is not null-safe.
+	 */
+	@Pure
+	public boolean matches(String s) {
+		if (s == null) {
+			if (nullSafe) {
+				return false;
+			}
+
+			throw new NullPointerException();
+		}
+
+		return (!equal.isEmpty() && equal.contains(s))
+				|| (prefixAutomaton != null && prefixAutomaton.matches(s))
+				|| (suffixAutomaton != null && suffixAutomaton.matches(s))
+				|| (infixAutomaton != null && infixAutomaton.matches(s));
+	}
+
+	/**
+	 * Gets the strings a matching string may equal.
+	 */
+	public Set<String> getEqual() {
+		return equal;
+	}
+
+	/**
+	 * Gets the strings a matching string may start with.
+	 */
+	public Set<String> getPrefixes() {
+		return prefixes;
+	}
+
+	/**
+	 * Gets the strings a matching string may end with.
+	 */
+	public Set<String> getSuffixes() {
+		return suffixes;
+	}
+
+	/**
+	 * Gets the strings a matching string may contain.
+	 */
+	public Set<String> getInfixes() {
+		return infixes;
+	}
+
+	/**
+	 * Gets whether {@code null} does not match instead of throwing {@link NullPointerException}.
+	 */
+	public boolean isNullSafe() {
+		return nullSafe;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder("matcher[");
+		append(b, "equals", equal);
+		append(b, "startsWith", prefixes);
+		append(b, "endsWith", suffixes);
+		append(b, "contains", infixes);
+		return b.append(']').toString();
+	}
+
+	private static void append(StringBuilder b, String name, Set<String> patterns) {
+		if (patterns.isEmpty()) {
+			return;
+		}
+
+		if (b.charAt(b.length() - 1) != '[') {
+			b.append(", ");
+		}
+
+		b.append(name).append(' ').append(patterns);
+	}
+
+	/**
+	 * A deterministic automaton over the characters of its patterns. The characters which occur in no pattern share
+	 * a single class.
+	 */
+	private static final class Automaton {
+		private static final int Dead = -1;
+
+		private final char[] alphabet;
+		private final int[] asciiClasses = new int[128];
+		private final int width;
+		private final int[] transitions;
+		private final boolean[] accepting;
+		private final boolean reversed;
+
+		/**
+		 * Builds an automaton.
+		 *
+		 * @param patterns The patterns.
+		 * @param anchored Whether a pattern must start at the first character read, as in a trie. Otherwise a pattern
+		 *                 may start anywhere, as in an Aho-Corasick automaton.
+		 * @param reversed Whether the string is read from its last character.
+		 */
+		Automaton(Collection<String> patterns, boolean anchored, boolean reversed) {
+			this.reversed = reversed;
+
+			TreeSet<Character> characters = new TreeSet<>();
+			for (String pattern : patterns) {
+				for (int i = 0; i < pattern.length(); i++) {
+					characters.add(pattern.charAt(i));
+				}
+			}
+
+			alphabet = new char[characters.size()];
+			int index = 0;
+			for (char c : characters) {
+				alphabet[index++] = c;
+			}
+
+			width = alphabet.length + 1;
+			for (char c = 0; c < asciiClasses.length; c++) {
+				asciiClasses[c] = Arrays.binarySearch(alphabet, c) + 1;
+				if (asciiClasses[c] < 0) {
+					asciiClasses[c] = 0;
+				}
+			}
+
+			// the trie of the patterns
+			List<int[]> rows = new ArrayList<>();
+			List<Boolean> accepts = new ArrayList<>();
+			rows.add(newRow());
+			accepts.add(false);
+			for (String pattern : patterns) {
+				int state = 0;
+				for (int i = 0; i < pattern.length(); i++) {
+					int[] row = rows.get(state);
+					int c = classOf(pattern.charAt(reversed ? pattern.length() - 1 - i : i));
+					if (row[c] == Dead) {
+						row[c] = rows.size();
+						rows.add(newRow());
+						accepts.add(false);
+					}
+
+					state = row[c];
+				}
+
+				accepts.set(state, true);
+			}
+
+			int states = rows.size();
+			transitions = new int[states * width];
+			accepting = new boolean[states];
+			for (int state = 0; state < states; state++) {
+				System.arraycopy(rows.get(state), 0, transitions, state * width, width);
+				accepting[state] = accepts.get(state);
+			}
+
+			if (!anchored) {
+				link(states);
+			}
+		}
+
+		private int[] newRow() {
+			int[] row = new int[width];
+			Arrays.fill(row, Dead);
+			return row;
+		}
+
+		/**
+		 * Completes the trie into an Aho-Corasick automaton, replacing every missing transition with the transition of
+		 * the longest proper suffix of the state which is a prefix of a pattern.
+		 */
+		private void link(int states) {
+			int[] failure = new int[states];
+			Deque<Integer> queue = new ArrayDeque<>();
+			for (int c = 0; c < width; c++) {
+				int child = transitions[c];
+				if (child == Dead) {
+					transitions[c] = 0;
+				} else {
+					queue.add(child);
+				}
+			}
+
+			while (!queue.isEmpty()) {
+				int state = queue.remove();
+				int fallback = failure[state];
+				accepting[state] |= accepting[fallback];
+				for (int c = 0; c < width; c++) {
+					int child = transitions[state * width + c];
+					int next = transitions[fallback * width + c];
+					if (child == Dead) {
+						transitions[state * width + c] = next;
+					} else {
+						failure[child] = next;
+						queue.add(child);
+					}
+				}
+			}
+		}
+
+		private int classOf(char c) {
+			if (c < asciiClasses.length) {
+				return asciiClasses[c];
+			}
+
+			return Math.max(Arrays.binarySearch(alphabet, c) + 1, 0);
+		}
+
+		boolean matches(String s) {
+			if (accepting[0]) {
+				return true;
+			}
+
+			int length = s.length();
+			int state = 0;
+			for (int i = 0; i < length; i++) {
+				state = transitions[state * width + classOf(s.charAt(reversed ? length - 1 - i : i))];
+				if (state == Dead) {
+					return false;
+				}
+
+				if (accepting[state]) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+}
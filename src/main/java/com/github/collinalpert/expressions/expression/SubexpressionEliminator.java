@@ -0,0 +1,512 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates repeated side-effect-free subexpressions once.
+ * <p>
+ * Subexpressions are compared structurally. A subexpression accessing {@link Purity read-only} members, such as pure
+ * members and getters, which occurs more than once in a region is bound to a new parameter of an invoked lambda, the
+ * form the parser uses for captured arguments, so every backend keeps it in a local slot. Read-only members yield the
+ * same value throughout one evaluation, unless the lambda itself changes the state they read, so a region invoking a
+ * member which may have side effects only binds subexpressions of pure members:
+ * </p>
+ * <pre>
+ * (P0.getCustomer().getTier() &gt; 2) || (P0.getCustomer().getTier() == 0)
+ * {(T P0, int P1) -&gt; (P1 &gt; 2) || (P1 == 0)}(P0, P0.getCustomer().getTier())
+ * </pre>
+ * <p>
+ * A region is a subtree whose root evaluates it, except for the operands that are evaluated conditionally: the operands
+ * of {@code &&}, {@code ||} and coalescing after the first one, the upper bound of a range and the branches of a
+ * conditional. A subexpression is only bound in a region that evaluates one of its occurrences unconditionally, so it
+ * is never evaluated when the original tree would not evaluate it. The conditional operands are regions of their own,
+ * and so are the bodies of nested lambdas.
+ * </p>
+ */
+final class SubexpressionEliminator extends SimpleExpressionVisitor {
+
+	private final List<ParameterExpression> scope;
+
+	private SubexpressionEliminator(List<ParameterExpression> scope) {
+		this.scope = scope;
+	}
+
+	/**
+	 * Eliminates the repeated side-effect-free subexpressions of a lambda.
+	 *
+	 * @param e The lambda.
+	 * @return The optimized lambda, or {@code e} if there is nothing to eliminate.
+	 */
+	static LambdaExpression eliminate(LambdaExpression e) {
+		Expression body = region(e.getBody(), e.getParameters());
+		if (body != e.getBody()) {
+			return Expression.lambda(e.getResultType(), body, e.getParameters());
+		}
+
+		return e;
+	}
+
+	private static Expression region(Expression root, List<ParameterExpression> scope) {
+		Expression[] arguments = identity(scope);
+		if (arguments == null) {
+			return root;
+		}
+
+		List<Expression> bound = new ArrayList<>();
+		List<ParameterExpression> parameters = new ArrayList<>(scope);
+		Expression body = root;
+		while (true) {
+			Occurrences occurrences = new Occurrences(arguments.length);
+			body.accept(occurrences);
+			Expression repeated = occurrences.getLargestRepeated();
+			if (repeated == null) {
+				break;
+			}
+
+			ParameterExpression parameter = Expression.parameter(repeated.getResultType(), arguments.length + bound.size());
+			body = body.accept(new Replacer(repeated, parameter));
+			bound.add(repeated);
+			parameters.add(parameter);
+		}
+
+		if (bound.isEmpty()) {
+			return root.accept(new SubexpressionEliminator(scope));
+		}
+
+		List<Expression> values = new ArrayList<>(arguments.length + bound.size());
+		Collections.addAll(values, arguments);
+		for (Expression e : bound) {
+			values.add(e.accept(new SubexpressionEliminator(scope)));
+		}
+
+		// the body may repeat subexpressions of the bound ones
+		body = region(body, parameters);
+		LambdaExpression let = Expression.lambda(body.getResultType(), body, Collections.unmodifiableList(parameters));
+		return Expression.invoke(let, values);
+	}
+
+	private static Expression[] identity(List<ParameterExpression> scope) {
+		Expression[] arguments = new Expression[scope.size()];
+		for (ParameterExpression p : scope) {
+			int index = p.getIndex();
+			if (index >= arguments.length || arguments[index] != null) {
+				return null;
+			}
+
+			arguments[index] = p;
+		}
+
+		return arguments;
+	}
+
+	@Override
+	public Expression visit(BinaryExpression e) {
+		switch (e.getExpressionType()) {
+			case ExpressionType.LogicalAnd:
+			case ExpressionType.LogicalOr:
+			case ExpressionType.Coalesce: {
+				Expression first = e.getFirst().accept(this);
+				Expression second = region(e.getSecond(), scope);
+				if (first != e.getFirst() || second != e.getSecond()) {
+					return Expression.binary(e.getExpressionType(), first, second);
+				}
+
+				return e;
+			}
+			case ExpressionType.Conditional: {
+				Expression test = e.getOperator().accept(this);
+				Expression first = region(e.getFirst(), scope);
+				Expression second = region(e.getSecond(), scope);
+				if (test != e.getOperator() || first != e.getFirst() || second != e.getSecond()) {
+					return Expression.condition(test, first, second);
+				}
+
+				return e;
+			}
+			default:
+				return super.visit(e);
+		}
+	}
+
+	@Override
+	public Expression visit(BetweenExpression e) {
+		Expression operand = e.getOperand().accept(this);
+		Expression lower = e.getLower().accept(this);
+		Expression upper = region(e.getUpper(), scope);
+		if (operand != e.getOperand() || lower != e.getLower() || upper != e.getUpper()) {
+			return Expression.between(operand, lower, e.isLowerInclusive(), upper, e.isUpperInclusive());
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(LogicalExpression e) {
+		List<Expression> operands = e.getOperands();
+		List<Expression> visited = new ArrayList<>(operands.size());
+		boolean changed = false;
+		for (int i = 0; i < operands.size(); i++) {
+			Expression operand = operands.get(i);
+			Expression v = i == 0 ? operand.accept(this) : region(operand, scope);
+			changed |= v != operand;
+			visited.add(v);
+		}
+
+		if (changed) {
+			return e.getExpressionType() == ExpressionType.Conjunction ? Expression.conjunction(visited) : Expression.disjunction(visited);
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(InvocationExpression e) {
+		InvocableExpression target = e.getTarget();
+		List<Expression> arguments = visitArguments(e.getArguments());
+		Expression visited = target;
+		switch (target.getExpressionType()) {
+			case ExpressionType.Lambda:
+				visited = target.accept(this);
+				break;
+			case ExpressionType.Delegate:
+				break;
+			default:
+				Expression instance = ((MemberExpression) target).getInstance();
+				if (instance != null) {
+					visited = visit((MemberExpression) target);
+				}
+				break;
+		}
+
+		if (visited != target || arguments != e.getArguments()) {
+			return Expression.invoke((InvocableExpression) visited, arguments);
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(LambdaExpression e) {
+		Expression body = region(e.getBody(), e.getParameters());
+		if (body != e.getBody()) {
+			return Expression.lambda(e.getResultType(), body, e.getParameters());
+		}
+
+		return e;
+	}
+
+	@Override
+	public Expression visit(DelegateExpression e) {
+		return e;
+	}
+
+	@Override
+	public Expression visit(MemberExpression e) {
+		Expression instance = e.getInstance();
+		if (instance != null) {
+			instance = instance.accept(this);
+			if (instance != e.getInstance()) {
+				return Expression.member(e.getExpressionType(), instance, e.getMember(), e.getResultType(), e.getParameters());
+			}
+		}
+
+		return e;
+	}
+
+	/**
+	 * Counts the occurrences of the side-effect-free subexpressions accessing a member in a region. Visiting returns
+	 * the size of a side-effect-free subexpression, or {@code -1} if it may have side effects.
+	 */
+	private static final class Occurrences implements ExpressionVisitor<Integer> {
+		private final int scopeSize;
+		private final Map<Expression, Occurrence> occurrences = new LinkedHashMap<>();
+		private int conditional;
+		private boolean writes;
+
+		Occurrences(int scopeSize) {
+			this.scopeSize = scopeSize;
+		}
+
+		Expression getLargestRepeated() {
+			Expression largest = null;
+			int size = 0;
+			for (Map.Entry<Expression, Occurrence> entry : occurrences.entrySet()) {
+				Occurrence o = entry.getValue();
+				if (o.count > 1 && o.unconditional && o.size > size && (!writes || isStable(entry.getKey()))) {
+					largest = entry.getKey();
+					size = o.size;
+				}
+			}
+
+			return largest;
+		}
+
+		private int record(Expression e, int size, boolean accessesMember) {
+			if (size < 0 || !accessesMember) {
+				return size;
+			}
+
+			Occurrence o = occurrences.computeIfAbsent(e, key -> new Occurrence(size));
+			o.count++;
+			o.unconditional |= conditional == 0;
+			return size;
+		}
+
+		private int conditionally(Expression e) {
+			conditional++;
+			try {
+				return e.accept(this);
+			} finally {
+				conditional--;
+			}
+		}
+
+		private static int sum(int first, int second) {
+			return first < 0 || second < 0 ? -1 : first + second;
+		}
+
+		private boolean accessesMember(Expression e) {
+			return occurrences.containsKey(e) || e.getExpressionType() == ExpressionType.Invoke;
+		}
+
+		@Override
+		public Integer visit(BinaryExpression e) {
+			Expression first = e.getFirst();
+			Expression second = e.getSecond();
+			int size;
+			switch (e.getExpressionType()) {
+				case ExpressionType.LogicalAnd:
+				case ExpressionType.LogicalOr:
+				case ExpressionType.Coalesce:
+					size = sum(first.accept(this), conditionally(second));
+					break;
+				case ExpressionType.Conditional:
+					size = sum(e.getOperator().accept(this), sum(conditionally(first), conditionally(second)));
+					break;
+				default:
+					size = sum(first.accept(this), second.accept(this));
+					break;
+			}
+
+			return record(e, sum(size, 1), accessesMember(first) || accessesMember(second)
+					|| e.getOperator() != null && accessesMember(e.getOperator()));
+		}
+
+		@Override
+		public Integer visit(ConstantExpression e) {
+			return 1;
+		}
+
+		@Override
+		public Integer visit(InvocationExpression e) {
+			int size = 1;
+			for (Expression argument : e.getArguments()) {
+				size = sum(size, argument.accept(this));
+			}
+
+			InvocableExpression target = e.getTarget();
+			if (!(target instanceof MemberExpression)) {
+				writes = true;
+				return -1;
+			}
+
+			MemberExpression member = (MemberExpression) target;
+			Expression instance = member.getInstance();
+			if (instance != null) {
+				size = sum(size, instance.accept(this));
+			}
+
+			if (!member.isReadOnly()) {
+				writes = true;
+				return -1;
+			}
+
+			return record(e, size, true);
+		}
+
+		@Override
+		public Integer visit(LambdaExpression e) {
+			return -1;
+		}
+
+		@Override
+		public Integer visit(DelegateExpression e) {
+			return -1;
+		}
+
+		@Override
+		public Integer visit(BetweenExpression e) {
+			Expression operand = e.getOperand();
+			Expression lower = e.getLower();
+			Expression upper = e.getUpper();
+			int size = sum(sum(operand.accept(this), lower.accept(this)), sum(conditionally(upper), 1));
+			return record(e, size, accessesMember(operand) || accessesMember(lower) || accessesMember(upper));
+		}
+
+		@Override
+		public Integer visit(InExpression e) {
+			Expression operand = e.getOperand();
+			return record(e, sum(operand.accept(this), 1), accessesMember(operand));
+		}
+
+		@Override
+		public Integer visit(LogicalExpression e) {
+			List<Expression> operands = e.getOperands();
+			int size = sum(operands.get(0).accept(this), 1);
+			boolean accessesMember = accessesMember(operands.get(0));
+			for (int i = 1; i < operands.size(); i++) {
+				Expression operand = operands.get(i);
+				size = sum(size, conditionally(operand));
+				accessesMember |= accessesMember(operand);
+			}
+
+			return record(e, size, accessesMember);
+		}
+
+		@Override
+		public Integer visit(MemberExpression e) {
+			if (e.getExpressionType() != ExpressionType.FieldAccess) {
+				// reads its arguments from the scope
+				return -1;
+			}
+
+			Expression instance = e.getInstance();
+			int size = instance != null ? sum(1, instance.accept(this)) : 1;
+			return record(e, e.isReadOnly() ? size : -1, true);
+		}
+
+		@Override
+		public Integer visit(ParameterExpression e) {
+			// parameters bound while eliminating are not in the scope of the candidates
+			return e.getIndex() < scopeSize ? 1 : -1;
+		}
+
+		@Override
+		public Integer visit(UnaryExpression e) {
+			Expression first = e.getFirst();
+			return record(e, sum(first.accept(this), 1), accessesMember(first));
+		}
+	}
+
+	private static boolean isStable(Expression e) {
+		boolean[] stable = {true};
+		e.accept(new SimpleExpressionVisitor() {
+			@Override
+			public Expression visit(MemberExpression e) {
+				stable[0] &= e.isPure();
+				return super.visit(e);
+			}
+		});
+
+		return stable[0];
+	}
+
+	private static final class Occurrence {
+		final int size;
+		int count;
+		boolean unconditional;
+
+		Occurrence(int size) {
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Replaces the occurrences of a subexpression in a scope.
+	 */
+	private static final class Replacer extends SimpleExpressionVisitor {
+		private final Expression target;
+		private final Expression replacement;
+
+		Replacer(Expression target, Expression replacement) {
+			this.target = target;
+			this.replacement = replacement;
+		}
+
+		@Override
+		protected List<ParameterExpression> visitParameters(List<ParameterExpression> original) {
+			return original;
+		}
+
+		@Override
+		public Expression visit(BinaryExpression e) {
+			return e.equals(target) ? replacement : super.visit(e);
+		}
+
+		@Override
+		public Expression visit(InvocationExpression e) {
+			if (e.equals(target)) {
+				return replacement;
+			}
+
+			InvocableExpression invocable = e.getTarget();
+			Expression visited = invocable;
+			if (invocable.getExpressionType() != ExpressionType.Lambda && invocable.getExpressionType() != ExpressionType.Delegate) {
+				visited = visit((MemberExpression) invocable);
+			}
+
+			List<Expression> arguments = visitArguments(e.getArguments());
+			if (visited != invocable || arguments != e.getArguments()) {
+				return Expression.invoke((InvocableExpression) visited, arguments);
+			}
+
+			return e;
+		}
+
+		@Override
+		public Expression visit(LambdaExpression e) {
+			return e;
+		}
+
+		@Override
+		public Expression visit(DelegateExpression e) {
+			return e;
+		}
+
+		@Override
+		public Expression visit(BetweenExpression e) {
+			return e.equals(target) ? replacement : super.visit(e);
+		}
+
+		@Override
+		public Expression visit(InExpression e) {
+			return e.equals(target) ? replacement : super.visit(e);
+		}
+
+		@Override
+		public Expression visit(LogicalExpression e) {
+			return e.equals(target) ? replacement : super.visit(e);
+		}
+
+		@Override
+		public Expression visit(MemberExpression e) {
+			return e.equals(target) ? replacement : super.visit(e);
+		}
+
+		@Override
+		public Expression visit(UnaryExpression e) {
+			return e.equals(target) ? replacement : super.visit(e);
+		}
+	}
+}
@@ -78,6 +78,14 @@ final class TypeConverter extends SimpleExpressionVisitor {
 		return e.accept(new TypeConverter(to));
 	}
 
+	static Class<?> unboxedType(Class<?> type) {
+		return type.isPrimitive() ? type : unboxers.get(type);
+	}
+
+	static Class<?> boxedType(Class<?> type) {
+		return boxers.get(type);
+	}
+
 	public static boolean isAssignable(Class<?> to, Class<?> from) {
 		if (to.isPrimitive() ^ from.isPrimitive()) {
 			if (to.isPrimitive()) {
@@ -171,6 +179,21 @@ final class TypeConverter extends SimpleExpressionVisitor {
 		return defaultConvert(e);
 	}
 
+	@Override
+	public Expression visit(LogicalExpression e) {
+		return defaultConvert(e);
+	}
+
+	@Override
+	public Expression visit(BetweenExpression e) {
+		return defaultConvert(e);
+	}
+
+	@Override
+	public Expression visit(InExpression e) {
+		return defaultConvert(e);
+	}
+
 	@Override
 	public Expression visit(MemberExpression e) {
 		return defaultConvert(e);
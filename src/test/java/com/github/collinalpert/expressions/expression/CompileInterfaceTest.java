@@ -0,0 +1,62 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import org.danekja.java.util.function.serializable.SerializablePredicate;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CompileInterfaceTest {
+
+	@Test
+	public void optionsAvoidingCodeGenerationDefineNoClasses() {
+		SerializablePredicate<Integer> p = x -> x > 5;
+		LambdaExpression e = LambdaExpression.parse(p);
+		for (CompileOption option : new CompileOption[]{CompileOption.NoCodeGeneration, CompileOption.Interpret}) {
+			IntPredicate compiled = e.compile(IntPredicate.class, option);
+			assertTrue(Proxy.isProxyClass(compiled.getClass()));
+			assertTrue(compiled.test(6));
+			assertFalse(compiled.test(5));
+		}
+	}
+
+	@Test
+	public void erasedParametersAreAccepted() {
+		SerializablePredicate<String> p = s -> s.isEmpty();
+		@SuppressWarnings("unchecked")
+		Predicate<String> compiled = LambdaExpression.parse(p).compile(Predicate.class);
+		assertTrue(compiled.test(""));
+		assertFalse(compiled.test("a"));
+	}
+
+	@Test
+	public void mismatchedParameterTypeIsRejected() {
+		SerializablePredicate<String> p = s -> s.isEmpty();
+		LambdaExpression e = LambdaExpression.parse(p);
+		for (CompileOption[] options : new CompileOption[][]{{}, {CompileOption.NoCodeGeneration}, {CompileOption.Interpret}}) {
+			assertThrows(IllegalArgumentException.class, () -> e.compile(IntPredicate.class, options));
+		}
+	}
+}
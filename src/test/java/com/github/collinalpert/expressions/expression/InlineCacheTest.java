@@ -0,0 +1,82 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.nio.CharBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InlineCacheTest {
+
+	private static final Object[] none = new Object[0];
+
+	public static final class Text implements CharSequence {
+		@Override
+		public int length() {
+			return 4;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return 'x';
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return this;
+		}
+	}
+
+	@Test
+	public void countsMissesUntilMegamorphic() throws NoSuchMethodException {
+		Method length = CharSequence.class.getMethod("length");
+		InlineCache cache = new InlineCache(length, MemberHandles.getInvoker(length));
+
+		assertEquals(1, invoke(cache, "a"));
+		assertEquals(2, invoke(cache, "bc"));
+		assertEquals(1, cache.getMisses());
+
+		assertEquals(3, invoke(cache, new StringBuilder("abc")));
+		assertEquals(3, invoke(cache, new StringBuilder("def")));
+		assertEquals(2, cache.getMisses());
+		assertFalse(cache.isMegamorphic());
+
+		invoke(cache, new StringBuffer("a"));
+		invoke(cache, CharBuffer.wrap("a"));
+		assertEquals(4, cache.getMisses());
+		assertTrue(cache.isMegamorphic());
+
+		// a full cache dispatches new classes through the declared method, missing every time
+		assertEquals(4, invoke(cache, new Text()));
+		assertEquals(4, invoke(cache, new Text()));
+		assertEquals(6, cache.getMisses());
+
+		invoke(cache, "a");
+		invoke(cache, CharBuffer.wrap("b"));
+		assertEquals(6, cache.getMisses());
+	}
+
+	private static Object invoke(InlineCache cache, CharSequence receiver) {
+		return MemberHandles.invoke(cache.get(receiver), receiver, none, 0, 0);
+	}
+}
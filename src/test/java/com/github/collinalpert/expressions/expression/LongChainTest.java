@@ -0,0 +1,110 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongChainTest {
+
+	private static final int StackSize = 512 * 1024;
+
+	@Test
+	public void snapshotCompilesLongChain() throws Throwable {
+		LambdaExpression chain = chain(5000);
+		onSmallStack(() -> {
+			IntPredicate p = chain.compile(IntPredicate.class, CompileOption.Snapshot);
+			assertTrue(p.test(0));
+			assertFalse(p.test(5000));
+			assertTrue((Boolean) chain.compile(CompileOption.Snapshot).apply(new Object[]{0}));
+		});
+	}
+
+	@Test
+	public void specializeReducesLongChain() throws Throwable {
+		ParameterExpression bound = Expression.parameter(Integer.TYPE, 0);
+		ParameterExpression p = Expression.parameter(Integer.TYPE, 1);
+		Expression body = Expression.greaterThan(bound, Expression.constant(0, Integer.TYPE));
+		for (int i = 1; i <= 5000; i++) {
+			body = Expression.logicalAnd(body, Expression.notEqual(p, Expression.constant(i, Integer.TYPE)));
+		}
+
+		LambdaExpression chain = Expression.lambda(Boolean.TYPE, body, List.of(bound, p));
+		onSmallStack(() -> {
+			IntPredicate specialized = chain.specialize(0, 1).compile(IntPredicate.class);
+			assertTrue(specialized.test(0));
+			assertFalse(specialized.test(5000));
+		});
+	}
+
+	@Test
+	public void oversizedBodyFallsBackToInterpreter() {
+		// P0 * 1 != 2 && P0 * 2 != 3 && ..., whose bytecode exceeds the 64 KB limit of a method
+		ParameterExpression p = Expression.parameter(Integer.TYPE, 0);
+		Expression body = null;
+		for (int i = 1; i <= 10000; i++) {
+			Expression operand = Expression.notEqual(Expression.multiply(p, Expression.constant(i, Integer.TYPE)),
+					Expression.constant(i + 1, Integer.TYPE));
+			body = body == null ? operand : Expression.logicalAnd(body, operand);
+		}
+
+		LambdaExpression oversized = Expression.lambda(Boolean.TYPE, body, List.of(p));
+		for (CompileOption[] options : new CompileOption[][]{{}, {CompileOption.AdaptiveOrdering}, {CompileOption.Snapshot}}) {
+			Function<Object[], ?> f = oversized.compile(options);
+			assertEquals(true, f.apply(new Object[]{0}));
+			assertEquals(false, f.apply(new Object[]{2}));
+		}
+	}
+
+	/**
+	 * Builds {@code P0 != 1 && P0 != 2 && ... && P0 != length}, nested to the left like the parsed chains.
+	 */
+	static LambdaExpression chain(int length) {
+		ParameterExpression p = Expression.parameter(Integer.TYPE, 0);
+		Expression body = Expression.notEqual(p, Expression.constant(1, Integer.TYPE));
+		for (int i = 2; i <= length; i++) {
+			body = Expression.logicalAnd(body, Expression.notEqual(p, Expression.constant(i, Integer.TYPE)));
+		}
+
+		return Expression.lambda(Boolean.TYPE, body, List.of(p));
+	}
+
+	static void onSmallStack(Runnable test) throws Throwable {
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread thread = new Thread(null, () -> {
+			try {
+				test.run();
+			} catch (Throwable t) {
+				failure.set(t);
+			}
+		}, "small-stack", StackSize);
+		thread.start();
+		thread.join();
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import org.danekja.java.util.function.serializable.SerializablePredicate;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MembershipRewriterTest {
+
+	@Test
+	public void inlineSetOfIsRewritten() {
+		SerializablePredicate<String> p = s -> Set.of("a", "b", "c").contains(s);
+		LambdaExpression simplified = Optimizer.simplify(LambdaExpression.parse(p));
+		assertEquals(simplified.toString(), ExpressionType.In, simplified.getBody().getExpressionType());
+
+		@SuppressWarnings("unchecked")
+		Predicate<String> compiled = simplified.compile(Predicate.class);
+		assertTrue(compiled.test("b"));
+		assertFalse(compiled.test("d"));
+	}
+
+	@Test
+	public void inlineListOfIsRewritten() {
+		SerializablePredicate<String> p = s -> List.of(1, 7, 9).contains(s.length());
+		LambdaExpression simplified = Optimizer.simplify(LambdaExpression.parse(p));
+		assertEquals(simplified.toString(), ExpressionType.In, simplified.getBody().getExpressionType());
+
+		@SuppressWarnings("unchecked")
+		Predicate<String> compiled = simplified.compile(Predicate.class);
+		assertTrue(compiled.test("seventy"));
+		assertFalse(compiled.test("eight"));
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import org.danekja.java.util.function.serializable.SerializableFunction;
+import org.danekja.java.util.function.serializable.SerializablePredicate;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class NullUnboxingTest {
+
+	public static final class Box {
+		private final Integer boxed;
+
+		public Box(Integer boxed) {
+			this.boxed = boxed;
+		}
+
+		public Integer getBoxed() {
+			return boxed;
+		}
+	}
+
+	@Test
+	public void arithmeticRejectsNullOnEveryBackend() {
+		SerializableFunction<Box, Integer> f = x -> x.getBoxed() + 1;
+		for (Function<Object[], ?> backend : backends(LambdaExpression.parse(f))) {
+			assertEquals(8, backend.apply(new Object[]{new Box(7)}));
+			assertThrows(NullPointerException.class, () -> backend.apply(new Object[]{new Box(null)}));
+		}
+	}
+
+	@Test
+	public void comparisonRejectsNullOnEveryBackend() {
+		SerializablePredicate<Box> p = x -> x.getBoxed() == 7;
+		for (Function<Object[], ?> backend : backends(LambdaExpression.parse(p))) {
+			assertEquals(true, backend.apply(new Object[]{new Box(7)}));
+			assertThrows(NullPointerException.class, () -> backend.apply(new Object[]{new Box(null)}));
+		}
+	}
+
+	private static List<Function<Object[], ?>> backends(LambdaExpression e) {
+		return List.of(e.compile(), e.compile(CompileOption.NoCodeGeneration), e.compile(CompileOption.Interpret), Interpreter.interpret(e));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import org.danekja.java.util.function.serializable.SerializablePredicate;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PurityTest {
+
+	public static class Item {
+		private final String name;
+		private int count;
+
+		Item(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getCount() {
+			return count;
+		}
+	}
+
+	public static final class Book extends Item {
+		Book(String name) {
+			super(name);
+		}
+	}
+
+	public static final class CountedBook extends Item {
+		private int reads;
+
+		CountedBook(String name) {
+			super(name);
+		}
+
+		@Override
+		public String getName() {
+			reads++;
+			return super.getName();
+		}
+	}
+
+	@Test
+	public void overridableGetterIsUnknown() throws NoSuchMethodException {
+		assertEquals(0, Purity.analyze(Item.class.getMethod("getName")));
+		assertEquals(0, Purity.analyze(Item.class.getMethod("getName"), Item.class));
+	}
+
+	@Test
+	public void getterIsAnalyzedOnFinalReceiver() throws NoSuchMethodException {
+		Method getName = Item.class.getMethod("getName");
+		Method getCount = Item.class.getMethod("getCount");
+		assertEquals(Purity.ReadOnly | Purity.Stable | Purity.Getter, Purity.analyze(getName, Book.class));
+		assertEquals(Purity.ReadOnly | Purity.Getter, Purity.analyze(getCount, Book.class));
+		assertEquals(0, Purity.analyze(getName, CountedBook.class));
+		assertEquals(Purity.ReadOnly | Purity.Getter, Purity.analyze(getCount, CountedBook.class));
+	}
+
+	@Test
+	public void parsedGetterOnFinalReceiver() {
+		SerializablePredicate<Book> p = b -> b.getName().isEmpty();
+		InvocationExpression isEmpty = (InvocationExpression) LambdaExpression.parse(p).getBody();
+		MemberExpression getName = (MemberExpression) ((InvocationExpression) ((MemberExpression) isEmpty.getTarget()).getInstance()).getTarget();
+		assertTrue(getName.toString(), getName.isGetter());
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import org.danekja.java.util.function.serializable.SerializableBiPredicate;
+import org.junit.Test;
+
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpecializeTest {
+
+	public static final class Rule {
+		public int min = 3;
+		private int max = 7;
+
+		public int getMax() {
+			return max;
+		}
+	}
+
+	@Test
+	public void readsOfTheValueAreFoldedInEveryOperand() {
+		SerializableBiPredicate<Rule, Integer> p = (rule, x) -> x > 0 && x >= rule.min && x <= rule.getMax();
+		LambdaExpression specialized = LambdaExpression.parse(p).specialize(0, new Rule());
+		assertFalse(specialized.toString(), specialized.toString().contains(Rule.class.getName()));
+
+		@SuppressWarnings("unchecked")
+		Predicate<Integer> compiled = specialized.compile(Predicate.class);
+		assertTrue(compiled.test(5));
+		assertFalse(compiled.test(2));
+		assertFalse(compiled.test(8));
+	}
+}
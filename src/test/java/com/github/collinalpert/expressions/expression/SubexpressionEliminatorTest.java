@@ -0,0 +1,98 @@
+/*
+ * Copyright TrigerSoft <kostat@trigersoft.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.github.collinalpert.expressions.expression;
+
+import org.danekja.java.util.function.serializable.SerializablePredicate;
+import org.junit.Test;
+
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SubexpressionEliminatorTest {
+
+	public static final class Customer {
+		private int tier;
+
+		Customer(int tier) {
+			this.tier = tier;
+		}
+
+		public int getTier() {
+			return tier;
+		}
+
+		public int promote() {
+			tier++;
+			return 0;
+		}
+	}
+
+	public static final class Order {
+		private final Customer customer;
+
+		Order(int tier) {
+			this.customer = new Customer(tier);
+		}
+
+		public Customer getCustomer() {
+			return customer;
+		}
+	}
+
+	@Test
+	public void sharesReadOnlyGetterChain() {
+		SerializablePredicate<Order> p = o -> o.getCustomer().getTier() > 2 || o.getCustomer().getTier() == 0;
+		LambdaExpression eliminated = eliminate(p);
+		assertEquals(1, count(eliminated, "getTier()"));
+
+		@SuppressWarnings("unchecked")
+		Predicate<Order> compiled = eliminated.compile(Predicate.class);
+		assertTrue(compiled.test(new Order(3)));
+		assertTrue(compiled.test(new Order(0)));
+		assertFalse(compiled.test(new Order(1)));
+	}
+
+	@Test
+	public void keepsReadsAroundSideEffects() {
+		SerializablePredicate<Order> p = o -> o.getCustomer().getTier() + 1 == o.getCustomer().promote() + o.getCustomer().getTier();
+		LambdaExpression eliminated = eliminate(p);
+		// the stable customer is still shared, but the tier is read on both sides of the promotion
+		assertEquals(2, count(eliminated, "getTier()"));
+
+		@SuppressWarnings("unchecked")
+		Predicate<Order> compiled = eliminated.compile(Predicate.class);
+		assertTrue(compiled.test(new Order(1)));
+	}
+
+	private static int count(LambdaExpression e, String member) {
+		String s = e.toString();
+		int count = 0;
+		for (int i = s.indexOf(member); i >= 0; i = s.indexOf(member, i + 1)) {
+			count++;
+		}
+
+		return count;
+	}
+
+	private static LambdaExpression eliminate(SerializablePredicate<Order> p) {
+		return SubexpressionEliminator.eliminate(Canonicalizer.canonicalize(LambdaExpression.parse(p)));
+	}
+}